@@ -76,7 +76,7 @@ public class SearchEngineApplication {
 		return (evt) -> Arrays.asList("1,2,4,5,6".split(",")).forEach(index -> {
 //			Property property = createProperty(index, propertyRepository);
 //			Lead lead = createLead(index, leadRepository);
-//			Agent agent = createAgent(index, agentRepository, property, lead);
+//			Agent agent = createAgent(index, agentRepository, propertyRepository, leadRepository, property, lead);
 		});
 	}
 
@@ -124,15 +124,19 @@ public class SearchEngineApplication {
 		return lead;
 	}
 
-	private Agent createAgent(String index, final AgentRepository agentRepository, Property property, Lead lead) {
+	private Agent createAgent(String index, final AgentRepository agentRepository, final PropertyRepository propertyRepository,
+			final LeadRepository leadRepository, Property property, Lead lead) {
 		Agent agent = new Agent("Gustavo" + index, "Orsi" + index, index + "agent@example.com");
 		agent.setPrimaryKey(UUID.randomUUID().toString());
 
-		agent.addLead(lead);
-		agent.addProperty(property);
-
 		agentRepository.save(agent);
 
+		// the lead and the property reference the agent.
+		lead.setAgentId(agent.getPrimaryKey());
+		leadRepository.save(lead);
+		property.setAgentIds(Arrays.asList(agent.getPrimaryKey()));
+		propertyRepository.save(property);
+
 		return agent;
 	}
 }
@@ -0,0 +1,20 @@
+package edu.searchahouse.searchengine.configuration;
+
+import org.elasticsearch.client.Client;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+
+@Configuration
+public class ElasticsearchConfiguration {
+
+    /**
+     * Replaces the template of the spring boot auto configuration only to create it (and the repositories, that put their mapping on startup) after the
+     * indices exist.
+     */
+    @Bean
+    public ElasticsearchTemplate elasticsearchTemplate(final Client client, final ElasticsearchIndexBootstrap indexBootstrap) {
+        return new ElasticsearchTemplate(client);
+    }
+
+}
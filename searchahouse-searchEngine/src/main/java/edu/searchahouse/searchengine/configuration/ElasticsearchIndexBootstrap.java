@@ -0,0 +1,144 @@
+package edu.searchahouse.searchengine.configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.BaseEntity;
+import edu.searchahouse.searchengine.model.Lead;
+import edu.searchahouse.searchengine.model.Location;
+import edu.searchahouse.searchengine.model.Property;
+
+//@formatter:off
+/**
+ *
+ * Every document type has its own index, with explicit settings and mappings instead of the dynamic ones: shards and refresh sized for the type,
+ * keyword (not analyzed) fields with doc values for sorting and aggregations, "autocomplete" sub fields (edge ngrams) and geo points.
+ *
+ * --- the settings and mapping of a type are in "elasticsearch/<type>-settings.json" and "elasticsearch/<type>-mapping.json". The analyzers (e.g.
+ * --- "autocomplete") are the same for every type, they are defined once in "elasticsearch/analysis.json" and added to the settings of every index.
+ * --- the "indexName" of the @Document is an alias, pointing to the index "<alias>_v<timestamp>". The alias is moved to a new index by a reindex
+ * --- (see {@link edu.searchahouse.searchengine.service.impl.ReindexJob}), that is also how a change to the mappings reaches an existing index.
+ * --- The reindex keeps the locations: they come with the export of the crud service, or are copied from the live index for the properties located
+ * --- before the geocoder wrote them to the crud service.
+ *
+ * The missing indices are created on startup, before the elasticsearch repositories (see {@link ElasticsearchConfiguration}), otherwise they would create
+ * them with the dynamic mapping.
+ */
+//@formatter:on
+@Component
+public class ElasticsearchIndexBootstrap {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchIndexBootstrap.class);
+
+    public static final List<Class<? extends BaseEntity>> DOCUMENTS = Collections.unmodifiableList(Arrays.asList(Property.class, Agent.class, Lead.class,
+            Location.class));
+
+    // the analyzers of every index.
+    private static final String ANALYSIS = "elasticsearch/analysis.json";
+
+    private final Client client;
+
+    @Autowired
+    public ElasticsearchIndexBootstrap(final Client client) {
+        this.client = client;
+    }
+
+    @PostConstruct
+    public void start() {
+        IndicesAdminClient indices = this.client.admin().indices();
+
+        for (Class<? extends BaseEntity> document : DOCUMENTS) {
+            if (indices.prepareExists(alias(document)).get().isExists()) {
+                continue;
+            }
+
+            String index = createIndex(document, false);
+            indices.prepareAliases().addAlias(index, alias(document)).get();
+            LOGGER.info("Created index {} for {}.", index, alias(document));
+        }
+    }
+
+    /**
+     *
+     * Create a new index for a document type, without alias.
+     *
+     * @param document
+     *            the document class.
+     * @param bulkLoad
+     *            true if the index is going to be loaded in bulk right away: no replicas and no refresh until
+     *            {@link #settings(Class) the settings of the type} are restored.
+     * @return the name of the index.
+     */
+    public String createIndex(final Class<?> document, final boolean bulkLoad) {
+
+        String index = alias(document) + "_v" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+
+        ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder().put(settings(document));
+        if (bulkLoad) {
+            settings.put("index.number_of_replicas", 0).put("index.refresh_interval", "-1");
+        }
+
+        this.client.admin().indices().prepareCreate(index) //
+                .setSettings(settings) //
+                .addMapping(type(document), resource(document, "mapping")) //
+                .get();
+
+        return index;
+    }
+
+    /**
+     * @return the settings of a document type, from "elasticsearch/<type>-settings.json", with the shared analyzers.
+     */
+    public Settings settings(final Class<?> document) {
+        return ImmutableSettings.settingsBuilder() //
+                .loadFromSource(resource(ANALYSIS)) //
+                .loadFromSource(resource(document, "settings")) //
+                .build();
+    }
+
+    /**
+     * @return the alias the document is read and written through.
+     */
+    public static String alias(final Class<?> document) {
+        return AnnotationUtils.findAnnotation(document, Document.class).indexName();
+    }
+
+    public static String type(final Class<?> document) {
+        return AnnotationUtils.findAnnotation(document, Document.class).type();
+    }
+
+    private static String resource(final Class<?> document, final String name) {
+        return resource("elasticsearch/" + type(document) + "-" + name + ".json");
+    }
+
+    private static String resource(final String path) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + path, e);
+        }
+    }
+
+}
@@ -1,31 +1,50 @@
 package edu.searchahouse.searchengine.configuration;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
-import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
-import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 import org.springframework.data.geo.GeoModule;
+import org.springframework.messaging.converter.CompositeMessageConverter;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
-import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 @Configuration
 @EnableRabbit
-public class RabbitMqConsumerConfiguration implements RabbitListenerConfigurer {
+public class RabbitMqConsumerConfiguration {
+
+    public final static String amqpQueueProperty = "SEARCHAHOUSE-QUEUE-PROPERTY";
+    public final static String amqpQueueAgent = "SEARCHAHOUSE-QUEUE-AGENT";
+    public final static String amqpQueueLead = "SEARCHAHOUSE-QUEUE-LEAD";
+    public final static String amqpQueueRetry = "SEARCHAHOUSE-QUEUE-RETRY";
+    public final static String amqpQueueQuarantine = "SEARCHAHOUSE-QUEUE-QUARANTINE";
+    public final static String amqpRetryExchange = "searchahouse.retry";
+    public final static String amqpDeadLetterExchange = "searchahouse.dlx";
+    public final static String amqpCacheInvalidationExchange = "searchahouse.cache.invalidation";
 
     @Primary
     @Bean
     public ObjectMapper mapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new ElasticSearchGeoModule());
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        return objectMapper;
+        return configure(new ObjectMapper());
     }
 
     @Bean
@@ -36,15 +55,182 @@ public class RabbitMqConsumerConfiguration implements RabbitListenerConfigurer {
     }
 
     @Bean
-    public DefaultMessageHandlerMethodFactory myHandlerMethodFactory() {
-        DefaultMessageHandlerMethodFactory factory = new DefaultMessageHandlerMethodFactory();
-        factory.setMessageConverter(jackson2Converter());
+    public SmileMessageConverter smileConverter() {
+        return new SmileMessageConverter(configure(new ObjectMapper(new SmileFactory())));
+    }
+
+    /**
+     * 
+     * The converter is chosen by the content type of the message: json (or no content type, older producers) or smile. So the producers can switch format
+     * one by one, after every consumer understands both. The Receiver converts the messages itself, so a message that can't be converted is quarantined
+     * instead of staying unacked.
+     * 
+     */
+    @Bean
+    public CompositeMessageConverter entityMessageConverter() {
+        return new CompositeMessageConverter(Arrays.asList(jackson2Converter(), smileConverter()));
+    }
+
+    // *************************************************************//
+    // ******************** QUEUES AND EXCHANGES *******************//
+    // *************************************************************//
+
+    //@formatter:off
+    /**
+     * 
+     * The entity queues are declared by the crud service too, with the same arguments (rabbitMq refuses to declare a queue again with other arguments).
+     * 
+     * --- a message that fails is published to the retry exchange with an expiration (exponential backoff, see FailedMessageHandler). The retry queue has
+     * --- no consumer: when the message expires it is dead lettered to the default exchange, with its routing key, so it goes back to its queue.
+     * --- after the last retry the message is published to the dead letter exchange with the exception, and ends up in the quarantine queue until it is
+     * --- replayed (see QuarantineRestEndpoint). A message rejected without requeue by the entity queues also goes there.
+     * 
+     */
+    //@formatter:on
+    @Bean
+    Queue queueProperty() {
+        return entityQueue(amqpQueueProperty);
+    }
+
+    @Bean
+    Queue queueAgent() {
+        return entityQueue(amqpQueueAgent);
+    }
+
+    @Bean
+    Queue queueLead() {
+        return entityQueue(amqpQueueLead);
+    }
+
+    @Bean
+    FanoutExchange retryExchange() {
+        return new FanoutExchange(amqpRetryExchange);
+    }
+
+    @Bean
+    Queue queueRetry() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", "");
+        return new Queue(amqpQueueRetry, true, false, false, arguments);
+    }
+
+    @Bean
+    Binding bindingRetryExchangeAndRetry(Queue queueRetry, FanoutExchange retryExchange) {
+        return BindingBuilder.bind(queueRetry).to(retryExchange);
+    }
+
+    @Bean
+    TopicExchange deadLetterExchange() {
+        return new TopicExchange(amqpDeadLetterExchange);
+    }
+
+    @Bean
+    Queue queueQuarantine() {
+        return new Queue(amqpQueueQuarantine, true);
+    }
+
+    @Bean
+    Binding bindingDeadLetterExchangeAndQuarantine(Queue queueQuarantine, TopicExchange deadLetterExchange) {
+        return BindingBuilder.bind(queueQuarantine).to(deadLetterExchange).with("#");
+    }
+
+    /**
+     * 
+     * The result cache invalidations go to every instance (see ResultCache): each one has its own queue, deleted when the instance stops, bound to the
+     * fanout exchange.
+     * 
+     */
+    @Bean
+    FanoutExchange cacheInvalidationExchange() {
+        return new FanoutExchange(amqpCacheInvalidationExchange);
+    }
+
+    @Bean
+    Queue queueCacheInvalidation() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    Binding bindingCacheInvalidationExchangeAndCacheInvalidation(Queue queueCacheInvalidation, FanoutExchange cacheInvalidationExchange) {
+        return BindingBuilder.bind(queueCacheInvalidation).to(cacheInvalidationExchange);
+    }
+
+    private Queue entityQueue(final String name) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", amqpDeadLetterExchange);
+        return new Queue(name, false, false, false, arguments);
+    }
+
+    // *************************************************************//
+    // ********************* LISTENER CONTAINERS *******************//
+    // *************************************************************//
+
+    //@formatter:off
+    /**
+     * 
+     * One listener container factory per queue, so the prefetch can be set per queue ("searchahouse.consumer.{queue}.prefetch").
+     * 
+     * Every container has a single rabbitMq consumer, so the messages arrive in the order they were published, and the Receiver hands them to
+     * "searchahouse.consumer.{queue}.concurrency" threads by primary key (same entity, same thread, same order).
+     * 
+     * The listeners acknowledge the messages themselves, once the entity is indexed in elasticsearch (see ElasticsearchBulkIndexer). The prefetch must be
+     * bigger than the indexer batch size, otherwise a batch could never be filled by size and would wait for the flush interval.
+     * 
+     */
+    //@formatter:on
+    @Bean
+    public SimpleRabbitListenerContainerFactory propertyListenerContainerFactory(//
+            final ConnectionFactory connectionFactory, //
+            @Value("${searchahouse.consumer.property.prefetch:1000}") final int prefetch //
+    ) {
+        return listenerContainerFactory(connectionFactory, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory agentListenerContainerFactory(//
+            final ConnectionFactory connectionFactory, //
+            @Value("${searchahouse.consumer.agent.prefetch:1000}") final int prefetch //
+    ) {
+        return listenerContainerFactory(connectionFactory, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory leadListenerContainerFactory(//
+            final ConnectionFactory connectionFactory, //
+            @Value("${searchahouse.consumer.lead.prefetch:1000}") final int prefetch //
+    ) {
+        return listenerContainerFactory(connectionFactory, prefetch);
+    }
+
+    /**
+     * The invalidations are acknowledged once applied, a lost one only leaves a response cached until it expires.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory cacheInvalidationListenerContainerFactory(final ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        return factory;
+    }
+
+    private SimpleRabbitListenerContainerFactory listenerContainerFactory(final ConnectionFactory connectionFactory, final int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        // more consumers would break the order of the messages, the concurrency is in the Receiver.
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(prefetch);
         return factory;
     }
 
-    @Override
-    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
-        registrar.setMessageHandlerMethodFactory(myHandlerMethodFactory());
+    /**
+     * The same settings for every format.
+     */
+    static ObjectMapper configure(final ObjectMapper objectMapper) {
+        objectMapper.registerModule(new ElasticSearchGeoModule());
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return objectMapper;
     }
 
 }
@@ -0,0 +1,186 @@
+package edu.searchahouse.searchengine.configuration;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.service.impl.ResultCache;
+import edu.searchahouse.searchengine.service.impl.ResultCache.CachedResult;
+import edu.searchahouse.searchengine.service.impl.ResultCacheTags;
+
+//@formatter:off
+/**
+ *
+ * Serves the GET requests of the property and agent endpoints from the {@link ResultCache}, the "X-Cache" header of the response says if it was a HIT or a
+ * MISS. Only the 200 responses are cached, with their ETag: a hit is a 304 too if the "If-None-Match" header is the ETag.
+ *
+ * --- the key is the host and accept headers (the links and the format of the response depend on them), the path and the parameters sorted by name,
+ * --- trimmed and the "q" in lower case: "?q=Beverly%20Hills&page=0" and "?page=0&q=beverly  hills" are the same request.
+ * --- the tags (see {@link ResultCacheTags}): the cells of the area of the searches by location (latitude, longitude and distance, or the top, left,
+ * --- bottom and right of the map), otherwise the words of the searches by text, otherwise the price buckets of the searches by price, otherwise
+ * --- "properties". The property or agent of the requests by id,
+ * --- and "agents" for the lists of agents.
+ */
+//@formatter:on
+@Component
+public class ResultCacheFilter extends OncePerRequestFilter {
+
+    private static final String PROPERTY_PATH = "/api/v1/property";
+    private static final String AGENT_PATH = "/api/v1/agent";
+
+    static final String CACHE_HEADER = "X-Cache";
+
+    private final ResultCache resultCache;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ResultCacheFilter(final ResultCache resultCache, final ObjectMapper objectMapper) {
+        this.resultCache = resultCache;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) throws ServletException {
+        String path = path(request);
+        return !this.resultCache.isEnabled() || !"GET".equals(request.getMethod()) //
+                || !(path.startsWith(PROPERTY_PATH) || path.startsWith(AGENT_PATH));
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response, final FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String key = key(request);
+
+        CachedResult cached = this.resultCache.get(key);
+        if (cached != null) {
+            response.setHeader(CACHE_HEADER, "HIT");
+            if (cached.getETag() != null) {
+                response.setHeader(HttpHeaders.ETAG, cached.getETag());
+                if (cached.getETag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                    response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                    return;
+                }
+            }
+            response.setContentType(cached.getContentType());
+            response.setContentLength(cached.getBody().length);
+            response.getOutputStream().write(cached.getBody());
+            return;
+        }
+
+        response.setHeader(CACHE_HEADER, "MISS");
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, wrapper);
+
+            if (wrapper.getStatusCode() == HttpStatus.OK.value()) {
+                byte[] body = wrapper.getContentAsByteArray();
+                this.resultCache.put(key, wrapper.getContentType(), wrapper.getHeader(HttpHeaders.ETAG), body, tags(request, body));
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static String key(final HttpServletRequest request) {
+        Map<String, String> parameters = new TreeMap<>();
+        request.getParameterMap().forEach((name, values) -> parameters.put(name, Arrays.stream(values) //
+                .map(value -> "q".equals(name) ? value.toLowerCase() : value) //
+                .map(value -> value.trim().replaceAll("\\s+", " ")) //
+                .collect(Collectors.joining(","))));
+
+        return request.getHeader(HttpHeaders.HOST) + "|" + request.getHeader(HttpHeaders.ACCEPT) + "|" + path(request) + "?" + parameters;
+    }
+
+    private Set<String> tags(final HttpServletRequest request, final byte[] body) throws IOException {
+        String[] segments = StringUtils.tokenizeToStringArray(path(request), "/");
+        // "api", "v1", "property" or "agent" and the rest.
+        String first = segments.length > 3 ? segments[3] : null;
+
+        if (path(request).startsWith(AGENT_PATH)) {
+            if (first == null || "autocomplete".equals(first)) {
+                return Collections.singleton(ResultCacheTags.AGENTS);
+            }
+            Set<String> tags = new HashSet<>();
+            tags.add(ResultCacheTags.agent(first));
+            if (segments.length > 4) {
+                // the properties of the agent, the ones of a response that is not json are left to "properties".
+                try {
+                    primaryKeys(body).forEach(primaryKey -> tags.add(ResultCacheTags.property(primaryKey)));
+                } catch (JsonProcessingException e) {
+                    tags.add(ResultCacheTags.PROPERTIES);
+                }
+            }
+            return tags;
+        }
+
+        if (first != null && !"location".equals(first) && !"search".equals(first) && !"clusters".equals(first)) {
+            return Collections.singleton(ResultCacheTags.property(first));
+        }
+
+        int precision = this.resultCache.getGeohashPrecision();
+
+        if (hasParameters(request, "latitude", "longitude")) {
+            String distance = request.getParameter("distance");
+            return ResultCacheTags.cells(Double.parseDouble(request.getParameter("latitude")), Double.parseDouble(request.getParameter("longitude")),
+                    StringUtils.hasText(distance) ? Double.parseDouble(distance) : 1.0, precision);
+        }
+
+        if (hasParameters(request, "top", "left", "bottom", "right")) {
+            return ResultCacheTags.cells(Double.parseDouble(request.getParameter("top")), Double.parseDouble(request.getParameter("left")),
+                    Double.parseDouble(request.getParameter("bottom")), Double.parseDouble(request.getParameter("right")), precision);
+        }
+
+        // the autocomplete matches parts of words and typos.
+        Set<String> words = ResultCacheTags.words(request.getParameter("q"));
+        if (!words.isEmpty() && !Boolean.parseBoolean(request.getParameter("ac"))) {
+            return words;
+        }
+
+        String minPrice = request.getParameter("minPrice");
+        String maxPrice = request.getParameter("maxPrice");
+        if (StringUtils.hasText(minPrice) || StringUtils.hasText(maxPrice)) {
+            return ResultCacheTags.prices(StringUtils.hasText(minPrice) ? Long.parseLong(minPrice.trim()) : 0,
+                    StringUtils.hasText(maxPrice) ? Long.parseLong(maxPrice.trim()) : Long.MAX_VALUE);
+        }
+
+        return Collections.singleton(ResultCacheTags.PROPERTIES);
+    }
+
+    private Set<String> primaryKeys(final byte[] body) throws IOException {
+        JsonNode json = this.objectMapper.readTree(body);
+        return json.findValuesAsText("primaryKey").stream().collect(Collectors.toSet());
+    }
+
+    private static boolean hasParameters(final HttpServletRequest request, final String... names) {
+        return Arrays.stream(names).allMatch(name -> StringUtils.hasText(request.getParameter(name)));
+    }
+
+    private static String path(final HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+}
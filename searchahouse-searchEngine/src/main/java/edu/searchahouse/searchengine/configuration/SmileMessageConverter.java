@@ -0,0 +1,62 @@
+package edu.searchahouse.searchengine.configuration;
+
+import java.io.IOException;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * 
+ * Converts "application/x-jackson-smile" messages: the same documents as json, in Jackson's binary format (smaller and faster to parse). Only messages with
+ * that content type are converted, so producers sending json and producers sending smile can coexist.
+ */
+public class SmileMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType SMILE = new MimeType("application", "x-jackson-smile");
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param objectMapper
+     *            a mapper created with a {@link SmileFactory}.
+     */
+    public SmileMessageConverter(final ObjectMapper objectMapper) {
+        super(SMILE);
+        this.objectMapper = objectMapper;
+        // a message without content type is json, never smile.
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(final Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    public Object convertFromInternal(final Message<?> message, final Class<?> targetClass) {
+        if (!(message.getPayload() instanceof byte[])) {
+            return null;
+        }
+        try {
+            return this.objectMapper.readValue((byte[]) message.getPayload(), targetClass);
+        } catch (IOException e) {
+            throw new MessageConversionException(message, "Could not read smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object convertToInternal(final Object payload, final MessageHeaders headers) {
+        try {
+            return this.objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new MessageConversionException("Could not write smile: " + e.getMessage(), e);
+        }
+    }
+
+}
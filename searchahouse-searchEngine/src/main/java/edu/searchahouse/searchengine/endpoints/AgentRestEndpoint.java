@@ -1,10 +1,7 @@
 package edu.searchahouse.searchengine.endpoints;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.data.web.PagedResourcesAssembler;
@@ -17,6 +14,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.searchahouse.searchengine.endpoints.hal.resources.assemblers.AgentResourceAssembler;
 import edu.searchahouse.searchengine.endpoints.hal.resources.assemblers.PropertyResourceAssembler;
@@ -92,7 +90,8 @@ public class AgentRestEndpoint {
      * 
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * Return an agent.
+     * Return an agent. The ETag is the primary key and version of the agent: if it is the one of the "If-None-Match" header the response is a 304 without
+     * body.
      * 
      * @param id
      *            the id to search for.
@@ -100,10 +99,15 @@ public class AgentRestEndpoint {
      * 
      */
     @RequestMapping(value = "/{agentId}", method = RequestMethod.GET)
-    public HttpEntity<ResourceSupport> getAgent(@PathVariable("agentId") final String agentId) {
+    public HttpEntity<ResourceSupport> getAgent(@PathVariable("agentId") final String agentId, final WebRequest request) {
 
         Agent agent = this.agentService.findAgentByPrimaryKey(agentId);
 
+        if (request.checkNotModified(EntityTags.of(agent))) {
+            // 304, the client has it. Nothing to assemble nor serialize.
+            return null;
+        }
+
         return new ResponseEntity<ResourceSupport>(this.agentResourceAssembler.toResource(agent), HttpStatus.OK);
 
     }
@@ -115,10 +119,10 @@ public class AgentRestEndpoint {
      * 
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * Return a pageable list of Agents.
+     * Return a pageable list of Agents, with only the fields of a suggestion list.
      * 
      * @param pageable
-     *            the page data. Page number and page size.
+     *            the page data. Page number and page size, up to "searchahouse.suggest.max-size".
      * @param assembler
      *            the assembler that will construct the agent resource as a pageable resource.
      * @return A pageable list of properties in json or xml format (default to json)
@@ -131,10 +135,9 @@ public class AgentRestEndpoint {
             PagedResourcesAssembler<Agent> assembler //
     ) {
 
-        List<Agent> agents = this.agentService.findAgentsByFirstName(firstName);
+        Page<Agent> agents = this.agentService.findAgentsByFirstName(firstName, pageable);
 
-        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(new PageImpl<Agent>(agents), this.agentResourceAssembler),
-                HttpStatus.OK);
+        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(agents, this.agentResourceAssembler), HttpStatus.OK);
 
     }
 
@@ -145,7 +148,7 @@ public class AgentRestEndpoint {
      * 
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * Return a pageable list of properties of the agent.
+     * Return a pageable list of properties of the agent, read from the properties index by the ids the agent has.
      * 
      * @param pageable
      *            the page data. Page number and page size.
@@ -161,10 +164,9 @@ public class AgentRestEndpoint {
             PagedResourcesAssembler<Property> assembler //
     ) {
 
-        List<Property> properties = this.propertyService.findPropertiesByAgentId(agentId);
+        Page<Property> properties = this.propertyService.findPropertiesByAgentId(agentId, pageable);
 
-        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(new PageImpl<Property>(properties), this.propertyResourceAssembler),
-                HttpStatus.OK);
+        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(properties, this.propertyResourceAssembler), HttpStatus.OK);
 
     }
 
@@ -0,0 +1,25 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import edu.searchahouse.searchengine.model.BaseEntity;
+
+/**
+ *
+ * The ETag of an entity: its primary key and the version of its document, the consumer writes the version of the entity in mongo (external versioning),
+ * so the tag is the same one the crud service gives.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @return the strong ETag of the entity, null if it has no version (nothing to compare with).
+     */
+    static String of(final BaseEntity entity) {
+        if (entity.getVersion() == null) {
+            return null;
+        }
+        return "\"" + entity.getPrimaryKey() + "-" + entity.getVersion() + "\"";
+    }
+
+}
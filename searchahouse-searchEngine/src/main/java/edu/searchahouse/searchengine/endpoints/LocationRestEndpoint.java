@@ -1,9 +1,7 @@
 package edu.searchahouse.searchengine.endpoints;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.data.web.PagedResourcesAssembler;
@@ -59,7 +57,7 @@ public class LocationRestEndpoint {
      * Return a pageable list of locations.
      * 
      * @param pageable
-     *            the page data. Page number and page size.
+     *            the page data. Page number and page size, up to "searchahouse.suggest.max-size".
      * @param assembler
      *            the assembler that will construct the agent resource as a pageable resource.
      * @return A pageable list of properties in json or xml format (default to json)
@@ -72,10 +70,9 @@ public class LocationRestEndpoint {
             PagedResourcesAssembler<Location> assembler //
     ) {
 
-        List<Location> locations = this.locationService.findLocationsByState(state);
+        Page<Location> locations = this.locationService.findLocationsByState(state, pageable);
 
-        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(new PageImpl<Location>(locations), this.locationResourceAssembler),
-                HttpStatus.OK);
+        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(locations, this.locationResourceAssembler), HttpStatus.OK);
 
     }
 }
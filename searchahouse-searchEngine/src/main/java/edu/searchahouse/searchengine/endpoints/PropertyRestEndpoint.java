@@ -1,17 +1,20 @@
 package edu.searchahouse.searchengine.endpoints;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.PagedResources.PageMetadata;
 import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.Resources;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,9 +23,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import edu.searchahouse.searchengine.endpoints.hal.resources.FacetedPagedResources;
 import edu.searchahouse.searchengine.endpoints.hal.resources.assemblers.PropertyResourceAssembler;
 import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.PropertyCluster;
+import edu.searchahouse.searchengine.service.CursorPage;
+import edu.searchahouse.searchengine.service.DistanceCursor;
+import edu.searchahouse.searchengine.service.FacetedPage;
+import edu.searchahouse.searchengine.service.PropertySearch;
 import edu.searchahouse.searchengine.service.PropertyService;
 
 @RestController
@@ -56,7 +67,8 @@ public class PropertyRestEndpoint {
      * 
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * Return a property.
+     * Return a property. The ETag is the primary key and version of the property: if it is the one of the "If-None-Match" header the response is a 304
+     * without body.
      * 
      * @param id
      *            the id to search for.
@@ -64,22 +76,30 @@ public class PropertyRestEndpoint {
      * 
      */
     @RequestMapping(value = "/{propertyId}", method = RequestMethod.GET)
-    public HttpEntity<ResourceSupport> getPropertyByid(@PathVariable("propertyId") final String propertyId) {
+    public HttpEntity<ResourceSupport> getPropertyByid(@PathVariable("propertyId") final String propertyId, final WebRequest request) {
 
         Property property = this.propertyService.findPropertyByPrimaryKey(propertyId);
 
+        if (request.checkNotModified(EntityTags.of(property))) {
+            // 304, the client has it. Nothing to assemble nor serialize.
+            return null;
+        }
+
         return new ResponseEntity<ResourceSupport>(this.propertyResourceAssembler.toResource(property), HttpStatus.OK);
     }
 
     /**
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * GET - find "Pageable" properties
+     * GET - find "Pageable" properties by location
      * 
      * ----------------------------------------------------------------------------------------------------------------
      * 
-     * Return a pageable list of Properties.
+     * Return a pageable list of Properties around a point, sorted by distance. The first pages can be requested by number, the deeper ones only following
+     * the "after" link: it points to the page that starts right after the last property of this one.
      * 
+     * @param after
+     *            the cursor of the "after" link, the page number is ignored when it is present.
      * @param pageable
      *            the page data. Page number and page size.
      * @param assembler
@@ -93,15 +113,104 @@ public class PropertyRestEndpoint {
             @RequestParam(value = "latitude", required = true) final Double latitude, //
             @RequestParam(value = "distance", required = false, defaultValue = "1.0") final Double distance, //
             @RequestParam(value = "sortOrder", required = false, defaultValue = "DESC") final String sortOrderAsString, //
+            @RequestParam(value = "after", required = false) final String after, //
+            @PageableDefault(size = 10, page = 0) Pageable pageable, //
+            PagedResourcesAssembler<Property> assembler //
+    ) {
+
+        CursorPage<Property> properties = this.propertyService.findPropertiesByLocation(new GeoPoint(latitude, longitude), distance,
+                SortOrder.valueOf(sortOrderAsString.toUpperCase()), pageable, after == null ? null : DistanceCursor.decode(after));
+
+        PagedResources<ResourceSupport> resources;
+        if (after == null) {
+            resources = assembler.toResource(properties, this.propertyResourceAssembler);
+        } else {
+            // the page links of the assembler make no sense after a cursor, only "self" and "after".
+            List<ResourceSupport> content = properties.getContent().stream().map(this.propertyResourceAssembler::toResource).collect(Collectors.toList());
+            resources = new PagedResources<ResourceSupport>(content, new PageMetadata(properties.getSize(), 0, properties.getTotalElements()));
+            resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString()).withSelfRel());
+        }
+
+        if (properties.getNext() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest() //
+                    .replaceQueryParam("page") //
+                    .replaceQueryParam("after", properties.getNext().encode()) //
+                    .build().toUriString();
+            resources.add(new Link(next).withRel("after"));
+        }
+
+        return new ResponseEntity<PagedResources<ResourceSupport>>(resources, HttpStatus.OK);
+
+    }
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * GET - properties of a map grouped in clusters
+     * 
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * Return the properties inside a bounding box grouped in geohash cells, the bigger the zoom the smaller the cells. Every cluster has the number of
+     * properties, their center and price range; the properties themselves come only for the cells with a few of them.
+     * 
+     * @param zoom
+     *            the zoom of the map, from 0 to 21.
+     * @return A list of clusters in json or xml format (default to json)
+     * 
+     */
+    @RequestMapping(value = "/clusters", method = RequestMethod.GET)
+    public HttpEntity<Resources<PropertyCluster>> getPropertyClusters( //
+            @RequestParam(value = "top", required = true) final Double top, //
+            @RequestParam(value = "left", required = true) final Double left, //
+            @RequestParam(value = "bottom", required = true) final Double bottom, //
+            @RequestParam(value = "right", required = true) final Double right, //
+            @RequestParam(value = "zoom", required = true) final Integer zoom //
+    ) {
+
+        List<PropertyCluster> clusters = this.propertyService.findPropertyClusters(new GeoPoint(top, left), new GeoPoint(bottom, right), zoom);
+
+        // the assembler adds the self link to the property itself.
+        clusters.stream().filter(cluster -> cluster.getProperties() != null)
+                .forEach(cluster -> cluster.getProperties().forEach(this.propertyResourceAssembler::toResource));
+
+        Resources<PropertyCluster> resources = new Resources<PropertyCluster>(clusters);
+        resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString()).withSelfRel());
+
+        return new ResponseEntity<Resources<PropertyCluster>>(resources, HttpStatus.OK);
+    }
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * GET - search "Pageable" properties by text, location, type, status and price, with facets.
+     * 
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * Return a pageable list of Properties matching every criteria given, plus the counts by type, status and price range of all of them. All in one
+     * request to elasticsearch.
+     * 
+     * @param search
+     *            the criteria: q (name and address), latitude, longitude and distance (km), type and status (can be repeated), minPrice and maxPrice.
+     * @param pageable
+     *            the page data. Page number and page size.
+     * @param assembler
+     *            the assembler that will construct the property resource as a pageable resource.
+     * @return A pageable list of properties with the facets in json or xml format (default to json)
+     * 
+     */
+    @RequestMapping(value = "/search", method = RequestMethod.GET)
+    public HttpEntity<FacetedPagedResources<ResourceSupport>> searchProperties( //
+            final PropertySearch search, //
+            @PageableDefault(size = 10, page = 0) Pageable pageable, //
             PagedResourcesAssembler<Property> assembler //
     ) {
 
-        List<Property> properties = this.propertyService.findPropertiesByLocation(new GeoPoint(latitude, longitude), distance,
-                SortOrder.valueOf(sortOrderAsString.toUpperCase()));
+        FacetedPage<Property> properties = this.propertyService.searchProperties(search, pageable);
 
-        return new ResponseEntity<PagedResources<ResourceSupport>>(assembler.toResource(new PageImpl<Property>(properties), this.propertyResourceAssembler),
-                HttpStatus.OK);
+        FacetedPagedResources<ResourceSupport> resources = new FacetedPagedResources<ResourceSupport>(
+                assembler.toResource(properties, this.propertyResourceAssembler), properties.getFacets());
 
+        return new ResponseEntity<FacetedPagedResources<ResourceSupport>>(resources, HttpStatus.OK);
     }
 
     /**
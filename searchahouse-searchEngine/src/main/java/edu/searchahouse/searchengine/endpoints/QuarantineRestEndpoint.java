@@ -0,0 +1,75 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.searchahouse.searchengine.rabbitmq.Quarantine;
+
+@RestController
+@RequestMapping("/api/v1/admin/quarantine")
+public class QuarantineRestEndpoint {
+
+    // *************************************************************//
+    // *********************** PROPERTIES **************************//
+    // *************************************************************//
+    private final Quarantine quarantine;
+
+    // *************************************************************//
+    // *********************** CONSTRUCTORS ************************//
+    // *************************************************************//
+    @Autowired
+    public QuarantineRestEndpoint(final Quarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    // *************************************************************//
+    // ********************* REST ENDPOINTS ************************//
+    // *************************************************************//
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * GET - number of quarantined messages
+     *
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * @return the number of messages that failed every retry and wait in the quarantine queue.
+     *
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public HttpEntity<Map<String, Integer>> count() {
+        return new ResponseEntity<Map<String, Integer>>(Collections.singletonMap("messages", this.quarantine.count()), HttpStatus.OK);
+    }
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * POST - replay quarantined messages
+     *
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * Publish the quarantined messages again to the queue they came from, once the cause of the failure is fixed.
+     *
+     * @param max
+     *            the max number of messages to replay, the oldest first.
+     * @return the number of messages replayed.
+     *
+     */
+    @RequestMapping(value = "/replay", method = RequestMethod.POST)
+    public HttpEntity<Map<String, Integer>> replay(@RequestParam(value = "max", defaultValue = "1000") int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max must be positive, not " + max);
+        }
+        return new ResponseEntity<Map<String, Integer>>(Collections.singletonMap("replayed", this.quarantine.replay(max)), HttpStatus.OK);
+    }
+
+}
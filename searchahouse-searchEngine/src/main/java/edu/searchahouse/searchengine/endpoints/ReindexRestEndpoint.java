@@ -0,0 +1,69 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.searchahouse.searchengine.service.impl.ReindexJob;
+
+@RestController
+@RequestMapping("/api/v1/admin/reindex")
+public class ReindexRestEndpoint {
+
+    // *************************************************************//
+    // *********************** PROPERTIES **************************//
+    // *************************************************************//
+    private final ReindexJob reindexJob;
+
+    // *************************************************************//
+    // *********************** CONSTRUCTORS ************************//
+    // *************************************************************//
+    @Autowired
+    public ReindexRestEndpoint(final ReindexJob reindexJob) {
+        this.reindexJob = reindexJob;
+    }
+
+    // *************************************************************//
+    // ********************* REST ENDPOINTS ************************//
+    // *************************************************************//
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * POST - rebuild the index from mongo
+     *
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * Start a reindex in the background, or resume the last one if it was stopped. Follow it with GET.
+     *
+     * @return 202 with the progress, or 409 if a reindex is already running.
+     *
+     */
+    @RequestMapping(method = RequestMethod.POST)
+    public HttpEntity<Map<String, Object>> reindex() {
+        HttpStatus status = this.reindexJob.reindex() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return new ResponseEntity<Map<String, Object>>(this.reindexJob.status(), status);
+    }
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * GET - progress of the reindex
+     *
+     * ----------------------------------------------------------------------------------------------------------------
+     *
+     * @return the new index, entities loaded and total, entities per second, seconds left (eta) and the error if the last reindex failed.
+     *
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public HttpEntity<Map<String, Object>> status() {
+        return new ResponseEntity<Map<String, Object>>(this.reindexJob.status(), HttpStatus.OK);
+    }
+
+}
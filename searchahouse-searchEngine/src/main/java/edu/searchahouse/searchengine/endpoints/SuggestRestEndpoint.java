@@ -0,0 +1,62 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.searchahouse.searchengine.model.Suggestion;
+import edu.searchahouse.searchengine.service.SuggestService;
+
+@RestController
+@RequestMapping("/api/v1/suggest")
+public class SuggestRestEndpoint {
+
+    // *************************************************************//
+    // *********************** PROPERTIES **************************//
+    // *************************************************************//
+    private final SuggestService suggestService;
+
+    // *************************************************************//
+    // *********************** CONSTRUCTORS ************************//
+    // *************************************************************//
+    @Autowired
+    public SuggestRestEndpoint(final SuggestService suggestService) {
+        this.suggestService = suggestService;
+    }
+
+    // *************************************************************//
+    // ********************* REST ENDPOINTS ************************//
+    // *************************************************************//
+
+    /**
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * GET - autocomplete addresses, locations and agent names
+     * 
+     * ----------------------------------------------------------------------------------------------------------------
+     * 
+     * Return the suggestions for what the user typed so far, only id, label and type (ADDRESS, LOCATION or AGENT).
+     * 
+     * @param q
+     *            the text typed so far.
+     * @param size
+     *            max suggestions, up to "searchahouse.suggest.max-size".
+     * @return A list of suggestions in json format.
+     * 
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public HttpEntity<List<Suggestion>> suggest( //
+            @RequestParam(value = "q", required = true) final String q, //
+            @RequestParam(value = "size", required = false, defaultValue = "10") final Integer size //
+    ) {
+        return new ResponseEntity<List<Suggestion>>(this.suggestService.suggest(q, size), HttpStatus.OK);
+    }
+
+}
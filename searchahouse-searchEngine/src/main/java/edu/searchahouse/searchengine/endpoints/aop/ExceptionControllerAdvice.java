@@ -103,4 +103,17 @@ public class ExceptionControllerAdvice {
 		return new VndErrors(HttpStatus.BAD_REQUEST.getReasonPhrase(), ex.getMostSpecificCause().getLocalizedMessage());
 	}
 
-}
+	/**
+	 * 
+	 * 
+	 * @param ex
+	 * @return
+	 */
+	@ResponseBody
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	VndErrors illegalArgumentHandler(IllegalArgumentException ex) {
+		return new VndErrors(HttpStatus.BAD_REQUEST.getReasonPhrase(), ex.getLocalizedMessage());
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+package edu.searchahouse.searchengine.endpoints.hal.resources;
+
+import java.util.Map;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.PagedResources;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ *
+ * The paged resources of a search plus its facets, see {@link edu.searchahouse.searchengine.service.FacetedPage}.
+ */
+public class FacetedPagedResources<T> extends PagedResources<T> {
+
+    private Map<String, Map<String, Long>> facets;
+
+    protected FacetedPagedResources() {
+    }
+
+    public FacetedPagedResources(final PagedResources<T> resources, final Map<String, Map<String, Long>> facets) {
+        super(resources.getContent(), resources.getMetadata(), resources.getLinks().toArray(new Link[0]));
+        this.facets = facets;
+    }
+
+    @JsonProperty("facets")
+    public Map<String, Map<String, Long>> getFacets() {
+        return facets;
+    }
+
+}
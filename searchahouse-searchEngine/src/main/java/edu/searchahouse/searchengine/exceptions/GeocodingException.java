@@ -0,0 +1,20 @@
+
+package edu.searchahouse.searchengine.exceptions;
+
+/**
+ * 
+ * Thrown when the geocoding service could not be reached or refused the request. An address that simply does not exist is not an error, the geocoder
+ * returns null for it.
+ */
+@SuppressWarnings("serial")
+public class GeocodingException extends RuntimeException {
+
+	public GeocodingException(String message) {
+		super(message);
+	}
+
+	public GeocodingException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
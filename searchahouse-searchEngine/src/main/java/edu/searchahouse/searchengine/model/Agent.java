@@ -1,8 +1,5 @@
 package edu.searchahouse.searchengine.model;
 
-import java.util.ArrayList;
-import java.util.Collection;
-
 import org.springframework.data.elasticsearch.annotations.Document;
 
 //@formatter:off
@@ -10,19 +7,20 @@ import org.springframework.data.elasticsearch.annotations.Document;
  * 
  * An agent is someone that have properties to sell/rent and answer all inquiries by the leads.
  * 
+ * The properties and leads are documents of their own and reference the agent ({@link Property#getAgentIds()} and {@link Lead#getAgentId()}): the agent
+ * does not grow with its portfolio.
+ * 
  * @author Gustavo Orsi
  *
  */
 //@formatter:on
-@Document(indexName = "searchahouse", type = "agent")
+@Document(indexName = "searchahouse_agent", type = "agent")
 public class Agent extends BaseEntity {
 
     private String firstName;
     private String lastName;
     private String email;
     private String imageUrl;
-    private Collection<Property> properties;
-    private Collection<Lead> leads;
 
     public Agent() {
     }
@@ -65,36 +63,4 @@ public class Agent extends BaseEntity {
         this.email = email;
     }
 
-    public Collection<Property> getProperties() {
-        return properties;
-    }
-
-    public void setProperties(Collection<Property> properties) {
-        this.properties = properties;
-    }
-
-    public Collection<Lead> getLeads() {
-        return leads;
-    }
-
-    public void setLeads(Collection<Lead> leads) {
-        this.leads = leads;
-    }
-
-    public Collection<Property> addProperty(final Property aProperty) {
-        if (getProperties() == null) {
-            setProperties(new ArrayList<Property>());
-        }
-        getProperties().add(aProperty);
-        return getProperties();
-    }
-
-    public Collection<Lead> addLead(final Lead lead) {
-        if (getLeads() == null) {
-            setLeads(new ArrayList<Lead>());
-        }
-        getLeads().add(lead);
-        return getLeads();
-    }
-
 }
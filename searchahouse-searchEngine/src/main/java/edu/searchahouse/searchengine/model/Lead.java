@@ -9,7 +9,7 @@ import org.springframework.data.elasticsearch.annotations.Document;
  * @author Gustavo Orsi
  *
  */
-@Document(indexName = "searchahouse", type = "lead")
+@Document(indexName = "searchahouse_lead", type = "lead")
 public class Lead extends BaseEntity {
 
     private Status contactStatus = Status.UNCONTACTED;
@@ -17,6 +17,7 @@ public class Lead extends BaseEntity {
     private String lastName;
     private String email;
     private String mobilePhone;
+    private String agentId;
 
     public Lead() {
     }
@@ -60,6 +61,14 @@ public class Lead extends BaseEntity {
         this.mobilePhone = mobilePhone;
     }
 
+    public String getAgentId() {
+        return agentId;
+    }
+
+    public void setAgentId(String agentId) {
+        this.agentId = agentId;
+    }
+
     public enum Status {
         CONTACTED, UNCONTACTED;
     }
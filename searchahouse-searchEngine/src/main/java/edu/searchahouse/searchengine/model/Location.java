@@ -3,7 +3,7 @@ package edu.searchahouse.searchengine.model;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 
-@Document(indexName = "searchahouse", type = "location")
+@Document(indexName = "searchahouse_location", type = "location")
 public class Location extends BaseEntity {
 
     private String country;
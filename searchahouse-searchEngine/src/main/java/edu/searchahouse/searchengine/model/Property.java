@@ -1,9 +1,11 @@
 package edu.searchahouse.searchengine.model;
 
+import java.util.Collection;
+
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 
-@Document(indexName = "searchahouse", type = "property")
+@Document(indexName = "searchahouse_property", type = "property")
 public class Property extends BaseEntity {
 
 	private String name;
@@ -14,6 +16,8 @@ public class Property extends BaseEntity {
 	private Long price;
 	private PropertyType type;
 	private PropertyStatus status;
+	// the agents of the property.
+	private Collection<String> agentIds;
 
 	public Property() {
 	}
@@ -92,6 +96,14 @@ public class Property extends BaseEntity {
 		this.status = status;
 	}
 
+	public Collection<String> getAgentIds() {
+		return agentIds;
+	}
+
+	public void setAgentIds(Collection<String> agentIds) {
+		this.agentIds = agentIds;
+	}
+
 	public enum PropertyType {
 		SALE, RENT;
 	}
@@ -0,0 +1,62 @@
+package edu.searchahouse.searchengine.model;
+
+import java.util.List;
+
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.hateoas.ResourceSupport;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ *
+ * The properties inside a geohash cell of the map: how many, where they are (the mean of their locations) and their price range. The properties
+ * themselves come only when the cell has a few.
+ */
+@JsonInclude(Include.NON_NULL)
+public class PropertyCluster extends ResourceSupport {
+
+    private String geohash;
+    private long count;
+    private GeoPoint centroid;
+    private Long minPrice;
+    private Long maxPrice;
+    private List<Property> properties;
+
+    public PropertyCluster() {
+    }
+
+    public PropertyCluster(String geohash, long count, GeoPoint centroid, Long minPrice, Long maxPrice, List<Property> properties) {
+        this.geohash = geohash;
+        this.count = count;
+        this.centroid = centroid;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.properties = properties;
+    }
+
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public GeoPoint getCentroid() {
+        return centroid;
+    }
+
+    public Long getMinPrice() {
+        return minPrice;
+    }
+
+    public Long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+}
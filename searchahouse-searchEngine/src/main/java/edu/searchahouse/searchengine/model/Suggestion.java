@@ -0,0 +1,41 @@
+package edu.searchahouse.searchengine.model;
+
+/**
+ *
+ * An autocomplete suggestion: only what the client shows and needs to follow it.
+ */
+public class Suggestion {
+
+    private String id;
+    private String label;
+    private SuggestionType type;
+
+    public Suggestion() {
+    }
+
+    public Suggestion(String id, String label, SuggestionType type) {
+        this.id = id;
+        this.label = label;
+        this.type = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public SuggestionType getType() {
+        return type;
+    }
+
+    public enum SuggestionType {
+        // the address of a property, the id is the property primary key.
+        ADDRESS,
+        LOCATION,
+        AGENT;
+    }
+
+}
@@ -0,0 +1,87 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ *
+ * A message delivered by rabbitMq that is waiting to be acknowledged. The listener containers run with manual acknowledge, so the message stays unacked in
+ * the broker until the work it triggered is really done (e.g. the bulk request that indexed the entity succeeded).
+ *
+ * The work is done by other threads than the listener thread the channel belongs to (the consumer partitions, the lanes of the bulk indexer), and the
+ * messages of one channel end up in several of them. So every ack and nack of a channel holds the lock of the channel: they never reach the channel at
+ * the same time.
+ */
+public class Delivery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Delivery.class);
+
+    private final Message message;
+    private final Channel channel;
+    private final FailedMessageHandler failedMessageHandler;
+
+    public Delivery(final Message message, final Channel channel, final FailedMessageHandler failedMessageHandler) {
+        this.message = message;
+        this.channel = channel;
+        this.failedMessageHandler = failedMessageHandler;
+    }
+
+    /**
+     * The message was processed ok, remove it from the queue.
+     */
+    public void ack() {
+        try {
+            synchronized (this.channel) {
+                this.channel.basicAck(getDeliveryTag(), false);
+            }
+        } catch (IOException e) {
+            // the broker will redeliver the message once the channel is recovered, and indexing the same entity twice is harmless.
+            LOGGER.warn("Could not ack message {}.", getDeliveryTag(), e);
+        }
+    }
+
+    /**
+     * The message could not be processed.
+     *
+     * @param requeue
+     *            true to deliver the message again, false to discard it (it goes to the quarantine, through the dead letter exchange of the queue).
+     */
+    public void reject(final boolean requeue) {
+        try {
+            synchronized (this.channel) {
+                this.channel.basicNack(getDeliveryTag(), false, requeue);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not nack message {}.", getDeliveryTag(), e);
+        }
+    }
+
+    /**
+     *
+     * The message could not be processed because of the message itself (or something that may be fixed later): retry it later or quarantine it, see
+     * {@link FailedMessageHandler}. Failures that have nothing to do with the message (e.g. elasticsearch is down) should requeue it instead.
+     *
+     * @param cause
+     *            why the message failed.
+     */
+    public void fail(final Throwable cause) {
+        try {
+            this.failedMessageHandler.failed(this.message, cause);
+            ack();
+        } catch (AmqpException e) {
+            LOGGER.error("Could not retry or quarantine message {}, requeue it.", getDeliveryTag(), e);
+            reject(true);
+        }
+    }
+
+    public long getDeliveryTag() {
+        return this.message.getMessageProperties().getDeliveryTag();
+    }
+
+}
@@ -0,0 +1,53 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ *
+ * The changed fields of a delta event: field name (or "field.elementPrimaryKey.subField" for an element of a collection) and new value.
+ */
+public final class DocumentChanges {
+
+    private DocumentChanges() {
+    }
+
+    /**
+     * @return true if every change is a top level field, so elasticsearch can merge them into the document with a partial update.
+     */
+    public static boolean isPartialUpdate(final Map<String, Object> changes) {
+        return changes.keySet().stream().noneMatch(field -> field.contains("."));
+    }
+
+    /**
+     *
+     * Apply the changes to a document source.
+     *
+     * @param source
+     *            the document source, modified in place.
+     * @param changes
+     *            the changes, in order.
+     */
+    @SuppressWarnings("unchecked")
+    public static void apply(final Map<String, Object> source, final Map<String, Object> changes) {
+        changes.forEach((field, value) -> {
+            String[] path = field.split("\\.", 3);
+
+            if (path.length < 3) {
+                source.put(field, value);
+                return;
+            }
+
+            Object collection = source.get(path[0]);
+            if (!(collection instanceof Collection)) {
+                return;
+            }
+
+            // elasticsearch may have the element already deleted, then there is nothing to change.
+            ((Collection<Object>) collection).stream() //
+                    .filter(element -> element instanceof Map && path[1].equals(((Map<String, Object>) element).get("primaryKey"))) //
+                    .forEach(element -> ((Map<String, Object>) element).put(path[2], value));
+        });
+    }
+
+}
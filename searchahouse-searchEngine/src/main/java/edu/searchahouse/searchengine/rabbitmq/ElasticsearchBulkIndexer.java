@@ -0,0 +1,804 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.searchengine.model.BaseEntity;
+
+//@formatter:off
+/**
+ *
+ * Buffers the changes received from rabbitMq (index, partial update and delete) and sends them to elasticsearch with bulk requests instead of one request
+ * per message. The changes of a document are applied in the order they were received.
+ *
+ * The documents are split in "searchahouse.indexer.lanes" lanes by id, every lane has its own buffer and sends its own bulk requests, one at a time:
+ * the changes of a document always go to the same lane, so they stay in order, while the lanes send their bulk requests in parallel. A lane is flushed
+ * when it reaches "searchahouse.indexer.batch-size" changes (by the consumer thread that filled it) or every "searchahouse.indexer.flush-interval"
+ * milliseconds (by the thread of the lane), whatever happens first. The rabbitMq messages are acknowledged only after the bulk request succeeded:
+ *
+ * --- if the whole bulk fails (elasticsearch down, timeout, etc) every message is requeued in rabbitMq.
+ * --- if only some changes fail they are retried in the next batch, up to "searchahouse.indexer.max-attempts" times (e.g. an update that arrives before
+ * --- the document is indexed). After that the message is failed, see {@link FailedMessageHandler}.
+ *
+ * The version of an elasticsearch document is the version of the entity in mongo (external versioning), so an old message can't overwrite newer data.
+ * Before every bulk the current version of the documents is read (one multi get, without source) and the stale changes are acknowledged and skipped
+ * without sending anything. The rest are sent with their version:
+ *
+ * --- index: external version, elasticsearch rejects it too if the document got newer meanwhile.
+ * --- partial update: the update api doesn't support external versions, so the new version is forced. It is safe because the version was checked just
+ * --- before, and every write to a document goes through its lane one flush at a time.
+ * --- delete: external version, greater or equal (a delete doesn't change the version in mongo).
+ *
+ * Changes to an element of a collection ("leads.1234.contactStatus") can't be merged by elasticsearch, so the source of those documents is read too,
+ * changed and indexed again.
+ *
+ * A component can watch the documents of a type (see {@link #watch}): it is told some fields of every document as it is before a batch changes it, from
+ * the same multi get, e.g. the result cache invalidates the responses the old document is part of. A change can also carry what to do once elasticsearch
+ * accepted it (e.g. the suggest index follows the writes): it is never run for a change that was stale or failed.
+ *
+ * While an index is rebuilt (see {@link edu.searchahouse.searchengine.service.impl.ReindexJob}) every change is written to the new index too (shadow),
+ * so the new index doesn't miss the changes done during the load. The copy has nothing to acknowledge and its failures are only logged.
+ *
+ * The acknowledgements are sent by the thread that flushed the lane, not by the listener thread that received the message, see {@link Delivery}.
+ *
+ * Metrics (see /metrics): gauge.searchengine.indexer.batch.size, gauge.searchengine.indexer.flush.latency, counter.searchengine.indexer.items.indexed,
+ * counter.searchengine.indexer.items.stale, counter.searchengine.indexer.items.failed, counter.searchengine.indexer.items.retried and
+ * counter.searchengine.indexer.batches.failed.
+ */
+//@formatter:on
+@Component
+public class ElasticsearchBulkIndexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchBulkIndexer.class);
+
+    private final Client client;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+
+    private final EntityMapper entityMapper = new DefaultEntityMapper();
+
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxAttempts;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Lane[] lanes;
+
+    // index (or alias) -> index being rebuilt that gets a copy of every change.
+    private final ConcurrentMap<String, String> shadows = new ConcurrentHashMap<>();
+
+    // index (or alias) -> who is told the documents about to change.
+    private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ElasticsearchBulkIndexer(//
+            final Client client, //
+            final ElasticsearchOperations elasticsearchOperations, //
+            final CounterService counterService, //
+            final GaugeService gaugeService, //
+            @Value("${searchahouse.indexer.batch-size:500}") final int batchSize, //
+            @Value("${searchahouse.indexer.flush-interval:1000}") final long flushInterval, //
+            @Value("${searchahouse.indexer.max-attempts:3}") final int maxAttempts, //
+            @Value("${searchahouse.indexer.lanes:4}") final int lanes //
+    ) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("At least one indexer lane is needed, not " + lanes);
+        }
+
+        this.client = client;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxAttempts = maxAttempts;
+
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane();
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(lanes, r -> new Thread(r, "elasticsearch-bulk-indexer-" + threadNumber.incrementAndGet()));
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : this.lanes) {
+            this.scheduler.scheduleWithFixedDelay(() -> scheduledFlush(lane), this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     *
+     * Index the whole entity. The delivery is acknowledged once the entity is indexed, or right away if the document is already newer.
+     *
+     * @param entity
+     *            the entity to index, with the version it has in mongo (null to index it whatever the version of the document).
+     * @param delivery
+     *            the rabbitMq message that carried the entity.
+     */
+    public void index(final BaseEntity entity, final Delivery delivery) {
+        index(entity, delivery, null);
+    }
+
+    /**
+     * @param written
+     *            run by the flush once the entity is indexed, see {@link #update(Class, String, Long, Map, Delivery, Runnable)}.
+     */
+    public void index(final BaseEntity entity, final Delivery delivery, final Runnable written) {
+        add(target(entity.getClass(), entity.getPrimaryKey()), delivery, written, (target, aDelivery) -> new PendingIndex(target, aDelivery, entity));
+    }
+
+    /**
+     *
+     * Change some fields of an indexed document.
+     *
+     * @param type
+     *            the entity class.
+     * @param primaryKey
+     *            the document id.
+     * @param version
+     *            the version of the entity in mongo after the change. Null if the change has no version (it does not come from mongo), then it
+     *            is applied whatever the version of the document and the document keeps its version.
+     * @param changes
+     *            the changed fields (see {@link DocumentChanges}).
+     * @param delivery
+     *            the rabbitMq message that carried the changes, null if there is nothing to acknowledge.
+     */
+    public void update(final Class<? extends BaseEntity> type, final String primaryKey, final Long version, final Map<String, Object> changes,
+            final Delivery delivery) {
+        update(type, primaryKey, version, changes, delivery, null);
+    }
+
+    /**
+     *
+     * Change some fields of an indexed document, and do something once elasticsearch accepted the change.
+     *
+     * @param written
+     *            run by the flush right after the bulk request, only if the change was written: not if it was stale (the document was newer) nor if it
+     *            failed. Null to do nothing. It must be quick and must not call this class.
+     */
+    public void update(final Class<? extends BaseEntity> type, final String primaryKey, final Long version, final Map<String, Object> changes,
+            final Delivery delivery, final Runnable written) {
+        if (DocumentChanges.isPartialUpdate(changes)) {
+            add(target(type, primaryKey), delivery, written, (target, aDelivery) -> new PendingUpdate(target, aDelivery, version, changes));
+        } else {
+            add(target(type, primaryKey), delivery, written, (target, aDelivery) -> new PendingReadModifyWrite(target, aDelivery, version, changes));
+        }
+    }
+
+    public void delete(final Class<? extends BaseEntity> type, final String primaryKey, final Long version, final Delivery delivery) {
+        delete(type, primaryKey, version, delivery, null);
+    }
+
+    /**
+     * @param written
+     *            run by the flush once the document is deleted, see {@link #update(Class, String, Long, Map, Delivery, Runnable)}.
+     */
+    public void delete(final Class<? extends BaseEntity> type, final String primaryKey, final Long version, final Delivery delivery,
+            final Runnable written) {
+        add(target(type, primaryKey), delivery, written, (target, aDelivery) -> new PendingDelete(target, aDelivery, version));
+    }
+
+    /**
+     *
+     * Be told the documents of a type before they change. The listener is called by the flush, once per document and batch, before the bulk request is
+     * sent: it must be quick and must not call this class.
+     *
+     * @param type
+     *            the entity class.
+     * @param fields
+     *            the fields of the document the listener needs.
+     * @param listener
+     *            gets the id of the document and the fields it has now. Not called for the documents that don't exist yet.
+     */
+    public void watch(final Class<? extends BaseEntity> type, final String[] fields, final BiConsumer<String, Map<String, Object>> listener) {
+        this.watches.put(this.elasticsearchOperations.getPersistentEntityFor(type).getIndexName(), new Watch(fields, listener));
+    }
+
+    /**
+     *
+     * Write every change of an index to another index too, until {@link #unshadow(String)}.
+     *
+     * @param index
+     *            the index (or alias) the entities are written to.
+     * @param shadow
+     *            the index that gets a copy of the changes.
+     */
+    public void shadow(final String index, final String shadow) {
+        this.shadows.put(index, shadow);
+        LOGGER.info("Writing the changes of {} to {} too.", index, shadow);
+    }
+
+    public void unshadow(final String index) {
+        // the changes already buffered for the shadow are still sent.
+        if (this.shadows.remove(index) != null) {
+            LOGGER.info("Stopped writing the changes of {} to another index.", index);
+        }
+    }
+
+    /**
+     *
+     * Send the buffered changes of every lane to elasticsearch right now.
+     *
+     */
+    public void flush() {
+        for (Lane lane : this.lanes) {
+            lane.flush();
+        }
+    }
+
+    private Target target(final Class<?> type, final String primaryKey) {
+        ElasticsearchPersistentEntity<?> persistentEntity = this.elasticsearchOperations.getPersistentEntityFor(type);
+        return new Target(persistentEntity.getIndexName(), persistentEntity.getIndexType(), primaryKey);
+    }
+
+    private void add(final Target target, final Delivery delivery, final Runnable written, final BiFunction<Target, Delivery, PendingRequest> request) {
+        PendingRequest pending = request.apply(target, delivery);
+        pending.written = written;
+        add(pending);
+
+        String shadow = this.shadows.get(target.index);
+        if (shadow != null) {
+            // a change to a document the rebuild didn't load yet fails, and it is harmless: the load reads the latest version from mongo.
+            add(request.apply(new Target(shadow, target.type, target.id), null));
+        }
+    }
+
+    private void add(final PendingRequest pending) {
+        lane(pending.getTarget()).add(pending);
+    }
+
+    /**
+     * @return the lane of the document, by id: a shadow copy goes to the same lane as the change it copies.
+     */
+    private Lane lane(final Target target) {
+        return this.lanes[Math.floorMod(target.id.hashCode(), this.lanes.length)];
+    }
+
+    private void scheduledFlush(final Lane lane) {
+        try {
+            lane.flush();
+        } catch (RuntimeException e) {
+            // never let an exception cancel the scheduled flush.
+            LOGGER.error("Scheduled flush failed.", e);
+        }
+    }
+
+    private void bulk(final Lane lane, final List<PendingRequest> batch) {
+
+        this.gaugeService.submit("searchengine.indexer.batch.size", batch.size());
+
+        long start = System.currentTimeMillis();
+        try {
+            Map<Target, GetResponse> documents;
+            try {
+                documents = readDocuments(batch);
+            } catch (RuntimeException e) {
+                failed(batch, e);
+                return;
+            }
+
+            // version of every document after the requests added to the bulk so far, absent if the document doesn't exist.
+            Map<Target, Long> versions = new HashMap<>();
+            documents.forEach((target, document) -> versions.put(target, document.getVersion()));
+            Set<Target> written = new HashSet<>();
+
+            BulkRequest bulkRequest = new BulkRequest();
+            List<PendingRequest> sent = new ArrayList<>();
+            for (PendingRequest pending : batch) {
+                Long current = versions.get(pending.getTarget());
+
+                if (pending.isStale(current)) {
+                    stale(pending);
+                    continue;
+                }
+
+                if (pending.readsSource() && written.contains(pending.getTarget())) {
+                    // the source we read is already old, wait for the next batch.
+                    lane.next(pending);
+                    continue;
+                }
+
+                String failure = pending.addTo(bulkRequest, documents, current);
+                if (failure == null) {
+                    sent.add(pending);
+                    if (written.add(pending.getTarget())) {
+                        changing(pending.getTarget(), documents);
+                    }
+                    pending.apply(versions, current);
+                } else {
+                    retryOrReject(lane, pending, failure);
+                }
+            }
+
+            if (sent.isEmpty()) {
+                return;
+            }
+
+            BulkResponse response;
+            try {
+                response = this.client.bulk(bulkRequest).actionGet();
+            } catch (RuntimeException e) {
+                failed(sent, e);
+                return;
+            }
+
+            // the bulk response items are in the same order as the requests.
+            BulkItemResponse[] items = response.getItems();
+            for (int i = 0; i < items.length; i++) {
+                PendingRequest pending = sent.get(i);
+                if (!items[i].isFailed()) {
+                    this.counterService.increment("searchengine.indexer.items.indexed");
+                    pending.written();
+                    pending.ack();
+                } else if (items[i].getFailure().getStatus() == RestStatus.CONFLICT && pending.getVersion() != null) {
+                    // the document got newer after we read its version.
+                    stale(pending);
+                } else {
+                    retryOrReject(lane, pending, items[i].getFailureMessage());
+                }
+            }
+        } finally {
+            this.gaugeService.submit("searchengine.indexer.flush.latency", System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * The whole request failed (elasticsearch down, timeout, etc), requeue all the messages.
+     */
+    private void failed(final List<PendingRequest> requests, final RuntimeException e) {
+        LOGGER.error("Bulk request of {} changes failed, requeue all the messages.", requests.size(), e);
+        this.counterService.increment("searchengine.indexer.batches.failed");
+        requests.forEach(pending -> pending.reject(true));
+    }
+
+    /**
+     * The document is already newer than the change, there is nothing to do.
+     */
+    private void stale(final PendingRequest pending) {
+        LOGGER.debug("Skip stale change of {} (version {}).", pending.getTarget(), pending.getVersion());
+        this.counterService.increment("searchengine.indexer.items.stale");
+        pending.ack();
+    }
+
+    /**
+     * Tell the watch of the index the document as it is before the batch.
+     */
+    private void changing(final Target target, final Map<Target, GetResponse> documents) {
+        Watch watch = this.watches.get(target.index);
+        GetResponse document = documents.get(target);
+        if (watch == null || document == null) {
+            return;
+        }
+
+        try {
+            watch.listener.accept(target.id, document.getSourceAsMap());
+        } catch (RuntimeException e) {
+            // the change is written anyway.
+            LOGGER.warn("The watch of {} failed.", target, e);
+        }
+    }
+
+    /**
+     * @return the documents of the batch that exist, with their version. Only the documents that must be changed by hand are read with source, and the
+     *         fields of the watched ones.
+     */
+    private Map<Target, GetResponse> readDocuments(final List<PendingRequest> batch) {
+
+        Map<Target, GetResponse> documents = new HashMap<>();
+
+        List<Target> targets = batch.stream().map(PendingRequest::getTarget).distinct().collect(Collectors.toList());
+        Set<Target> withSource = batch.stream().filter(PendingRequest::readsSource).map(PendingRequest::getTarget).collect(Collectors.toSet());
+
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        // realtime, so we see the previous batch even if the index was not refreshed yet.
+        multiGetRequest.realtime(true);
+        targets.forEach(target -> multiGetRequest.add(new MultiGetRequest.Item(target.index, target.type, target.id)
+                .fetchSourceContext(fetchSource(target, withSource))));
+
+        // the responses are in the same order as the requests.
+        MultiGetItemResponse[] items = this.client.multiGet(multiGetRequest).actionGet().getResponses();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailed()) {
+                throw new IllegalStateException("Could not read " + targets.get(i) + ": " + items[i].getFailure().getMessage());
+            }
+            if (items[i].getResponse().isExists()) {
+                documents.put(targets.get(i), items[i].getResponse());
+            }
+        }
+
+        return documents;
+    }
+
+    private FetchSourceContext fetchSource(final Target target, final Set<Target> withSource) {
+        if (withSource.contains(target)) {
+            return new FetchSourceContext(true);
+        }
+        Watch watch = this.watches.get(target.index);
+        return watch != null ? new FetchSourceContext(watch.fields) : new FetchSourceContext(false);
+    }
+
+    private void retryOrReject(final Lane lane, final PendingRequest pending, final String failure) {
+
+        this.counterService.increment("searchengine.indexer.items.failed");
+
+        if (pending.attempt() < this.maxAttempts) {
+            this.counterService.increment("searchengine.indexer.items.retried");
+            // goes to the next batch of the lane, we are already inside its flush.
+            lane.next(pending);
+        } else {
+            pending.fail(new IllegalStateException("Could not change " + pending.getTarget() + " after " + this.maxAttempts + " attempts: " + failure));
+        }
+    }
+
+    /**
+     * The buffer of the changes of some documents, see {@link ElasticsearchBulkIndexer}.
+     */
+    private class Lane {
+
+        // only one flush of the lane at a time, so the batches of a document reach elasticsearch in the same order the messages arrived.
+        private final Object flushLock = new Object();
+
+        private List<PendingRequest> buffer = new ArrayList<>();
+
+        void add(final PendingRequest pending) {
+            boolean full;
+            synchronized (this) {
+                this.buffer.add(pending);
+                full = this.buffer.size() >= batchSize;
+            }
+
+            if (full) {
+                flush();
+            }
+        }
+
+        /**
+         * Put back a change for the next batch, called from inside the flush of the lane.
+         */
+        synchronized void next(final PendingRequest pending) {
+            this.buffer.add(pending);
+        }
+
+        void flush() {
+            synchronized (this.flushLock) {
+                List<PendingRequest> batch = drain();
+                if (!batch.isEmpty()) {
+                    bulk(this, batch);
+                }
+            }
+        }
+
+        private synchronized List<PendingRequest> drain() {
+            List<PendingRequest> batch = this.buffer;
+            this.buffer = new ArrayList<>();
+            return batch;
+        }
+
+    }
+
+    /**
+     * The elasticsearch document a change is for.
+     */
+    private static class Target {
+
+        private final String index;
+        private final String type;
+        private final String id;
+
+        Target(final String index, final String type, final String id) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) obj;
+            return this.index.equals(other.index) && this.type.equals(other.type) && this.id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.index + "/" + this.type + "/" + this.id).hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return this.index + "/" + this.type + "/" + this.id;
+        }
+
+    }
+
+    /**
+     * The fields of the documents of an index someone wants before they change, see {@link ElasticsearchBulkIndexer#watch}.
+     */
+    private static class Watch {
+
+        private final String[] fields;
+        private final BiConsumer<String, Map<String, Object>> listener;
+
+        Watch(final String[] fields, final BiConsumer<String, Map<String, Object>> listener) {
+            this.fields = fields;
+            this.listener = listener;
+        }
+
+    }
+
+    /**
+     * A change waiting in the buffer for the next bulk request.
+     */
+    private abstract class PendingRequest {
+
+        private final Target target;
+        private final Delivery delivery;
+        private final Long version;
+        private int attempts;
+        // what to do once the change is written, null if nothing. The copies for a shadow index have nothing to do.
+        private Runnable written;
+
+        PendingRequest(final Target target, final Delivery delivery, final Long version) {
+            this.target = target;
+            this.delivery = delivery;
+            this.version = version;
+        }
+
+        /**
+         * Add the request for this change to the bulk. The request is built at flush time, so it has the latest state of the entity.
+         *
+         * @param current
+         *            the version of the document before this change, null if it doesn't exist.
+         * @return null if the request was added, the reason why not otherwise.
+         */
+        abstract String addTo(BulkRequest bulkRequest, Map<Target, GetResponse> documents, Long current);
+
+        /**
+         * @return true if the document is already newer than this change.
+         */
+        boolean isStale(final Long current) {
+            return this.version != null && current != null && this.version <= current;
+        }
+
+        /**
+         * @return true if the change needs the source of the document, read just before the bulk.
+         */
+        boolean readsSource() {
+            return false;
+        }
+
+        /**
+         * Keep track of the version the document has after this change, for the next changes of the same batch.
+         */
+        void apply(final Map<Target, Long> versions, final Long current) {
+            if (this.version != null) {
+                versions.put(this.target, this.version);
+            }
+        }
+
+        /**
+         * @return the number of attempts so far, including the one that just failed.
+         */
+        int attempt() {
+            return ++this.attempts;
+        }
+
+        void written() {
+            if (this.written == null) {
+                return;
+            }
+            try {
+                this.written.run();
+            } catch (RuntimeException e) {
+                // the change is written anyway.
+                LOGGER.warn("What follows the change of {} failed.", this.target, e);
+            }
+        }
+
+        void ack() {
+            if (this.delivery != null) {
+                this.delivery.ack();
+            }
+        }
+
+        void reject(final boolean requeue) {
+            if (this.delivery != null) {
+                this.delivery.reject(requeue);
+            }
+        }
+
+        void fail(final Throwable cause) {
+            if (this.delivery != null) {
+                this.delivery.fail(cause);
+            } else {
+                LOGGER.error("Could not change {}.", this.target, cause);
+            }
+        }
+
+        Target getTarget() {
+            return target;
+        }
+
+        Long getVersion() {
+            return version;
+        }
+
+    }
+
+    private class PendingIndex extends PendingRequest {
+
+        private final BaseEntity entity;
+
+        PendingIndex(final Target target, final Delivery delivery, final BaseEntity entity) {
+            super(target, delivery, entity.getVersion());
+            this.entity = entity;
+        }
+
+        @Override
+        String addTo(final BulkRequest bulkRequest, final Map<Target, GetResponse> documents, final Long current) {
+            IndexRequest indexRequest = new IndexRequest(getTarget().index, getTarget().type, getTarget().id);
+            try {
+                indexRequest.source(entityMapper.mapToString(this.entity));
+            } catch (IOException e) {
+                return "could not serialize the entity: " + e.getMessage();
+            }
+
+            if (getVersion() != null) {
+                indexRequest.version(getVersion()).versionType(VersionType.EXTERNAL);
+            }
+            bulkRequest.add(indexRequest);
+            return null;
+        }
+
+        @Override
+        void apply(final Map<Target, Long> versions, final Long current) {
+            // without version elasticsearch adds 1 to the current version.
+            versions.put(getTarget(), getVersion() != null ? getVersion() : current == null ? 1L : current + 1);
+        }
+
+    }
+
+    private class PendingUpdate extends PendingRequest {
+
+        private final Map<String, Object> changes;
+
+        PendingUpdate(final Target target, final Delivery delivery, final Long version, final Map<String, Object> changes) {
+            super(target, delivery, version);
+            this.changes = changes;
+        }
+
+        @Override
+        String addTo(final BulkRequest bulkRequest, final Map<Target, GetResponse> documents, final Long current) {
+            if (current == null) {
+                return "document not found";
+            }
+
+            bulkRequest.add(new UpdateRequest(getTarget().index, getTarget().type, getTarget().id) //
+                    .doc(this.changes) //
+                    .version(getVersion() != null ? getVersion() : current) //
+                    .versionType(VersionType.FORCE));
+            return null;
+        }
+
+    }
+
+    private class PendingReadModifyWrite extends PendingRequest {
+
+        private final Map<String, Object> changes;
+
+        PendingReadModifyWrite(final Target target, final Delivery delivery, final Long version, final Map<String, Object> changes) {
+            super(target, delivery, version);
+            this.changes = changes;
+        }
+
+        @Override
+        boolean readsSource() {
+            return true;
+        }
+
+        @Override
+        String addTo(final BulkRequest bulkRequest, final Map<Target, GetResponse> documents, final Long current) {
+            GetResponse document = documents.get(getTarget());
+            if (current == null || document == null) {
+                return "document not found";
+            }
+
+            Map<String, Object> source = document.getSourceAsMap();
+            DocumentChanges.apply(source, this.changes);
+
+            IndexRequest indexRequest = new IndexRequest(getTarget().index, getTarget().type, getTarget().id).source(source);
+            if (getVersion() != null) {
+                indexRequest.version(getVersion()).versionType(VersionType.EXTERNAL);
+            } else {
+                indexRequest.version(current).versionType(VersionType.FORCE);
+            }
+            bulkRequest.add(indexRequest);
+            return null;
+        }
+
+    }
+
+    private class PendingDelete extends PendingRequest {
+
+        PendingDelete(final Target target, final Delivery delivery, final Long version) {
+            super(target, delivery, version);
+        }
+
+        @Override
+        String addTo(final BulkRequest bulkRequest, final Map<Target, GetResponse> documents, final Long current) {
+            DeleteRequest deleteRequest = new DeleteRequest(getTarget().index, getTarget().type, getTarget().id);
+            if (getVersion() != null) {
+                deleteRequest.version(getVersion()).versionType(VersionType.EXTERNAL_GTE);
+            }
+            bulkRequest.add(deleteRequest);
+            return null;
+        }
+
+        @Override
+        boolean isStale(final Long current) {
+            // the delete has the version of the last write, the same the document has.
+            return getVersion() != null && current != null && getVersion() < current;
+        }
+
+        @Override
+        void apply(final Map<Target, Long> versions, final Long current) {
+            versions.remove(getTarget());
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+
+//@formatter:off
+/**
+ *
+ * Decides what happens to a message that could not be processed, instead of requeueing it forever:
+ *
+ * --- it is retried "searchahouse.consumer.retry.max-retries" times, through the retry queue: the first retry after "searchahouse.consumer.retry.backoff"
+ * --- milliseconds, doubling the wait every time. The retries done so far go in the "x-retry-count" header.
+ * --- after the last retry, or right away if retrying makes no sense (the message can't even be converted), it is quarantined: published to the dead
+ * --- letter exchange with the exception in the headers ("x-exception-message", "x-exception-stacktrace", "x-original-routingKey").
+ *
+ * rabbitMq only expires the message at the head of a queue, so a retry can wait longer than its backoff behind a longer one, never less.
+ *
+ * Metrics (see /metrics): counter.searchengine.consumer.retried and counter.searchengine.consumer.quarantined.
+ */
+//@formatter:on
+@Component
+public class FailedMessageHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FailedMessageHandler.class);
+
+    public static final String RETRY_COUNT = "x-retry-count";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final CounterService counterService;
+    private final MessageRecoverer quarantine;
+
+    private final int maxRetries;
+    private final long backoff;
+
+    @Autowired
+    public FailedMessageHandler(//
+            final RabbitTemplate rabbitTemplate, //
+            final CounterService counterService, //
+            @Value("${searchahouse.consumer.retry.max-retries:5}") final int maxRetries, //
+            @Value("${searchahouse.consumer.retry.backoff:1000}") final long backoff //
+    ) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.counterService = counterService;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.quarantine = new RepublishMessageRecoverer(rabbitTemplate, RabbitMqConsumerConfiguration.amqpDeadLetterExchange);
+    }
+
+    /**
+     *
+     * Retry the message later or quarantine it. Once this method returns the message can be acknowledged.
+     *
+     * @param message
+     *            the message that failed.
+     * @param cause
+     *            why.
+     * @throws org.springframework.amqp.AmqpException
+     *             if the message could not be published to the retry or dead letter exchange, then it must be requeued.
+     */
+    public void failed(final Message message, final Throwable cause) {
+
+        int retries = retries(message);
+
+        if (isRetryable(cause) && retries < this.maxRetries) {
+            long wait = this.backoff << retries;
+            LOGGER.warn("Could not process message from {}, retry {} of {} in {} ms.", routingKey(message), retries + 1, this.maxRetries, wait, cause);
+
+            Message retry = MessageBuilder.fromMessage(message) //
+                    .setHeader(RETRY_COUNT, retries + 1) //
+                    .setExpiration(String.valueOf(wait)) //
+                    .build();
+
+            // keeps the routing key, that is the queue the message goes back to.
+            this.rabbitTemplate.send(RabbitMqConsumerConfiguration.amqpRetryExchange, routingKey(message), retry);
+            this.counterService.increment("searchengine.consumer.retried");
+        } else {
+            LOGGER.error("Could not process message from {} after {} retries, quarantine it.", routingKey(message), retries, cause);
+
+            this.quarantine.recover(message, cause);
+            this.counterService.increment("searchengine.consumer.quarantined");
+        }
+    }
+
+    /**
+     * A message that can't be converted will never be.
+     */
+    private boolean isRetryable(final Throwable cause) {
+        return !(cause instanceof MessageConversionException);
+    }
+
+    private static int retries(final Message message) {
+        Object retries = message.getMessageProperties().getHeaders().get(RETRY_COUNT);
+        return retries instanceof Number ? ((Number) retries).intValue() : 0;
+    }
+
+    private static String routingKey(final Message message) {
+        return message.getMessageProperties().getReceivedRoutingKey();
+    }
+
+}
@@ -0,0 +1,63 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Runs tasks in parallel but in order per key: the tasks of the same key always go to the same single thread partition, so they run one after the other in
+ * the order they were submitted, while the tasks of different keys run in the other partitions at the same time.
+ *
+ * The queues of the partitions are not bounded, the prefetch of the listener container is what limits them (a message is acknowledged only after it is
+ * indexed).
+ */
+public class PartitionedExecutor {
+
+    private final ExecutorService[] partitions;
+
+    public PartitionedExecutor(final String name, final int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is needed for " + name + ", not " + partitions);
+        }
+
+        this.partitions = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            String threadName = name + "-" + i;
+            this.partitions[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, threadName));
+        }
+    }
+
+    /**
+     *
+     * @param key
+     *            the tasks with the same key run in order, null runs in the first partition.
+     * @param task
+     *            the task.
+     */
+    public void execute(final String key, final Runnable task) {
+        this.partitions[partition(key)].execute(task);
+    }
+
+    /**
+     * Stop taking tasks and wait (a bit) for the ones already submitted.
+     */
+    public void shutdown() {
+        for (ExecutorService partition : this.partitions) {
+            partition.shutdown();
+        }
+        for (ExecutorService partition : this.partitions) {
+            try {
+                partition.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int partition(final String key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), this.partitions.length);
+    }
+
+}
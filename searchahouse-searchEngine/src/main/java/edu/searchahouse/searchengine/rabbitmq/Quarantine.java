@@ -0,0 +1,121 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+
+/**
+ *
+ * The messages that failed every retry (see {@link FailedMessageHandler}) wait in the quarantine queue until the cause is fixed, then they are replayed:
+ * published again to the queue they came from, without the exception and with the retries count reset.
+ */
+@Component
+public class Quarantine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Quarantine.class);
+
+    // the queue a quarantined message came from, set by the RepublishMessageRecoverer. Messages dead lettered by rabbitMq keep their routing key instead.
+    private static final String ORIGINAL_ROUTING_KEY = "x-original-routingKey";
+
+    private static final List<String> ENTITY_QUEUES = Arrays.asList(RabbitMqConsumerConfiguration.amqpQueueProperty,
+            RabbitMqConsumerConfiguration.amqpQueueAgent, RabbitMqConsumerConfiguration.amqpQueueLead);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+
+    @Autowired
+    public Quarantine(final RabbitTemplate rabbitTemplate, final AmqpAdmin amqpAdmin) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+    }
+
+    /**
+     * @return the number of quarantined messages.
+     */
+    public int count() {
+        Properties properties = this.amqpAdmin.getQueueProperties(RabbitMqConsumerConfiguration.amqpQueueQuarantine);
+        return properties == null ? 0 : (Integer) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+    }
+
+    /**
+     *
+     * Replay the oldest quarantined messages.
+     *
+     * @param max
+     *            the max number of messages to replay.
+     * @return the number of messages replayed.
+     */
+    public int replay(final int max) {
+        return this.rabbitTemplate.execute(channel -> {
+            int replayed = 0;
+            List<Long> unknown = new ArrayList<>();
+
+            while (replayed < max) {
+                GetResponse response = channel.basicGet(RabbitMqConsumerConfiguration.amqpQueueQuarantine, false);
+                if (response == null) {
+                    break;
+                }
+
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                String queue = originalQueue(response);
+
+                if (!ENTITY_QUEUES.contains(queue)) {
+                    // we don't know where it goes, it stays in the quarantine.
+                    LOGGER.warn("Quarantined message with routing key {} does not belong to any queue, not replayed.", queue);
+                    unknown.add(deliveryTag);
+                    continue;
+                }
+
+                // straight to the queue, through the default exchange. Acked after it is published, worst case it is replayed twice.
+                channel.basicPublish("", queue, withoutFailure(response.getProps()), response.getBody());
+                channel.basicAck(deliveryTag, false);
+                replayed++;
+            }
+
+            for (Long deliveryTag : unknown) {
+                channel.basicNack(deliveryTag, false, true);
+            }
+
+            LOGGER.info("Replayed {} quarantined messages.", replayed);
+            return replayed;
+        });
+    }
+
+    private static String originalQueue(final GetResponse response) {
+        Map<String, Object> headers = response.getProps().getHeaders();
+        if (headers != null && headers.get(ORIGINAL_ROUTING_KEY) != null) {
+            return headers.get(ORIGINAL_ROUTING_KEY).toString();
+        }
+        return response.getEnvelope().getRoutingKey();
+    }
+
+    private static AMQP.BasicProperties withoutFailure(final AMQP.BasicProperties properties) {
+        Map<String, Object> headers = new HashMap<>();
+        if (properties.getHeaders() != null) {
+            properties.getHeaders().forEach((name, value) -> {
+                if (!name.startsWith("x-exception-") && !name.startsWith("x-original-") && !name.equals("x-death")
+                        && !name.equals(FailedMessageHandler.RETRY_COUNT)) {
+                    headers.put(name, value);
+                }
+            });
+        }
+        return properties.builder().headers(headers).expiration(null).build();
+    }
+
+}
@@ -1,114 +1,287 @@
 package edu.searchahouse.searchengine.rabbitmq;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.data.elasticsearch.core.geo.GeoPoint;
-import org.springframework.data.geo.Point;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+import edu.searchahouse.searchengine.model.Address;
 import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.BaseEntity;
 import edu.searchahouse.searchengine.model.Lead;
 import edu.searchahouse.searchengine.model.Property;
-import edu.searchahouse.searchengine.persistence.repository.elasticsearch.AgentRepository;
-import edu.searchahouse.searchengine.persistence.repository.elasticsearch.LeadRepository;
-import edu.searchahouse.searchengine.persistence.repository.elasticsearch.PropertyRepository;
+import edu.searchahouse.searchengine.model.Suggestion.SuggestionType;
 import edu.searchahouse.searchengine.rabbitmq.wrappers.AgentWrapperAmqp;
 import edu.searchahouse.searchengine.rabbitmq.wrappers.LeadWrapperAmqp;
 import edu.searchahouse.searchengine.rabbitmq.wrappers.PropertyWrapperAmqp;
 import edu.searchahouse.searchengine.rabbitmq.wrappers.QueueOperation;
-import edu.searchahouse.searchengine.service.PropertyService;
+import edu.searchahouse.searchengine.service.impl.GeocodingPipeline;
+import edu.searchahouse.searchengine.service.impl.ResultCache;
+import edu.searchahouse.searchengine.service.impl.SuggestIndex;
 
 // we don't want to execute the listener while testing.
 @Profile({ "!test", "!integrationTest" })
 @Component
 public class Receiver {
 
-    private final PropertyService propertyService;
+    private final GeocodingPipeline geocodingPipeline;
+
+    private final ElasticsearchBulkIndexer bulkIndexer;
+
+    private final ObjectMapper objectMapper;
 
-    private final AgentRepository agentRepository;
-    private final PropertyRepository propertyRepository;
-    private final LeadRepository leadRepository;
+    private final MessageConverter messageConverter;
+
+    private final FailedMessageHandler failedMessageHandler;
+
+    private final SuggestIndex suggestIndex;
+
+    private final ResultCache resultCache;
+
+    // the messages of each queue are processed in parallel, but in order for the same entity.
+    private final PartitionedExecutor propertyPartitions;
+    private final PartitionedExecutor agentPartitions;
+    private final PartitionedExecutor leadPartitions;
 
     @Autowired
-    public Receiver(AgentRepository agentRepository, PropertyRepository propertyRepository, LeadRepository leadRepository, final PropertyService propertyService) {
-        this.agentRepository = agentRepository;
-        this.propertyRepository = propertyRepository;
-        this.leadRepository = leadRepository;
-        this.propertyService = propertyService;
-    }
-
-    @RabbitListener(queues = "SEARCHAHOUSE-QUEUE-PROPERTY")
-    public void receivePropertyMessage(PropertyWrapperAmqp<Property> wrapper) {
-        if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
-            createProperty(wrapper.getEntity());
-        } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
-            deleteProperty(wrapper.getEntity());
-        } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
-            updateProperty(wrapper.getEntity());
+    public Receiver(//
+            final GeocodingPipeline geocodingPipeline, //
+            final ElasticsearchBulkIndexer bulkIndexer, //
+            final ObjectMapper objectMapper, //
+            @Qualifier("entityMessageConverter") final MessageConverter messageConverter, //
+            final FailedMessageHandler failedMessageHandler, //
+            final SuggestIndex suggestIndex, //
+            final ResultCache resultCache, //
+            @Value("${searchahouse.consumer.property.concurrency:4}") final int propertyConcurrency, //
+            @Value("${searchahouse.consumer.agent.concurrency:2}") final int agentConcurrency, //
+            @Value("${searchahouse.consumer.lead.concurrency:2}") final int leadConcurrency //
+    ) {
+        this.geocodingPipeline = geocodingPipeline;
+        this.bulkIndexer = bulkIndexer;
+        this.objectMapper = objectMapper;
+        this.messageConverter = messageConverter;
+        this.failedMessageHandler = failedMessageHandler;
+        this.suggestIndex = suggestIndex;
+        this.resultCache = resultCache;
+        this.propertyPartitions = new PartitionedExecutor("property-consumer", propertyConcurrency);
+        this.agentPartitions = new PartitionedExecutor("agent-consumer", agentConcurrency);
+        this.leadPartitions = new PartitionedExecutor("lead-consumer", leadConcurrency);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.propertyPartitions.shutdown();
+        this.agentPartitions.shutdown();
+        this.leadPartitions.shutdown();
+    }
+
+    @RabbitListener(queues = RabbitMqConsumerConfiguration.amqpQueueProperty, containerFactory = "propertyListenerContainerFactory")
+    public void receivePropertyMessage(Message message, Channel channel) {
+        Delivery delivery = new Delivery(message, channel, this.failedMessageHandler);
+        try {
+            @SuppressWarnings("unchecked")
+            PropertyWrapperAmqp<Property> wrapper = (PropertyWrapperAmqp<Property>) read(message, PropertyWrapperAmqp.class);
+            this.propertyPartitions.execute(wrapper.getPrimaryKey(), () -> processProperty(wrapper, delivery));
+        } catch (RuntimeException e) {
+            delivery.fail(e);
+        }
+    }
+
+    private void processProperty(final PropertyWrapperAmqp<Property> wrapper, final Delivery delivery) {
+        try {
+            if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
+                createProperty(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+            } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
+                this.resultCache.propertyChanged(wrapper.getPrimaryKey(), null);
+                this.bulkIndexer.delete(Property.class, wrapper.getPrimaryKey(), wrapper.getVersion(), delivery,
+                        () -> this.suggestIndex.remove(SuggestionType.ADDRESS, wrapper.getPrimaryKey()));
+            } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
+                updateProperty(wrapper, delivery);
+            }
+        } catch (RuntimeException e) {
+            delivery.fail(e);
+        }
+    }
+
+    @RabbitListener(queues = RabbitMqConsumerConfiguration.amqpQueueAgent, containerFactory = "agentListenerContainerFactory")
+    public void receiveAgentMessage(Message message, Channel channel) {
+        Delivery delivery = new Delivery(message, channel, this.failedMessageHandler);
+        try {
+            @SuppressWarnings("unchecked")
+            AgentWrapperAmqp<Agent> wrapper = (AgentWrapperAmqp<Agent>) read(message, AgentWrapperAmqp.class);
+            this.agentPartitions.execute(wrapper.getPrimaryKey(), () -> processAgent(wrapper, delivery));
+        } catch (RuntimeException e) {
+            delivery.fail(e);
         }
     }
 
-    @RabbitListener(queues = "SEARCHAHOUSE-QUEUE-AGENT")
-    public void receiveAgentMessage(AgentWrapperAmqp<Agent> wrapper) {
-        if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
-            createAgent(wrapper.getEntity());
-        } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
-            deleteAgent(wrapper.getEntity());
-        } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
-            updateAgent(wrapper.getEntity());
+    private void processAgent(final AgentWrapperAmqp<Agent> wrapper, final Delivery delivery) {
+        try {
+            if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
+                createAgent(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+            } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
+                this.resultCache.agentChanged(wrapper.getPrimaryKey());
+                this.bulkIndexer.delete(Agent.class, wrapper.getPrimaryKey(), wrapper.getVersion(), delivery,
+                        () -> this.suggestIndex.remove(SuggestionType.AGENT, wrapper.getPrimaryKey()));
+            } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
+                updateAgent(wrapper, delivery);
+            }
+        } catch (RuntimeException e) {
+            delivery.fail(e);
         }
     }
 
-    @RabbitListener(queues = "SEARCHAHOUSE-QUEUE-LEAD")
-    public void receiveLeadMessage(LeadWrapperAmqp<Lead> wrapper) {
-        if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
-            createLead(wrapper.getEntity());
-        } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
-            deleteLead(wrapper.getEntity());
-        } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
-            updateLead(wrapper.getEntity());
+    @RabbitListener(queues = RabbitMqConsumerConfiguration.amqpQueueLead, containerFactory = "leadListenerContainerFactory")
+    public void receiveLeadMessage(Message message, Channel channel) {
+        Delivery delivery = new Delivery(message, channel, this.failedMessageHandler);
+        try {
+            @SuppressWarnings("unchecked")
+            LeadWrapperAmqp<Lead> wrapper = (LeadWrapperAmqp<Lead>) read(message, LeadWrapperAmqp.class);
+            this.leadPartitions.execute(wrapper.getPrimaryKey(), () -> processLead(wrapper, delivery));
+        } catch (RuntimeException e) {
+            delivery.fail(e);
         }
     }
 
-    private void createProperty(Property entity) {
-        // first find out the geo point for the property address.
-        Point gp = this.propertyService.findPointForAddress(entity.getAddress());
-        entity.setLocation(new GeoPoint(gp.getX(), gp.getY()));
+    private void processLead(final LeadWrapperAmqp<Lead> wrapper, final Delivery delivery) {
+        try {
+            if (QueueOperation.CREATE.equals(wrapper.getCrudOperation())) {
+                createLead(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+            } else if (QueueOperation.DELETE.equals(wrapper.getCrudOperation())) {
+                this.bulkIndexer.delete(Lead.class, wrapper.getPrimaryKey(), wrapper.getVersion(), delivery);
+            } else if (QueueOperation.UPDATE.equals(wrapper.getCrudOperation())) {
+                updateLead(wrapper, delivery);
+            }
+        } catch (RuntimeException e) {
+            delivery.fail(e);
+        }
+    }
 
-        propertyRepository.save(entity);
+    @SuppressWarnings("unchecked")
+    private void createProperty(Property entity, final Delivery delivery) {
+        // the location is set by the geocoding pipeline, a slow geocoder must not stall the consumer. The crud service has it once the pipeline wrote it.
+        if (entity.getLocation() == null) {
+            this.geocodingPipeline.locate(entity);
+        }
+
+        // before the indexer, the cache needs the property as it is indexed now.
+        this.resultCache.propertyChanged(entity.getPrimaryKey(), this.objectMapper.convertValue(entity, Map.class));
+        // the suggestions follow elasticsearch: only once the indexer wrote the change, never a stale one.
+        this.bulkIndexer.index(entity, delivery, () -> this.suggestIndex.put(entity));
     }
 
-    private void deleteProperty(final Property entity) {
-        this.propertyRepository.delete(entity);
+    private void updateProperty(final PropertyWrapperAmqp<Property> wrapper, final Delivery delivery) {
+        if (wrapper.getEntity() != null) {
+            createProperty(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+            return;
+        }
+
+        Map<String, Object> changes = new LinkedHashMap<>(wrapper.getChanges());
+
+        if (changes.containsKey("address")) {
+            // new address, new location.
+            Property property = new Property();
+            property.setPrimaryKey(wrapper.getPrimaryKey());
+            property.setAddress(this.objectMapper.convertValue(changes.get("address"), Address.class));
+
+            // otherwise the pipeline writes the location to the crud service once the address is geocoded, until then the old one is gone (the crud service
+            // removed it too).
+            changes.put("location", this.geocodingPipeline.locate(property) ? this.objectMapper.convertValue(property.getLocation(), Map.class) : null);
+        }
+
+        this.resultCache.propertyChanged(wrapper.getPrimaryKey(), changes);
+        this.bulkIndexer.update(Property.class, wrapper.getPrimaryKey(), wrapper.getVersion(), changes, delivery,
+                () -> this.suggestIndex.update(SuggestionType.ADDRESS, wrapper.getPrimaryKey(), wrapper.getVersion(), changes));
     }
 
-    private void updateProperty(final Property entity) {
-        // TODO:
+    private void createAgent(Agent entity, final Delivery delivery) {
+        this.resultCache.agentChanged(entity.getPrimaryKey());
+        this.bulkIndexer.index(entity, delivery, () -> this.suggestIndex.put(entity));
     }
 
-    private void createAgent(Agent entity) {
-        this.agentRepository.save(entity);
+    private void updateAgent(final AgentWrapperAmqp<Agent> wrapper, final Delivery delivery) {
+        if (wrapper.getEntity() != null) {
+            createAgent(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+        } else {
+            Map<String, Object> changes = agentChanges(wrapper.getChanges());
+            this.resultCache.agentChanged(wrapper.getPrimaryKey());
+            this.bulkIndexer.update(Agent.class, wrapper.getPrimaryKey(), wrapper.getVersion(), changes, delivery,
+                    () -> this.suggestIndex.update(SuggestionType.AGENT, wrapper.getPrimaryKey(), wrapper.getVersion(), changes));
+        }
     }
 
-    private void deleteAgent(final Agent entity) {
-        this.agentRepository.delete(entity);
+    private void createLead(Lead entity, final Delivery delivery) {
+        this.bulkIndexer.index(entity, delivery);
     }
 
-    private void updateAgent(final Agent entity) {
-        // TODO:
+    private void updateLead(final LeadWrapperAmqp<Lead> wrapper, final Delivery delivery) {
+        if (wrapper.getEntity() != null) {
+            createLead(versioned(wrapper.getEntity(), wrapper.getVersion()), delivery);
+        } else {
+            this.bulkIndexer.update(Lead.class, wrapper.getPrimaryKey(), wrapper.getVersion(), wrapper.getChanges(), delivery);
+        }
     }
 
-    private void createLead(Lead entity) {
-        this.leadRepository.save(entity);
+    /**
+     * The agents of the crud service used to embed their properties and leads, now they reference the agent ("agentIds" of the property, "agentId" of the
+     * lead). The changes to the embedded collections still in the queue or the exports are left out, the migration of the crud service publishes the new
+     * references.
+     */
+    private static Map<String, Object> agentChanges(final Map<String, Object> changes) {
+        Map<String, Object> agentChanges = new LinkedHashMap<>();
+
+        changes.forEach((field, value) -> {
+            if (!isEmbeddedCollection(field, "properties") && !isEmbeddedCollection(field, "leads")) {
+                agentChanges.put(field, value);
+            }
+        });
+
+        return agentChanges;
     }
 
-    private void deleteLead(final Lead entity) {
-        this.leadRepository.delete(entity);
+    private static boolean isEmbeddedCollection(final String field, final String collection) {
+        return field.equals(collection) || field.startsWith(collection + ".");
     }
 
-    private void updateLead(final Lead entity) {
-        // TODO:
+    /**
+     * The version is not part of the entity json (it is the version of the elasticsearch document), the wrapper carries it.
+     */
+    private static <E extends BaseEntity> E versioned(final E entity, final Long version) {
+        entity.setVersion(version);
+        return entity;
+    }
+
+    /**
+     * The messages are converted here and not by the listener container: with manual acknowledge the container would leave a message that can't be
+     * converted unacked forever.
+     */
+    private Object read(final Message message, final Class<?> type) {
+        String contentType = message.getMessageProperties().getContentType();
+
+        Object payload = this.messageConverter.fromMessage(MessageBuilder.withPayload(message.getBody()) //
+                .setHeader(MessageHeaders.CONTENT_TYPE, contentType) //
+                .build(), type);
+
+        if (payload == null) {
+            throw new MessageConversionException("Can't convert a message with content type " + contentType);
+        }
+        return payload;
     }
 
 }
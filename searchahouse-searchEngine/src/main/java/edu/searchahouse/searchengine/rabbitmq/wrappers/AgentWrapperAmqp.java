@@ -1,5 +1,7 @@
 package edu.searchahouse.searchengine.rabbitmq.wrappers;
 
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 
@@ -8,8 +10,14 @@ import edu.searchahouse.searchengine.model.Agent;
 @JsonAutoDetect(fieldVisibility = Visibility.ANY)
 public class AgentWrapperAmqp<E extends Agent> {
 
+    // only in full events (CREATE, or UPDATE of the whole entity).
     private E entity;
+    private String primaryKey;
     private QueueOperation crudOperation;
+    // version of the entity in the crud service after the write.
+    private Long version;
+    // only in delta events (UPDATE of some fields), see DocumentChanges.
+    private Map<String, Object> changes;
 
     public AgentWrapperAmqp() {
     }
@@ -34,4 +42,28 @@ public class AgentWrapperAmqp<E extends Agent> {
     public QueueOperation getCrudOperation() {
         return crudOperation;
     }
+
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public void setPrimaryKey(String primaryKey) {
+        this.primaryKey = primaryKey;
+    }
+
+    public Map<String, Object> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(Map<String, Object> changes) {
+        this.changes = changes;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
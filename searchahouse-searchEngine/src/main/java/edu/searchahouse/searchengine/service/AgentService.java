@@ -9,7 +9,14 @@ import edu.searchahouse.searchengine.model.Agent;
 
 public interface AgentService {
 
-	List<Agent> findAgentsByFirstName(final String autocompleteFirstName);
+	/**
+	 * 
+	 * Agents whose first name starts with the text, only with the fields of a suggestion list (no properties nor leads).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the page is too big or too deep.
+	 */
+	Page<Agent> findAgentsByFirstName(final String autocompleteFirstName, final Pageable pageable);
 	
 	Page<Agent> findAll( final Pageable page );
 	
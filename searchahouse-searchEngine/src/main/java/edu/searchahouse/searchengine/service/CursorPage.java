@@ -0,0 +1,30 @@
+package edu.searchahouse.searchengine.service;
+
+import java.util.List;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ *
+ * A page of results that also knows where the next one starts, see {@link DistanceCursor}.
+ */
+public class CursorPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DistanceCursor next;
+
+    public CursorPage(final List<T> content, final Pageable pageable, final long total, final DistanceCursor next) {
+        super(content, pageable, total);
+        this.next = next;
+    }
+
+    /**
+     * @return the cursor of the last result, null if this is the last page.
+     */
+    public DistanceCursor getNext() {
+        return next;
+    }
+
+}
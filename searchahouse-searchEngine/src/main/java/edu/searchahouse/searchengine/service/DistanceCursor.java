@@ -0,0 +1,49 @@
+package edu.searchahouse.searchengine.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ *
+ * Position of a property in a search sorted by distance and primary key: the next page starts right after it, whatever its depth, instead of skipping
+ * "page * size" results. Sent to the client as an opaque token.
+ */
+public final class DistanceCursor {
+
+    // in meters, exactly as elasticsearch returned it in the sort values.
+    private final double distance;
+    private final String primaryKey;
+
+    public DistanceCursor(final double distance, final String primaryKey) {
+        this.distance = distance;
+        this.primaryKey = primaryKey;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the token was not made by {@link #encode()}.
+     */
+    public static DistanceCursor decode(final String token) {
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = cursor.indexOf(':');
+            return new DistanceCursor(Double.parseDouble(cursor.substring(0, separator)), cursor.substring(separator + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token);
+        }
+    }
+
+    public String encode() {
+        // Double.toString keeps every digit, the distance must match the indexed one exactly.
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((this.distance + ":" + this.primaryKey).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
+}
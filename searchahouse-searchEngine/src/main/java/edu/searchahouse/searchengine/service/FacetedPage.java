@@ -0,0 +1,28 @@
+package edu.searchahouse.searchengine.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ *
+ * A page of results with the facets of the whole result: facet name -> bucket -> results in the bucket.
+ */
+public class FacetedPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Map<String, Long>> facets;
+
+    public FacetedPage(final List<T> content, final Pageable pageable, final long total, final Map<String, Map<String, Long>> facets) {
+        super(content, pageable, total);
+        this.facets = facets;
+    }
+
+    public Map<String, Map<String, Long>> getFacets() {
+        return facets;
+    }
+
+}
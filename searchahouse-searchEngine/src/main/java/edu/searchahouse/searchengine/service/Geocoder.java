@@ -0,0 +1,20 @@
+package edu.searchahouse.searchengine.service;
+
+import org.springframework.data.geo.Point;
+
+import edu.searchahouse.searchengine.model.Address;
+
+public interface Geocoder {
+
+	/**
+	 * Find the geo point (x = latitude, y = longitude) of an address.
+	 * 
+	 * @param address
+	 *            the address to resolve.
+	 * @return the point, or null if the address could not be resolved.
+	 * @throws edu.searchahouse.searchengine.exceptions.GeocodingException
+	 *             if the geocoding service failed.
+	 */
+	Point geocode(final Address address);
+
+}
@@ -1,11 +1,19 @@
 package edu.searchahouse.searchengine.service;
 
-import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 import edu.searchahouse.searchengine.model.Location;
 
 public interface LocationService {
 
-    List<Location> findLocationsByState(final String autocompleteState);
+    /**
+     * 
+     * Locations whose state starts with the text, only with the fields of a suggestion list.
+     * 
+     * @throws IllegalArgumentException
+     *             if the page is too big or too deep.
+     */
+    Page<Location> findLocationsByState(final String autocompleteState, final Pageable pageable);
 
 }
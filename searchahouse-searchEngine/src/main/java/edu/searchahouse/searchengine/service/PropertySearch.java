@@ -0,0 +1,90 @@
+package edu.searchahouse.searchengine.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.searchahouse.searchengine.model.Property.PropertyStatus;
+import edu.searchahouse.searchengine.model.Property.PropertyType;
+
+/**
+ *
+ * What a property search looks for, every criteria is optional: the text (name and address), around a point, the types, the status and the price range.
+ * Bound from the request parameters of the same name.
+ */
+public class PropertySearch {
+
+    private String q;
+    private Double latitude;
+    private Double longitude;
+    // kilometers around the point.
+    private Double distance = 1.0;
+    private List<PropertyType> type = new ArrayList<>();
+    private List<PropertyStatus> status = new ArrayList<>();
+    private Long minPrice;
+    private Long maxPrice;
+
+    public String getQ() {
+        return q;
+    }
+
+    public void setQ(String q) {
+        this.q = q;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public Double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(Double distance) {
+        this.distance = distance;
+    }
+
+    public List<PropertyType> getType() {
+        return type;
+    }
+
+    public void setType(List<PropertyType> type) {
+        this.type = type;
+    }
+
+    public List<PropertyStatus> getStatus() {
+        return status;
+    }
+
+    public void setStatus(List<PropertyStatus> status) {
+        this.status = status;
+    }
+
+    public Long getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Long minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Long maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+}
@@ -10,18 +10,65 @@ import org.springframework.data.geo.Point;
 
 import edu.searchahouse.searchengine.model.Address;
 import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.PropertyCluster;
 
 public interface PropertyService {
     
     public Page<Property> findAll( final Pageable pageable );
 
-	public List<Property> findPropertiesByLocation(final GeoPoint geoPoint, final Double distance, final SortOrder sortOrder);
+	/**
+	 * 
+	 * Properties around a point, sorted by distance (ties by primary key).
+	 * 
+	 * @param pageable
+	 *            the page, only up to "searchahouse.search.max-result-window" results deep.
+	 * @param after
+	 *            where the page starts, for deeper pages (the page number is ignored). Null to use the page number.
+	 * @throws IllegalArgumentException
+	 *             if the page is too big or too deep.
+	 */
+	public CursorPage<Property> findPropertiesByLocation(final GeoPoint geoPoint, final Double distance, final SortOrder sortOrder, final Pageable pageable,
+			final DistanceCursor after);
+
+	/**
+	 * 
+	 * Group the properties inside a bounding box in geohash cells, as big as the zoom of the map.
+	 * 
+	 * @param zoom
+	 *            the zoom of the map, from 0 (the world) to 21 (a building).
+	 * @return one cluster per cell with properties, with the properties only if the cell has "searchahouse.search.clusters.expand-threshold" or less.
+	 */
+	public List<PropertyCluster> findPropertyClusters(final GeoPoint topLeft, final GeoPoint bottomRight, final int zoom);
+
+	/**
+	 * 
+	 * Properties matching every criteria of the search, sorted by relevance (ties by primary key), with the facets of all of them: "type", "status" and
+	 * "price" (histogram of "searchahouse.search.facets.price-interval").
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the page is too big or too deep.
+	 */
+	public FacetedPage<Property> searchProperties(final PropertySearch search, final Pageable pageable);
 
 	public Page<Property> searchPropertiesByAddress(final String queryValue, final boolean isAutocompleteSearch, final Pageable pageable);
 
-	public List<Property> findPropertiesByAgentEmail(final String email);
+	/**
+	 * 
+	 * The properties of an agent: the agent only has their ids, the properties are read from their own index.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the page is too big or too deep.
+	 */
+	public Page<Property> findPropertiesByAgentEmail(final String email, final Pageable pageable);
 
-	public List<Property> findPropertiesByAgentId(String agentId);
+	/**
+	 * 
+	 * The properties of an agent: the agent only has their ids, the properties are read from their own index.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the page is too big or too deep.
+	 */
+	public Page<Property> findPropertiesByAgentId(final String agentId, final Pageable pageable);
 
 	Property findPropertyByPrimaryKey(final String propertyId);
 
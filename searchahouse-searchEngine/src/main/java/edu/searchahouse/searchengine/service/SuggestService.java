@@ -0,0 +1,21 @@
+package edu.searchahouse.searchengine.service;
+
+import java.util.List;
+
+import edu.searchahouse.searchengine.model.Suggestion;
+
+public interface SuggestService {
+
+	/**
+	 * 
+	 * Addresses, locations and agent names with a word starting with the text, from memory. Elasticsearch is asked (fuzzy) only when nothing starts with
+	 * the text, to forgive the typos.
+	 * 
+	 * @param text
+	 *            what the user typed so far.
+	 * @param size
+	 *            max suggestions.
+	 */
+	public List<Suggestion> suggest(final String text, final int size);
+
+}
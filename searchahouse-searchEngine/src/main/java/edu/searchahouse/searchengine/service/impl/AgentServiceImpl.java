@@ -1,13 +1,12 @@
 package edu.searchahouse.searchengine.service.impl;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.stereotype.Service;
 
+import edu.searchahouse.searchengine.exceptions.EntityNotFoundException;
 import edu.searchahouse.searchengine.model.Agent;
 import edu.searchahouse.searchengine.persistence.repository.elasticsearch.AgentRepository;
 import edu.searchahouse.searchengine.service.AgentService;
@@ -19,19 +18,28 @@ public class AgentServiceImpl implements AgentService {
 
     private final ElasticsearchOperations elasticsearchOperations;
 
+    private final AutocompleteSearch autocompleteSearch;
+
+    private final VersionedGet versionedGet;
+
     @Autowired
     public AgentServiceImpl(//
             final AgentRepository agentRepository, //
-            final ElasticsearchOperations elasticsearchOperations //
+            final ElasticsearchOperations elasticsearchOperations, //
+            final AutocompleteSearch autocompleteSearch, //
+            final VersionedGet versionedGet //
     ) {
         this.agentRepository = agentRepository;
         this.elasticsearchOperations = elasticsearchOperations;
+        this.autocompleteSearch = autocompleteSearch;
+        this.versionedGet = versionedGet;
     }
 
     @Override
-    public List<Agent> findAgentsByFirstName(final String autocompleteFirstName) {
+    public Page<Agent> findAgentsByFirstName(final String autocompleteFirstName, final Pageable pageable) {
 
-        List<Agent> agents = this.agentRepository.findAutocompleteAgentsByFirstName(autocompleteFirstName);
+        Page<Agent> agents = this.autocompleteSearch.search(Agent.class, "firstName.autocomplete", autocompleteFirstName, pageable, //
+                "primaryKey", "firstName", "lastName", "email", "imageUrl");
 
         return agents;
     }
@@ -57,7 +65,7 @@ public class AgentServiceImpl implements AgentService {
 	@Override
 	public Agent findAgentByPrimaryKey(String id) {
 		
-		Agent agent = this.agentRepository.findOne(id);
+		Agent agent = this.versionedGet.get(Agent.class, id).orElseThrow(() -> new EntityNotFoundException("Agent"));
 		
         return agent;
 	}
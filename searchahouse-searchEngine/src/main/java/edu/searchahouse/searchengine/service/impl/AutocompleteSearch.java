@@ -0,0 +1,93 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+
+//@formatter:off
+/**
+ *
+ * The autocomplete searches of the entity endpoints (agents by first name, locations by state): a bounded page straight from elasticsearch.
+ *
+ * --- from and size go into the query, a page can't be bigger than "searchahouse.suggest.max-size" nor deeper than "searchahouse.search.max-result-window".
+ * --- only the fields a suggestion list shows are read from the source, the rest of the entity stays in elasticsearch (the agents carry all their
+ * --- properties and leads).
+ */
+//@formatter:on
+@Component
+public class AutocompleteSearch {
+
+    private final Client client;
+    private final int maxSize;
+    private final int maxResultWindow;
+
+    private final EntityMapper entityMapper = new DefaultEntityMapper();
+
+    @Autowired
+    public AutocompleteSearch(//
+            final Client client, //
+            @Value("${searchahouse.suggest.max-size:20}") final int maxSize, //
+            @Value("${searchahouse.search.max-result-window:1000}") final int maxResultWindow //
+    ) {
+        this.client = client;
+        this.maxSize = maxSize;
+        this.maxResultWindow = maxResultWindow;
+    }
+
+    /**
+     *
+     * @param document
+     *            the document class, the alias and type come from its @Document.
+     * @param field
+     *            the "autocomplete" (edge ngrams) field to match the text against.
+     * @param includes
+     *            the source fields to read, the others are null in the entities.
+     * @throws IllegalArgumentException
+     *             if the page is too big or too deep.
+     */
+    public <T> Page<T> search(final Class<T> document, final String field, final String text, final Pageable pageable, final String... includes) {
+
+        if (pageable.getPageSize() > this.maxSize) {
+            throw new IllegalArgumentException("The page size can't be bigger than " + this.maxSize);
+        }
+        if (pageable.getOffset() + pageable.getPageSize() > this.maxResultWindow) {
+            throw new IllegalArgumentException("Pages deeper than " + this.maxResultWindow + " results can't be requested");
+        }
+
+        SearchResponse response = this.client.prepareSearch(ElasticsearchIndexBootstrap.alias(document)) //
+                .setTypes(ElasticsearchIndexBootstrap.type(document)) //
+                .setQuery(QueryBuilders.matchQuery(field, text).analyzer("standard")) //
+                .setFrom(pageable.getOffset()) //
+                .setSize(pageable.getPageSize()) //
+                .setFetchSource(includes, null) //
+                .get();
+
+        List<T> content = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            try {
+                content.add(this.entityMapper.mapToObject(hit.sourceAsString(), document));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return new PageImpl<T>(content, pageable, response.getHits().getTotalHits());
+    }
+
+}
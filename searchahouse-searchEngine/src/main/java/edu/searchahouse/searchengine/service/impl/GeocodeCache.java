@@ -0,0 +1,308 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.geo.Point;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.model.Address;
+
+//@formatter:off
+/**
+ *
+ * Bounded cache of geocoding results. Many properties share a building or a street, so the same address is geocoded over and over.
+ *
+ * --- the key is the normalized (street, city, state): lower case, no punctuation and single spaces, so "742 Evergreen Terrace." and "742  evergreen terrace" are the same address.
+ * --- when the cache is full the least recently used address is evicted.
+ * --- resolved addresses live "searchahouse.geocoder.cache.ttl-hours", addresses the geocoder could not resolve live "searchahouse.geocoder.cache.negative-ttl-hours" (negative cache).
+ * --- if "searchahouse.geocoder.cache.file" is set the cache is loaded from that file on startup and saved every "searchahouse.geocoder.cache.save-interval" milliseconds and on shutdown.
+ * --- the file is json (address -> lat, lon and expiration), only data is read back from it, never classes.
+ *
+ * Metrics (see /metrics): geocoder.cache.hits, geocoder.cache.misses, geocoder.cache.negative-hits, geocoder.cache.evictions, geocoder.cache.expirations and
+ * geocoder.cache.size.
+ */
+//@formatter:on
+@Component
+public class GeocodeCache implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeocodeCache.class);
+
+    private static final TypeReference<Map<String, CachedGeocode>> SNAPSHOT = new TypeReference<Map<String, CachedGeocode>>() {
+    };
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxSize;
+    private final long ttl;
+    private final long negativeTtl;
+    private final String file;
+    private final long saveInterval;
+
+    private final Map<String, CachedGeocode> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    // true when there are changes not saved to disk yet.
+    private volatile boolean dirty;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public GeocodeCache(//
+            final ObjectMapper objectMapper, //
+            @Value("${searchahouse.geocoder.cache.max-size:100000}") final int maxSize, //
+            @Value("${searchahouse.geocoder.cache.ttl-hours:720}") final long ttlHours, //
+            @Value("${searchahouse.geocoder.cache.negative-ttl-hours:24}") final long negativeTtlHours, //
+            @Value("${searchahouse.geocoder.cache.file:}") final String file, //
+            @Value("${searchahouse.geocoder.cache.save-interval:300000}") final long saveInterval //
+    ) {
+        this.objectMapper = objectMapper;
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.HOURS.toMillis(ttlHours);
+        this.negativeTtl = TimeUnit.HOURS.toMillis(negativeTtlHours);
+        this.file = file;
+        this.saveInterval = saveInterval;
+
+        // access order, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<String, CachedGeocode>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedGeocode> eldest) {
+                if (size() > GeocodeCache.this.maxSize) {
+                    GeocodeCache.this.evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isPersistent()) {
+            return;
+        }
+
+        load();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "geocode-cache-writer"));
+        this.scheduler.scheduleWithFixedDelay(this::saveIfDirty, this.saveInterval, this.saveInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+            saveIfDirty();
+        }
+    }
+
+    /**
+     *
+     * @param address
+     *            the address to look for.
+     * @return the cached result, if any. An empty optional means the geocoder must be called. A present optional with a null point means the address is known
+     *         to be unresolvable (negative cache).
+     */
+    public Optional<CachedGeocode> get(final Address address) {
+        String key = key(address);
+
+        CachedGeocode cached;
+        synchronized (this.entries) {
+            cached = this.entries.get(key);
+            if (cached != null && cached.isExpired()) {
+                this.entries.remove(key);
+                this.expirations.incrementAndGet();
+                this.dirty = true;
+                cached = null;
+            }
+        }
+
+        if (cached == null) {
+            this.misses.incrementAndGet();
+        } else if (cached.isNegative()) {
+            this.negativeHits.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+
+        return Optional.ofNullable(cached);
+    }
+
+    /**
+     *
+     * @param address
+     *            the geocoded address.
+     * @param point
+     *            the geocoder result, null if the address could not be resolved.
+     */
+    public void put(final Address address, final Point point) {
+        CachedGeocode cached = new CachedGeocode(point, System.currentTimeMillis() + (point == null ? this.negativeTtl : this.ttl));
+
+        synchronized (this.entries) {
+            this.entries.put(key(address), cached);
+        }
+
+        this.dirty = true;
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("geocoder.cache.hits", this.hits.get()));
+        metrics.add(new Metric<Long>("geocoder.cache.misses", this.misses.get()));
+        metrics.add(new Metric<Long>("geocoder.cache.negative-hits", this.negativeHits.get()));
+        metrics.add(new Metric<Long>("geocoder.cache.evictions", this.evictions.get()));
+        metrics.add(new Metric<Long>("geocoder.cache.expirations", this.expirations.get()));
+        metrics.add(new Metric<Integer>("geocoder.cache.size", size()));
+        return metrics;
+    }
+
+    /**
+     * @return the normalized "street|city|state" of the address.
+     */
+    static String key(final Address address) {
+        return normalize(address.getStreet()) + "|" + normalize(address.getCity()) + "|" + normalize(address.getState());
+    }
+
+    private static String normalize(final String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.toLowerCase().replaceAll("[^\\p{L}\\p{N}\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+    private boolean isPersistent() {
+        return StringUtils.hasText(this.file);
+    }
+
+    private void load() {
+        Path path = Paths.get(this.file);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Map<String, CachedGeocode> saved = this.objectMapper.readValue(path.toFile(), SNAPSHOT);
+
+            synchronized (this.entries) {
+                saved.forEach((key, cached) -> {
+                    if (!cached.isExpired()) {
+                        this.entries.put(key, cached);
+                    }
+                });
+            }
+
+            LOGGER.info("Loaded {} geocoded addresses from {}.", size(), path);
+        } catch (IOException e) {
+            // the cache is only an optimization, start empty.
+            LOGGER.warn("Could not load the geocode cache from {}, starting with an empty cache.", path, e);
+        }
+    }
+
+    private void saveIfDirty() {
+        if (!this.dirty) {
+            return;
+        }
+        this.dirty = false;
+
+        Map<String, CachedGeocode> snapshot;
+        synchronized (this.entries) {
+            snapshot = new HashMap<>(this.entries);
+        }
+
+        Path path = Paths.get(this.file).toAbsolutePath();
+        try {
+            Files.createDirectories(path.getParent());
+
+            // write a temporary file and then replace the old one, so a crash while saving never leaves a half written cache.
+            Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            this.objectMapper.writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            this.dirty = true;
+            LOGGER.warn("Could not save the geocode cache to {}.", path, e);
+        }
+    }
+
+    /**
+     * A geocoding result. The point is null when the address could not be resolved.
+     */
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE)
+    public static class CachedGeocode {
+
+        // plain doubles, so the file format does not depend on the spring data classes.
+        private final Double lat;
+        private final Double lon;
+        private final long expiresAt;
+
+        CachedGeocode(final Point point, final long expiresAt) {
+            this(point == null ? null : point.getX(), point == null ? null : point.getY(), expiresAt);
+        }
+
+        @JsonCreator
+        CachedGeocode(@JsonProperty("lat") final Double lat, @JsonProperty("lon") final Double lon, @JsonProperty("expiresAt") final long expiresAt) {
+            this.lat = lat;
+            this.lon = lon;
+            this.expiresAt = expiresAt;
+        }
+
+        public Point getPoint() {
+            return isNegative() ? null : new Point(this.lat, this.lon);
+        }
+
+        public boolean isNegative() {
+            return this.lat == null;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > this.expiresAt;
+        }
+
+    }
+
+}
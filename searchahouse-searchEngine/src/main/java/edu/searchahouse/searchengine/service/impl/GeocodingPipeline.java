@@ -0,0 +1,310 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.data.geo.Point;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import edu.searchahouse.searchengine.exceptions.GeocodingException;
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.service.PropertyService;
+import edu.searchahouse.searchengine.service.impl.GeocodeCache.CachedGeocode;
+
+//@formatter:off
+/**
+ *
+ * Geocodes the properties out of the rabbitMq listener thread, so a slow geocoder never stalls the property consumer. The property is indexed right away
+ * without location and, once the address is resolved, the location is written to the crud service ("searchahouse.geocoder.pipeline.source-url"). It is
+ * a write like any other: the property gets a new version in mongo and the change comes back through rabbitMq, so the indexed document never changes
+ * without a new version (and a new ETag). The write is conditional: the crud service refuses it if the property has another address by then, a slow
+ * geocode of an old address must not overwrite the location of the new one.
+ *
+ * --- the geocoder calls run in a pool of "searchahouse.geocoder.pipeline.workers" threads with a queue of "searchahouse.geocoder.pipeline.queue-capacity"
+ * --- requests. When the queue is full the request is dropped: the geocoder never runs on the consumer thread, and the queue never grows past its
+ * --- capacity. The property stays without location until its address changes again or a reindex geocodes the properties that have none.
+ * --- the geocoder is called at most "searchahouse.geocoder.pipeline.rate" times per second (token bucket, bursts of "searchahouse.geocoder.pipeline.burst").
+ * --- a failed geocoder call is retried "searchahouse.geocoder.pipeline.max-attempts" times, waiting "searchahouse.geocoder.pipeline.backoff" milliseconds
+ * --- the first time and doubling the wait on every retry.
+ * --- properties with the same address waiting at the same time share a single geocoder call.
+ *
+ * Metrics (see /metrics): searchengine.geocoder.queue, searchengine.geocoder.in-flight, searchengine.geocoder.pending, gauge.searchengine.geocoder.time-to-geocode,
+ * counter.searchengine.geocoder.coalesced, counter.searchengine.geocoder.retried, counter.searchengine.geocoder.failed, counter.searchengine.geocoder.rejected,
+ * counter.searchengine.geocoder.stale and counter.searchengine.geocoder.located.
+ */
+//@formatter:on
+@Component
+public class GeocodingPipeline implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeocodingPipeline.class);
+
+    // the location endpoint of the crud service.
+    private static final String LOCATION_PATH = "/api/v1/property/{propertyId}/location";
+
+    private final PropertyService propertyService;
+    private final GeocodeCache geocodeCache;
+    private final RestTemplate restTemplate;
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+
+    private final String sourceUrl;
+
+    private final int maxAttempts;
+    private final long backoff;
+
+    private final TokenBucket tokenBucket;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "geocoder-retry"));
+
+    // geocoder requests waiting or running, by normalized address.
+    private final ConcurrentMap<String, CompletableFuture<Point>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Autowired
+    public GeocodingPipeline(//
+            final PropertyService propertyService, //
+            final GeocodeCache geocodeCache, //
+            final RestTemplate restTemplate, //
+            final CounterService counterService, //
+            final GaugeService gaugeService, //
+            @Value("${searchahouse.geocoder.pipeline.source-url:http://localhost:7070}") final String sourceUrl, //
+            @Value("${searchahouse.geocoder.pipeline.workers:4}") final int workers, //
+            @Value("${searchahouse.geocoder.pipeline.queue-capacity:10000}") final int queueCapacity, //
+            @Value("${searchahouse.geocoder.pipeline.rate:10}") final double rate, //
+            @Value("${searchahouse.geocoder.pipeline.burst:10}") final int burst, //
+            @Value("${searchahouse.geocoder.pipeline.max-attempts:5}") final int maxAttempts, //
+            @Value("${searchahouse.geocoder.pipeline.backoff:1000}") final long backoff //
+    ) {
+        this.propertyService = propertyService;
+        this.geocodeCache = geocodeCache;
+        this.restTemplate = restTemplate;
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+        this.sourceUrl = sourceUrl;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+
+        this.tokenBucket = new TokenBucket(burst, rate);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), //
+                r -> new Thread(r, "geocoder-" + threadNumber.incrementAndGet()), //
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.retryScheduler.shutdownNow();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     *
+     * Find out the location of the property. If the address is in the geocode cache the location is set right away, otherwise the address is geocoded in the
+     * background and the location is written to the crud service when it is known.
+     *
+     * @param property
+     *            the property of a new version, not indexed yet.
+     * @return true if the location was set right away.
+     */
+    public boolean locate(final Property property) {
+
+        Address address = property.getAddress();
+        if (address == null) {
+            return false;
+        }
+
+        Optional<CachedGeocode> cached = this.geocodeCache.get(address);
+        if (cached.isPresent()) {
+            property.setLocation(toGeoPoint(cached.get().getPoint()));
+            return true;
+        }
+
+        relocate(property);
+        return false;
+    }
+
+    /**
+     *
+     * Find out the location of a property that is already indexed, or loaded with the version it has in the index (see ReindexJob): its document must not
+     * change without a new version, so the location is always written to the crud service, even when the address is in the geocode cache.
+     *
+     * @param property
+     *            the property, it is not changed.
+     */
+    public void relocate(final Property property) {
+
+        Address address = property.getAddress();
+        if (address == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        // the property is not changed once it is handed to the bulk indexer, the location only goes to the crud service.
+        String primaryKey = property.getPrimaryKey();
+
+        Optional<CachedGeocode> cached = this.geocodeCache.get(address);
+        CompletableFuture<Point> point = cached.isPresent() ? CompletableFuture.completedFuture(cached.get().getPoint()) : geocode(address);
+
+        point.whenComplete((aPoint, e) -> {
+            if (e instanceof RejectedExecutionException) {
+                LOGGER.debug("The geocoder queue is full, property {} stays without location.", primaryKey);
+            } else if (e != null) {
+                this.counterService.increment("searchengine.geocoder.failed");
+                LOGGER.warn("Could not geocode property {}, it stays without location.", primaryKey, e);
+            } else if (aPoint != null) {
+                updateLocation(primaryKey, address, aPoint, start);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Integer>("searchengine.geocoder.queue", this.executor.getQueue().size()));
+        metrics.add(new Metric<Integer>("searchengine.geocoder.in-flight", this.inFlight.get()));
+        metrics.add(new Metric<Integer>("searchengine.geocoder.pending", this.pending.size()));
+        return metrics;
+    }
+
+    /**
+     * @return the geocoder result for the address, shared by every caller asking for the same address while the request is pending.
+     */
+    private CompletableFuture<Point> geocode(final Address address) {
+
+        String key = GeocodeCache.key(address);
+
+        CompletableFuture<Point> future = new CompletableFuture<>();
+        CompletableFuture<Point> existing = this.pending.putIfAbsent(key, future);
+        if (existing != null) {
+            this.counterService.increment("searchengine.geocoder.coalesced");
+            return existing;
+        }
+
+        future.whenComplete((point, e) -> this.pending.remove(key, future));
+
+        attempt(address, future, 1);
+
+        return future;
+    }
+
+    private void attempt(final Address address, final CompletableFuture<Point> future, final int attempt) {
+        try {
+            execute(address, future, attempt);
+        } catch (RejectedExecutionException e) {
+            // the queue is full (or shutting down), the caller is the consumer or the retry scheduler: drop the request instead of running it here.
+            this.counterService.increment("searchengine.geocoder.rejected");
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void execute(final Address address, final CompletableFuture<Point> future, final int attempt) {
+        this.executor.execute(() -> {
+            this.inFlight.incrementAndGet();
+            try {
+                this.tokenBucket.acquire();
+                future.complete(this.propertyService.findPointForAddress(address));
+            } catch (GeocodingException e) {
+                if (attempt < this.maxAttempts) {
+                    this.counterService.increment("searchengine.geocoder.retried");
+                    retryLater(() -> attempt(address, future, attempt + 1), attempt);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                this.inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private void updateLocation(final String primaryKey, final Address address, final Point point, final long start) {
+
+        Map<String, Object> input = new HashMap<>();
+        Map<String, Object> latLon = new HashMap<>();
+        latLon.put("lat", point.getX());
+        latLon.put("lon", point.getY());
+        input.put("address", address);
+        input.put("location", latLon);
+
+        // the crud service checks the address and publishes the location with the new version of the property, the consumer indexes it (and invalidates
+        // the cached searches) in order with the other changes.
+        try {
+            this.restTemplate.put(this.sourceUrl + LOCATION_PATH, input, primaryKey);
+            this.counterService.increment("searchengine.geocoder.located");
+            this.gaugeService.submit("searchengine.geocoder.time-to-geocode", System.currentTimeMillis() - start);
+        } catch (RestClientException e) {
+            if (isStale(e)) {
+                // the address changed or the property was deleted meanwhile, the new address has its own location.
+                this.counterService.increment("searchengine.geocoder.stale");
+                LOGGER.debug("Property {} has another address or no longer exists, its location is dropped.", primaryKey);
+                return;
+            }
+            this.counterService.increment("searchengine.geocoder.failed");
+            LOGGER.warn("Could not write the location of property {}, it stays without location.", primaryKey, e);
+        }
+    }
+
+    private static boolean isStale(final RestClientException e) {
+        return e instanceof HttpClientErrorException
+                && (((HttpClientErrorException) e).getStatusCode() == HttpStatus.CONFLICT || ((HttpClientErrorException) e).getStatusCode() == HttpStatus.NOT_FOUND);
+    }
+
+    private void retryLater(final Runnable retry, final int attempt) {
+        this.retryScheduler.schedule(retry, this.backoff << (attempt - 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the geocode cache key of the address of an indexed property, null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    static String addressKey(final Map<String, Object> source) {
+        Object address = source.get("address");
+        if (!(address instanceof Map)) {
+            return null;
+        }
+        Map<String, Object> fields = (Map<String, Object>) address;
+        return GeocodeCache.key(new Address((String) fields.get("state"), (String) fields.get("city"), (String) fields.get("street")));
+    }
+
+    private static GeoPoint toGeoPoint(final Point point) {
+        return point == null ? null : new GeoPoint(point.getX(), point.getY());
+    }
+
+}
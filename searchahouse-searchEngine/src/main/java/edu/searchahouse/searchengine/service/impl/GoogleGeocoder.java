@@ -0,0 +1,76 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.geo.Point;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.exceptions.GeocodingException;
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.service.Geocoder;
+
+/**
+ * 
+ * Geocoder backed by the google maps geocoding api. This is the default geocoder ("searchahouse.geocoder.provider: google").
+ */
+@Service
+@ConditionalOnProperty(prefix = "searchahouse.geocoder", name = "provider", havingValue = "google", matchIfMissing = true)
+public class GoogleGeocoder implements Geocoder {
+
+    private static final String GOOGLE_API_URL = "https://maps.googleapis.com/maps/api/geocode/json";
+
+    // thread safe once configured, no need to create one per request.
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RestTemplate restTemplate;
+    private final String apiKey;
+
+    @Autowired
+    public GoogleGeocoder(final RestTemplate restTemplate, @Value("${searchahouse.geocoder.google.api-key}") final String apiKey) {
+        this.restTemplate = restTemplate;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public Point geocode(final Address address) {
+
+        String url = UriComponentsBuilder.fromHttpUrl(GOOGLE_API_URL) //
+                .queryParam("address", address.getStreet() + "," + address.getCity() + "," + address.getState()) //
+                .queryParam("sensor", "false") //
+                .queryParam("key", this.apiKey) //
+                .build().encode().toUriString();
+
+        JsonNode jsonNode;
+        try {
+            String result = this.restTemplate.getForObject(url, String.class);
+            jsonNode = this.objectMapper.readTree(result);
+        } catch (RestClientException | IOException e) {
+            throw new GeocodingException("Could not geocode " + url, e);
+        }
+
+        String status = jsonNode.path("status").asText();
+
+        if ("ZERO_RESULTS".equals(status)) {
+            return null;
+        }
+
+        if (!"OK".equals(status)) {
+            // OVER_QUERY_LIMIT, REQUEST_DENIED, INVALID_REQUEST or UNKNOWN_ERROR.
+            throw new GeocodingException("Geocoding service answered " + status + " for " + url);
+        }
+
+        JsonNode location = jsonNode.findPath("geometry").get("location");
+
+        return new Point(location.findValue("lat").asDouble(), location.findValue("lng").asDouble());
+    }
+
+}
@@ -1,8 +1,8 @@
 package edu.searchahouse.searchengine.service.impl;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import edu.searchahouse.searchengine.model.Location;
@@ -14,16 +14,20 @@ public class LocationServiceImpl implements LocationService {
 
     private final LocationRepository locationRepository;
 
+    private final AutocompleteSearch autocompleteSearch;
+
     @Autowired
-    public LocationServiceImpl(final LocationRepository locationRepository) {
+    public LocationServiceImpl(final LocationRepository locationRepository, final AutocompleteSearch autocompleteSearch) {
         this.locationRepository = locationRepository;
+        this.autocompleteSearch = autocompleteSearch;
     }
 
     @Override
-    public List<Location> findLocationsByState(String autocompleteState) {
+    public Page<Location> findLocationsByState(final String autocompleteState, final Pageable pageable) {
+
+        Page<Location> locations = this.autocompleteSearch.search(Location.class, "state.autocomplete", autocompleteState, pageable, //
+                "primaryKey", "country", "state", "city");
 
-        List<Location> locations = this.locationRepository.findAutocompleteLocationState(autocompleteState);
-        
         return locations;
     }
 
@@ -0,0 +1,62 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+
+/**
+ *
+ * How far a reindex got, saved after every bulk request so a reindex that was stopped (crash, restart) goes on from there instead of starting again.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE)
+public class ReindexCheckpoint {
+
+    // document type -> the index being loaded.
+    private Map<String, String> indices = new LinkedHashMap<>();
+    // document type -> primary key of the last entity loaded.
+    private Map<String, String> lastPrimaryKeys = new LinkedHashMap<>();
+    // document type -> entities loaded so far.
+    private Map<String, Long> loaded = new LinkedHashMap<>();
+    // document type -> true once every entity was loaded.
+    private Map<String, Boolean> done = new LinkedHashMap<>();
+
+    public Map<String, String> getIndices() {
+        return indices;
+    }
+
+    public String getIndex(final String type) {
+        return this.indices.get(type);
+    }
+
+    public void setIndex(final String type, final String index) {
+        this.indices.put(type, index);
+    }
+
+    public String getLastPrimaryKey(final String type) {
+        return this.lastPrimaryKeys.get(type);
+    }
+
+    public long getLoaded(final String type) {
+        return this.loaded.getOrDefault(type, 0L);
+    }
+
+    public long getLoaded() {
+        return this.loaded.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public boolean isDone(final String type) {
+        return this.done.getOrDefault(type, false);
+    }
+
+    public void loaded(final String type, final String lastPrimaryKey, final long count) {
+        this.lastPrimaryKeys.put(type, lastPrimaryKey);
+        this.loaded.put(type, getLoaded(type) + count);
+    }
+
+    public void done(final String type) {
+        this.done.put(type, true);
+    }
+
+}
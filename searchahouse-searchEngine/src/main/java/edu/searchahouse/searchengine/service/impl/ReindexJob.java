@@ -0,0 +1,557 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.BaseEntity;
+import edu.searchahouse.searchengine.model.Lead;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.rabbitmq.ElasticsearchBulkIndexer;
+
+//@formatter:off
+/**
+ *
+ * Rebuilds the elasticsearch indices from mongo, the source of truth, without downtime:
+ *
+ * --- a new index is created for every document type (see {@link ElasticsearchIndexBootstrap}), no replicas and no refresh while it is loaded.
+ * --- every change received from rabbitMq meanwhile is written to the new indices too (see {@link ElasticsearchBulkIndexer#shadow(String, String)}).
+ * --- the properties, agents and leads are streamed from the crud service export (one cursor per collection, newline delimited json) and loaded with
+ * --- bulk requests of "searchahouse.reindex.batch-size" entities. Every document has the version of the entity in mongo (external versioning), so a
+ * --- change written by the consumer is never overwritten by an older copy from the export.
+ * --- the geocoder writes the locations to the crud service, so the export has them. The properties from before that (or whose location was set from
+ * --- the geocode cache) get the location of the live index, if it is for the same address. The ones that have none there go to the geocoding pipeline,
+ * --- which writes the location to the crud service: a new version, the document loaded now is not changed behind its version.
+ * --- once loaded the replicas and the refresh of every index are restored and all the aliases are moved to the new indices in one atomic request.
+ * --- The old indices are kept, to go back if something is wrong, and must be deleted by hand.
+ *
+ * After every bulk request the last primary key loaded is saved in "searchahouse.reindex.checkpoint-file": a reindex that was stopped goes on from there
+ * when it is started again, and in the meantime the new indices keep getting the changes.
+ *
+ * A reindex is also how a change to the settings or mappings of ElasticsearchIndexBootstrap reaches the existing indices.
+ *
+ * Metrics (see /metrics): searchengine.reindex.loaded, searchengine.reindex.total, searchengine.reindex.rate (entities per second) and
+ * searchengine.reindex.eta (seconds left).
+ */
+//@formatter:on
+@Component
+public class ReindexJob implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReindexJob.class);
+
+    private static final String EXPORT_PATH = "/api/v1/export/";
+
+    private static final long LOG_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    // the fields of the live properties needed to copy their location.
+    private static final String[] LOCATED_FIELDS = { "location", "address.*" };
+
+    // the collections exported by the crud service, in load order. The rest of the documents are copied from the live indices.
+    private static final List<Class<? extends BaseEntity>> EXPORTED = Arrays.asList(Property.class, Agent.class, Lead.class);
+
+    private final Client client;
+    private final ElasticsearchIndexBootstrap indexBootstrap;
+    private final ElasticsearchBulkIndexer bulkIndexer;
+    private final GeocodingPipeline geocodingPipeline;
+    private final ResultCache resultCache;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final String sourceUrl;
+    private final int batchSize;
+    private final String checkpointFile;
+
+    private final EntityMapper entityMapper = new DefaultEntityMapper();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "reindex"));
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // progress of the current (or last) run.
+    private volatile Map<String, String> indices = Collections.emptyMap();
+    private volatile String error;
+    private volatile long total;
+    private volatile long startedAt;
+    private volatile long loggedAt;
+    private final AtomicLong loaded = new AtomicLong();
+    // entities loaded by a previous run, before the checkpoint.
+    private volatile long resumedAt;
+
+    @Autowired
+    public ReindexJob(//
+            final Client client, //
+            final ElasticsearchIndexBootstrap indexBootstrap, //
+            final ElasticsearchBulkIndexer bulkIndexer, //
+            final GeocodingPipeline geocodingPipeline, //
+            final ResultCache resultCache, //
+            final RestTemplate restTemplate, //
+            final ObjectMapper objectMapper, //
+            @Value("${searchahouse.reindex.source-url:http://localhost:7070}") final String sourceUrl, //
+            @Value("${searchahouse.reindex.batch-size:1000}") final int batchSize, //
+            @Value("${searchahouse.reindex.checkpoint-file:}") final String checkpointFile //
+    ) {
+        this.client = client;
+        this.indexBootstrap = indexBootstrap;
+        this.bulkIndexer = bulkIndexer;
+        this.geocodingPipeline = geocodingPipeline;
+        this.resultCache = resultCache;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.sourceUrl = sourceUrl;
+        this.batchSize = batchSize;
+        this.checkpointFile = checkpointFile;
+    }
+
+    @PostConstruct
+    public void start() {
+        // a reindex was stopped halfway: the new indices keep getting the changes until the reindex is started again.
+        ReindexCheckpoint checkpoint = loadCheckpoint();
+        if (checkpoint != null && indicesExist(checkpoint)) {
+            shadow(checkpoint);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     *
+     * Start a reindex in the background, or resume the last one if it was stopped.
+     *
+     * @return false if a reindex is already running.
+     */
+    public boolean reindex() {
+        if (!this.running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        this.error = null;
+        this.executor.execute(() -> {
+            try {
+                run();
+            } catch (RuntimeException e) {
+                // the checkpoint and the shadow indices stay, the next reindex goes on from there.
+                this.error = e.getMessage();
+                LOGGER.error("Reindex into {} failed after {} entities, start it again to resume.", this.indices.values(), this.loaded.get(), e);
+            } finally {
+                this.running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return the progress of the current reindex, or of the last one.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", this.running.get());
+        status.put("indices", this.indices);
+        status.put("loaded", this.resumedAt + this.loaded.get());
+        status.put("total", this.total);
+        status.put("rate", rate());
+        status.put("eta", eta());
+        status.put("error", this.error);
+        return status;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("searchengine.reindex.loaded", this.resumedAt + this.loaded.get()));
+        metrics.add(new Metric<Long>("searchengine.reindex.total", this.total));
+        metrics.add(new Metric<Long>("searchengine.reindex.rate", rate()));
+        metrics.add(new Metric<Long>("searchengine.reindex.eta", eta()));
+        return metrics;
+    }
+
+    private void run() {
+
+        ReindexCheckpoint checkpoint = loadCheckpoint();
+        if (checkpoint == null || !indicesExist(checkpoint)) {
+            checkpoint = new ReindexCheckpoint();
+            for (Class<? extends BaseEntity> document : ElasticsearchIndexBootstrap.DOCUMENTS) {
+                checkpoint.setIndex(type(document), this.indexBootstrap.createIndex(document, true));
+            }
+            saveCheckpoint(checkpoint);
+            LOGGER.info("Created indices {} to reindex.", checkpoint.getIndices().values());
+        } else {
+            LOGGER.info("Resume reindex into {} after {} entities.", checkpoint.getIndices().values(), checkpoint.getLoaded());
+        }
+
+        shadow(checkpoint);
+
+        this.resumedAt = checkpoint.getLoaded();
+        this.loaded.set(0);
+        this.startedAt = System.currentTimeMillis();
+        this.total = this.resumedAt;
+        for (Class<? extends BaseEntity> document : EXPORTED) {
+            if (!checkpoint.isDone(type(document))) {
+                this.total += count(type(document), checkpoint.getLastPrimaryKey(type(document)));
+            }
+        }
+
+        for (Class<? extends BaseEntity> document : ElasticsearchIndexBootstrap.DOCUMENTS) {
+            if (!EXPORTED.contains(document) && !checkpoint.isDone(type(document))) {
+                copy(document, checkpoint);
+            }
+        }
+
+        for (Class<? extends BaseEntity> document : EXPORTED) {
+            if (!checkpoint.isDone(type(document))) {
+                load(document, checkpoint);
+            }
+        }
+
+        finish(checkpoint);
+    }
+
+    /**
+     * Copy the documents that are not in mongo (e.g. the locations) from the live index.
+     */
+    private void copy(final Class<? extends BaseEntity> document, final ReindexCheckpoint checkpoint) {
+
+        String index = checkpoint.getIndex(type(document));
+
+        SearchResponse scroll = this.client.prepareSearch(ElasticsearchIndexBootstrap.alias(document)) //
+                .setSearchType(SearchType.SCAN) //
+                .setScroll(TimeValue.timeValueMinutes(1)) //
+                .setSize(this.batchSize) //
+                .setVersion(true) //
+                .get();
+
+        long copied = 0;
+        while (true) {
+            scroll = this.client.prepareSearchScroll(scroll.getScrollId()).setScroll(TimeValue.timeValueMinutes(1)).get();
+            if (scroll.getHits().getHits().length == 0) {
+                break;
+            }
+
+            BulkRequest bulkRequest = new BulkRequest();
+            for (SearchHit hit : scroll.getHits().getHits()) {
+                bulkRequest.add(new IndexRequest(index, type(document), hit.getId()) //
+                        .source(hit.getSourceRef()) //
+                        .version(hit.getVersion()) //
+                        .versionType(VersionType.EXTERNAL));
+            }
+            bulk(bulkRequest);
+            copied += bulkRequest.numberOfActions();
+        }
+
+        checkpoint.done(type(document));
+        saveCheckpoint(checkpoint);
+        LOGGER.info("Copied {} {} documents to {}.", copied, type(document), index);
+    }
+
+    /**
+     * Stream the entities of a collection from the crud service into the new index, after the last one loaded.
+     */
+    private void load(final Class<? extends BaseEntity> document, final ReindexCheckpoint checkpoint) {
+
+        String type = type(document);
+        String index = checkpoint.getIndex(type);
+
+        this.restTemplate.execute(exportUri(type, "", checkpoint.getLastPrimaryKey(type)), HttpMethod.GET, null, response -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+
+                // the entities of the next bulk request and their versions in mongo (null if the export has none).
+                List<BaseEntity> entities = new ArrayList<>();
+                List<Long> versions = new ArrayList<>();
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+
+                    // the same wrapper the crud service sends to rabbitMq.
+                    JsonNode wrapper = this.objectMapper.readTree(line);
+                    entities.add(this.objectMapper.treeToValue(wrapper.get("entity"), document));
+                    versions.add(wrapper.hasNonNull("version") ? wrapper.get("version").asLong() : null);
+
+                    if (entities.size() >= this.batchSize) {
+                        loadBatch(index, type, entities, versions, checkpoint);
+                        entities.clear();
+                        versions.clear();
+                    }
+                }
+
+                if (!entities.isEmpty()) {
+                    loadBatch(index, type, entities, versions, checkpoint);
+                }
+            }
+            return null;
+        });
+
+        checkpoint.done(type);
+        saveCheckpoint(checkpoint);
+        LOGGER.info("Loaded every {} into {}.", type, index);
+    }
+
+    private void loadBatch(final String index, final String type, final List<BaseEntity> entities, final List<Long> versions,
+            final ReindexCheckpoint checkpoint) throws IOException {
+
+        if (type.equals(type(Property.class))) {
+            locate(entities.stream().filter(property -> ((Property) property).getLocation() == null).collect(Collectors.toList()));
+        }
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (int i = 0; i < entities.size(); i++) {
+            BaseEntity entity = entities.get(i);
+            IndexRequest indexRequest = new IndexRequest(index, type, entity.getPrimaryKey()).source(this.entityMapper.mapToString(entity));
+            if (versions.get(i) != null) {
+                indexRequest.version(versions.get(i)).versionType(VersionType.EXTERNAL);
+            }
+            bulkRequest.add(indexRequest);
+        }
+
+        bulk(bulkRequest);
+
+        checkpoint.loaded(type, entities.get(entities.size() - 1).getPrimaryKey(), bulkRequest.numberOfActions());
+        saveCheckpoint(checkpoint);
+
+        this.loaded.addAndGet(bulkRequest.numberOfActions());
+
+        long now = System.currentTimeMillis();
+        if (now - this.loggedAt >= LOG_INTERVAL) {
+            this.loggedAt = now;
+            LOGGER.info("Reindex: {} of {} entities loaded, {} per second, {} seconds left.", this.resumedAt + this.loaded.get(), this.total, rate(), eta());
+        }
+    }
+
+    /**
+     * Set the location of the properties from the live index, in one multi get. The ones without location there, or with another address, are geocoded.
+     */
+    @SuppressWarnings("unchecked")
+    private void locate(final List<BaseEntity> properties) {
+
+        if (properties.isEmpty()) {
+            return;
+        }
+
+        String alias = ElasticsearchIndexBootstrap.alias(Property.class);
+
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        properties.forEach(property -> multiGetRequest.add(new MultiGetRequest.Item(alias, type(Property.class), property.getPrimaryKey()) //
+                .fetchSourceContext(new FetchSourceContext(LOCATED_FIELDS))));
+
+        // the responses are in the same order as the requests.
+        MultiGetItemResponse[] items = this.client.multiGet(multiGetRequest).actionGet().getResponses();
+        for (int i = 0; i < items.length; i++) {
+            Property property = (Property) properties.get(i);
+
+            Map<String, Object> source = items[i].isFailed() || !items[i].getResponse().isExists() ? null : items[i].getResponse().getSourceAsMap();
+            Object location = source == null ? null : source.get("location");
+
+            if (location instanceof Map && property.getAddress() != null
+                    && GeocodeCache.key(property.getAddress()).equals(GeocodingPipeline.addressKey(source))) {
+                Map<String, Object> latLon = (Map<String, Object>) location;
+                property.setLocation(new GeoPoint(((Number) latLon.get("lat")).doubleValue(), ((Number) latLon.get("lon")).doubleValue()));
+            } else {
+                this.geocodingPipeline.relocate(property);
+            }
+        }
+    }
+
+    private void bulk(final BulkRequest bulkRequest) {
+        for (BulkItemResponse item : this.client.bulk(bulkRequest).actionGet().getItems()) {
+            // a conflict means the consumer already wrote a newer version of the document.
+            if (item.isFailed() && item.getFailure().getStatus() != RestStatus.CONFLICT) {
+                throw new IllegalStateException("Could not load " + item.getType() + " " + item.getId() + ": " + item.getFailureMessage());
+            }
+        }
+    }
+
+    /**
+     * Make the new indices searchable and move the aliases to them.
+     */
+    private void finish(final ReindexCheckpoint checkpoint) {
+
+        IndicesAdminClient indicesAdmin = this.client.admin().indices();
+
+        // remove and add in the same request, the searches never see an alias missing nor a mix of old and new indices.
+        IndicesAliasesRequestBuilder aliases = indicesAdmin.prepareAliases();
+
+        for (Class<? extends BaseEntity> document : ElasticsearchIndexBootstrap.DOCUMENTS) {
+            String index = checkpoint.getIndex(type(document));
+            String alias = ElasticsearchIndexBootstrap.alias(document);
+
+            Settings settings = this.indexBootstrap.settings(document);
+            indicesAdmin.prepareUpdateSettings(index).setSettings(ImmutableSettings.settingsBuilder() //
+                    .put("index.number_of_replicas", settings.get("index.number_of_replicas", "1")) //
+                    .put("index.refresh_interval", settings.get("index.refresh_interval", "1s"))) //
+                    .get();
+            indicesAdmin.prepareRefresh(index).get();
+
+            indicesAdmin.prepareGetAliases(alias).get().getAliases().keysIt().forEachRemaining(old -> aliases.removeAlias(old, alias));
+            aliases.addAlias(index, alias);
+        }
+        aliases.get();
+        // the cached results come from the old indices.
+        this.resultCache.clear();
+
+        ElasticsearchIndexBootstrap.DOCUMENTS.forEach(document -> this.bulkIndexer.unshadow(ElasticsearchIndexBootstrap.alias(document)));
+        deleteCheckpoint();
+
+        LOGGER.info("Reindex done, the aliases point to {} ({} entities in {} seconds).", checkpoint.getIndices().values(), this.resumedAt + this.loaded.get(),
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - this.startedAt));
+    }
+
+    private void shadow(final ReindexCheckpoint checkpoint) {
+        this.indices = checkpoint.getIndices();
+        for (Class<? extends BaseEntity> document : ElasticsearchIndexBootstrap.DOCUMENTS) {
+            this.bulkIndexer.shadow(ElasticsearchIndexBootstrap.alias(document), checkpoint.getIndex(type(document)));
+        }
+    }
+
+    private long count(final String type, final String after) {
+        JsonNode count = this.restTemplate.getForObject(exportUri(type, "/count", after), JsonNode.class);
+        return count.get("count").asLong();
+    }
+
+    private URI exportUri(final String type, final String path, final String after) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(this.sourceUrl).path(EXPORT_PATH + type + path);
+        if (after != null) {
+            uri.queryParam("after", after);
+        }
+        return uri.build().encode().toUri();
+    }
+
+    /**
+     * @return entities loaded per second by this run.
+     */
+    private long rate() {
+        long elapsed = System.currentTimeMillis() - this.startedAt;
+        return this.running.get() && elapsed > 0 ? this.loaded.get() * 1000 / elapsed : 0;
+    }
+
+    /**
+     * @return seconds left, -1 if unknown.
+     */
+    private long eta() {
+        long rate = rate();
+        return rate > 0 ? Math.max(0, this.total - this.resumedAt - this.loaded.get()) / rate : -1;
+    }
+
+    private static String type(final Class<?> document) {
+        return ElasticsearchIndexBootstrap.type(document);
+    }
+
+    /**
+     * @return true if the checkpoint has an index for every document type and they all exist.
+     */
+    private boolean indicesExist(final ReindexCheckpoint checkpoint) {
+        for (Class<? extends BaseEntity> document : ElasticsearchIndexBootstrap.DOCUMENTS) {
+            String index = checkpoint.getIndex(type(document));
+            if (index == null || !this.client.admin().indices().prepareExists(index).get().isExists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ReindexCheckpoint loadCheckpoint() {
+        if (!StringUtils.hasText(this.checkpointFile) || !Files.exists(Paths.get(this.checkpointFile))) {
+            return null;
+        }
+        try {
+            return this.objectMapper.readValue(Paths.get(this.checkpointFile).toFile(), ReindexCheckpoint.class);
+        } catch (IOException e) {
+            // start from scratch, the half loaded indices are left behind.
+            LOGGER.warn("Could not read the reindex checkpoint {}, the reindex starts again.", this.checkpointFile, e);
+            return null;
+        }
+    }
+
+    private void saveCheckpoint(final ReindexCheckpoint checkpoint) {
+        if (!StringUtils.hasText(this.checkpointFile)) {
+            return;
+        }
+
+        Path path = Paths.get(this.checkpointFile).toAbsolutePath();
+        try {
+            Files.createDirectories(path.getParent());
+
+            // write a temporary file and then replace the old one, so a crash while saving never leaves a half written checkpoint.
+            Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            this.objectMapper.writeValue(tmp.toFile(), checkpoint);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save the reindex checkpoint to " + path, e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (!StringUtils.hasText(this.checkpointFile)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(this.checkpointFile));
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete the reindex checkpoint {}, delete it by hand or the next reindex resumes the last one.", this.checkpointFile, e);
+        }
+    }
+
+}
@@ -0,0 +1,453 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.rabbitmq.ElasticsearchBulkIndexer;
+
+//@formatter:off
+/**
+ *
+ * In memory cache of the responses of the property and agent endpoints (see ResultCacheFilter), the same city and price searches are repeated all the time.
+ *
+ * --- the key is the path and the normalized query string of the request, the value the bytes of the response: a hit goes neither to elasticsearch nor
+ * --- through the HAL assemblers nor jackson.
+ * --- bounded by "searchahouse.cache.max-bytes", when full the least recently used responses are evicted. Every response also expires after
+ * --- "searchahouse.cache.ttl-seconds", the safety net of the invalidation.
+ * --- every response has tags (see {@link ResultCacheTags}): only the responses with the tags of the property or agent that changed are invalidated,
+ * --- after the change (by the consumer, when the message is received) and before it (by the bulk indexer, with the document it reads anyway before
+ * --- writing it, see ElasticsearchBulkIndexer#watch). The consumer thread never waits for elasticsearch to invalidate. The changes are searchable once
+ * --- the bulk indexer flushes them and the index is refreshed, so the invalidation is repeated "searchahouse.cache.invalidation-delay" milliseconds
+ * --- later: a search done in between could have cached the old document.
+ * --- every instance has its own cache. The instances share the entity queues, so a change is received by only one of them: it invalidates its own
+ * --- responses and publishes the tags to the "searchahouse.cache.invalidation" fanout exchange, where every other instance has a queue of its own and
+ * --- invalidates them too, now and after the delay. The publishing is done by the invalidator thread, never by the consumer. An invalidation lost
+ * --- (e.g. rabbitMq is down) leaves the old responses of the other instances until they expire.
+ *
+ * Metrics (see /metrics): search.cache.hits, search.cache.misses, search.cache.hit-rate (percentage), search.cache.evictions, search.cache.expirations,
+ * search.cache.invalidations, search.cache.size and search.cache.bytes.
+ */
+//@formatter:on
+@Component
+public class ResultCache implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+    // what a response takes besides its body and key: the entry, its tags and the links of the lru.
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private static final String[] PROPERTY_SOURCE_FIELDS = { "name", "address", "location", "price", "agentIds" };
+
+    private static final TypeReference<Set<String>> TAGS = new TypeReference<Set<String>>() {
+    };
+
+    // the invalidations published by this instance, which it skips when it receives them.
+    private static final String ORIGIN = UUID.randomUUID().toString();
+
+    private static final String INVALIDATE = "invalidate";
+    private static final String CLEAR = "clear";
+
+    private final ElasticsearchBulkIndexer bulkIndexer;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttl;
+    private final int geohashPrecision;
+    private final long invalidationDelay;
+
+    private final LinkedHashMap<String, CachedResult> entries;
+    // the keys of the responses with each tag.
+    private final Map<String, Set<String>> keysByTag = new HashMap<>();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "result-cache-invalidator"));
+
+    @Autowired
+    public ResultCache(//
+            final ElasticsearchBulkIndexer bulkIndexer, //
+            final RabbitTemplate rabbitTemplate, //
+            final ObjectMapper objectMapper, //
+            @Value("${searchahouse.cache.enabled:true}") final boolean enabled, //
+            @Value("${searchahouse.cache.max-bytes:67108864}") final long maxBytes, //
+            @Value("${searchahouse.cache.ttl-seconds:300}") final long ttlSeconds, //
+            @Value("${searchahouse.cache.geohash-precision:4}") final int geohashPrecision, //
+            @Value("${searchahouse.cache.invalidation-delay:3000}") final long invalidationDelay //
+    ) {
+        this.bulkIndexer = bulkIndexer;
+        this.rabbitTemplate = rabbitTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.geohashPrecision = geohashPrecision;
+        this.invalidationDelay = invalidationDelay;
+
+        // access order, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (this.enabled) {
+            this.bulkIndexer.watch(Property.class, PROPERTY_SOURCE_FIELDS, this::propertyChanging);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public int getGeohashPrecision() {
+        return this.geohashPrecision;
+    }
+
+    /**
+     *
+     * @param key
+     *            the normalized request.
+     * @return the cached response, null if there is none or it expired.
+     */
+    public CachedResult get(final String key) {
+        CachedResult cached;
+        synchronized (this) {
+            cached = this.entries.get(key);
+            if (cached != null && cached.isExpired()) {
+                remove(key);
+                this.expirations.incrementAndGet();
+                cached = null;
+            }
+        }
+
+        if (cached == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     *
+     * @param key
+     *            the normalized request.
+     * @param contentType
+     *            the content type of the response.
+     * @param eTag
+     *            the ETag of the response, null if it has none.
+     * @param body
+     *            the response.
+     * @param tags
+     *            the tags of the response, see {@link ResultCacheTags}.
+     */
+    public void put(final String key, final String contentType, final String eTag, final byte[] body, final Set<String> tags) {
+        CachedResult cached = new CachedResult(contentType, eTag, body, tags, System.currentTimeMillis() + this.ttl, size(key, body));
+        if (cached.size > this.maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            remove(key);
+
+            this.entries.put(key, cached);
+            this.bytes += cached.size;
+            tags.forEach(tag -> this.keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key));
+
+            Iterator<Map.Entry<String, CachedResult>> eldest = this.entries.entrySet().iterator();
+            while (this.bytes > this.maxBytes && eldest.hasNext()) {
+                Map.Entry<String, CachedResult> evicted = eldest.next();
+                eldest.remove();
+                unlink(evicted.getKey(), evicted.getValue());
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove the responses with any of the tags.
+     */
+    public void invalidate(final Collection<String> tags) {
+        int removed = 0;
+        synchronized (this) {
+            for (String tag : tags) {
+                Set<String> keys = this.keysByTag.get(tag);
+                if (keys != null) {
+                    for (String key : new ArrayList<>(keys)) {
+                        removed += remove(key) ? 1 : 0;
+                    }
+                }
+            }
+        }
+        this.invalidations.addAndGet(removed);
+    }
+
+    /**
+     * Remove every response of every instance, e.g. the indices behind the aliases changed.
+     */
+    public void clear() {
+        clearLocally();
+        if (this.enabled) {
+            broadcastLater(CLEAR, Collections.emptySet());
+        }
+    }
+
+    /**
+     * An invalidation published by an instance, see {@link #broadcast(String, Set)}.
+     */
+    @RabbitListener(queues = "#{queueCacheInvalidation.name}", containerFactory = "cacheInvalidationListenerContainerFactory")
+    public void receiveInvalidation(final Message message) throws IOException {
+        if (!this.enabled || ORIGIN.equals(message.getMessageProperties().getAppId())) {
+            return;
+        }
+
+        if (CLEAR.equals(message.getMessageProperties().getType())) {
+            clearLocally();
+        } else {
+            Set<String> tags = this.objectMapper.readValue(message.getBody(), TAGS);
+            invalidate(tags);
+            scheduleInvalidation(tags);
+        }
+    }
+
+    private void clearLocally() {
+        synchronized (this) {
+            this.invalidations.addAndGet(this.entries.size());
+            this.entries.clear();
+            this.keysByTag.clear();
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * A property is about to change: invalidate the responses it is part of after the change, now and once the change is searchable. The responses of the
+     * property before the change are invalidated by the bulk indexer when it writes the change.
+     *
+     * @param primaryKey
+     *            the property.
+     * @param changes
+     *            the new fields of the property (the whole property or some fields of it), null if it is deleted.
+     */
+    public void propertyChanged(final String primaryKey, final Map<String, Object> changes) {
+        if (!this.enabled) {
+            return;
+        }
+
+        Set<String> tags = new HashSet<>();
+        tags.add(ResultCacheTags.PROPERTIES);
+        tags.addAll(ResultCacheTags.property(primaryKey, changes, this.geohashPrecision));
+
+        invalidateTwice(tags);
+    }
+
+    /**
+     * The bulk indexer is about to write a change of the property: invalidate the responses the indexed document is part of, now and once the change is
+     * searchable.
+     *
+     * @param indexed
+     *            the name, address, location, price and agents of the property in elasticsearch.
+     */
+    private void propertyChanging(final String primaryKey, final Map<String, Object> indexed) {
+        invalidateTwice(ResultCacheTags.property(primaryKey, indexed, this.geohashPrecision));
+    }
+
+    /**
+     * An agent is about to change: invalidate the responses with the agent and the lists of agents, now and once the change is searchable.
+     */
+    public void agentChanged(final String primaryKey) {
+        if (!this.enabled) {
+            return;
+        }
+
+        Set<String> tags = new HashSet<>();
+        tags.add(ResultCacheTags.AGENTS);
+        tags.add(ResultCacheTags.agent(primaryKey));
+
+        invalidateTwice(tags);
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long bytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long hits = this.hits.get();
+        long requests = hits + this.misses.get();
+
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("search.cache.hits", hits));
+        metrics.add(new Metric<Long>("search.cache.misses", this.misses.get()));
+        metrics.add(new Metric<Double>("search.cache.hit-rate", requests == 0 ? 0.0 : 100.0 * hits / requests));
+        metrics.add(new Metric<Long>("search.cache.evictions", this.evictions.get()));
+        metrics.add(new Metric<Long>("search.cache.expirations", this.expirations.get()));
+        metrics.add(new Metric<Long>("search.cache.invalidations", this.invalidations.get()));
+        metrics.add(new Metric<Integer>("search.cache.size", size()));
+        metrics.add(new Metric<Long>("search.cache.bytes", bytes()));
+        return metrics;
+    }
+
+    /**
+     * Invalidate the responses with the tags now and once the change is searchable, in this instance and in the others.
+     */
+    private void invalidateTwice(final Set<String> tags) {
+        invalidate(tags);
+        scheduleInvalidation(tags);
+        broadcastLater(INVALIDATE, tags);
+    }
+
+    private void scheduleInvalidation(final Set<String> tags) {
+        try {
+            this.scheduler.schedule(() -> invalidate(tags), this.invalidationDelay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // shutting down.
+            LOGGER.debug("The delayed invalidation of {} was not scheduled.", tags, e);
+        }
+    }
+
+    private void broadcastLater(final String type, final Set<String> tags) {
+        try {
+            this.scheduler.execute(() -> broadcast(type, tags));
+        } catch (RuntimeException e) {
+            // shutting down.
+            LOGGER.debug("The invalidation of {} was not published.", tags, e);
+        }
+    }
+
+    /**
+     * Publish an invalidation to every instance, this one skips it.
+     */
+    private void broadcast(final String type, final Set<String> tags) {
+        try {
+            MessageProperties properties = new MessageProperties();
+            properties.setAppId(ORIGIN);
+            properties.setType(type);
+            properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            this.rabbitTemplate.send(RabbitMqConsumerConfiguration.amqpCacheInvalidationExchange, "",
+                    new Message(this.objectMapper.writeValueAsBytes(tags), properties));
+        } catch (IOException | AmqpException e) {
+            LOGGER.warn("Could not publish the invalidation of {}, the other instances keep the responses until they expire.", tags, e);
+        }
+    }
+
+    /**
+     * Must be called holding the lock.
+     *
+     * @return true if there was a response for the key.
+     */
+    private boolean remove(final String key) {
+        CachedResult removed = this.entries.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        unlink(key, removed);
+        return true;
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void unlink(final String key, final CachedResult removed) {
+        this.bytes -= removed.size;
+        for (String tag : removed.tags) {
+            Set<String> keys = this.keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    this.keysByTag.remove(tag);
+                }
+            }
+        }
+    }
+
+    private static long size(final String key, final byte[] body) {
+        return body.length + 2L * key.length() + ENTRY_OVERHEAD;
+    }
+
+    public static class CachedResult {
+
+        private final String contentType;
+        private final String eTag;
+        private final byte[] body;
+        private final Set<String> tags;
+        private final long expiresAt;
+        private final long size;
+
+        CachedResult(final String contentType, final String eTag, final byte[] body, final Set<String> tags, final long expiresAt, final long size) {
+            this.contentType = contentType;
+            this.eTag = eTag;
+            this.body = body;
+            this.tags = tags;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+
+        public String getContentType() {
+            return this.contentType;
+        }
+
+        public String getETag() {
+            return this.eTag;
+        }
+
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > this.expiresAt;
+        }
+
+    }
+
+}
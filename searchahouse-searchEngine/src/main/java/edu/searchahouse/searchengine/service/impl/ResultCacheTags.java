@@ -0,0 +1,193 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.common.geo.GeoHashUtils;
+import org.springframework.util.StringUtils;
+
+//@formatter:off
+/**
+ *
+ * The tags of the cached results (see {@link ResultCache}). A cached result has the tags every property that could change it must have, before or after the
+ * change; a change invalidates the results with any of the tags of the property:
+ *
+ * --- "cell:<geohash>": the geohash cells covering the area of a query by location, a property is in the cell of its location.
+ * --- "word:<word>": the words of a query by text, a property has the words of its name and address (a text query only matches properties with its words).
+ * --- "property:<id>": the property of a query by id.
+ * --- "price:<bucket>": the price buckets covering the range of a query by price, a property is in the bucket of its price. A bucket has the prices
+ * --- with the same highest bit (1, 2-3, 4-7, ...), so any range has at most 64 of them.
+ * --- "properties": the queries that are not bounded by location, text nor price (e.g. "qt=none", or a search by type and status only). Their
+ * --- totals and facets count every property, so any property changes them: they are invalidated by every change of a property, and are only worth
+ * --- caching because they are the most repeated ones. A query by agent is tagged with the properties in the response instead.
+ * --- "agent:<id>" and "agents": the same for the agents. A property has the agents it is assigned to, the lists of properties of an agent are tagged with it.
+ */
+//@formatter:on
+public final class ResultCacheTags {
+
+    public static final String PROPERTIES = "properties";
+    public static final String AGENTS = "agents";
+
+    // an area with more cells is tagged as "properties", the tags of a result are kept in memory.
+    static final int MAX_CELLS = 64;
+
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private ResultCacheTags() {
+    }
+
+    public static String property(final String primaryKey) {
+        return "property:" + primaryKey;
+    }
+
+    public static String agent(final String primaryKey) {
+        return "agent:" + primaryKey;
+    }
+
+    public static String price(final long price) {
+        return "price:" + priceBucket(price);
+    }
+
+    /**
+     * @return the price buckets covering the range.
+     */
+    public static Set<String> prices(final long min, final long max) {
+        Set<String> prices = new HashSet<>();
+        for (int bucket = priceBucket(min); bucket <= priceBucket(max); bucket++) {
+            prices.add("price:" + bucket);
+        }
+        return prices;
+    }
+
+    public static String cell(final double lat, final double lon, final int precision) {
+        return "cell:" + GeoHashUtils.encode(lat, lon, precision);
+    }
+
+    /**
+     * @return the cells covering the box, or "properties" if there are too many or the box crosses the 180th meridian.
+     */
+    public static Set<String> cells(final double top, final double left, final double bottom, final double right, final int precision) {
+        if (left > right || bottom > top) {
+            return Collections.singleton(PROPERTIES);
+        }
+
+        // a geohash alternates longitude and latitude bits, starting with the longitude.
+        int bits = 5 * precision;
+        double latStep = 180.0 / (1L << (bits / 2));
+        double lonStep = 360.0 / (1L << ((bits + 1) / 2));
+
+        double minLat = Math.max(bottom, -90.0);
+        double maxLat = Math.min(top, 90.0);
+        double minLon = Math.max(left, -180.0);
+        double maxLon = Math.min(right, 180.0);
+
+        long latCells = (long) Math.ceil((maxLat - minLat) / latStep) + 1;
+        long lonCells = (long) Math.ceil((maxLon - minLon) / lonStep) + 1;
+        if (latCells * lonCells > MAX_CELLS) {
+            return Collections.singleton(PROPERTIES);
+        }
+
+        Set<String> cells = new HashSet<>();
+        for (long i = 0; i < latCells; i++) {
+            double lat = Math.min(minLat + i * latStep, maxLat);
+            for (long j = 0; j < lonCells; j++) {
+                cells.add(cell(lat, Math.min(minLon + j * lonStep, maxLon), precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return the cells covering the box around the circle, or "properties" if there are too many.
+     */
+    public static Set<String> cells(final double lat, final double lon, final double distanceKm, final int precision) {
+        double latDelta = distanceKm / KM_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(lat));
+        if (cos < 0.01) {
+            return Collections.singleton(PROPERTIES);
+        }
+        double lonDelta = latDelta / cos;
+
+        if (lon - lonDelta < -180.0 || lon + lonDelta > 180.0) {
+            return Collections.singleton(PROPERTIES);
+        }
+        return cells(lat + latDelta, lon - lonDelta, lat - latDelta, lon + lonDelta, precision);
+    }
+
+    /**
+     * @return the words of the text, normalized as the cache keys (lower case, no punctuation).
+     */
+    public static Set<String> words(final String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(normalized.split(" ")).map(word -> "word:" + word).collect(Collectors.toSet());
+    }
+
+    /**
+     *
+     * @param source
+     *            the fields of a property (a document or the changes to it), any of them can be missing.
+     * @return the tags of the results the property can be part of: its id, the cell of its location, the words of its name and address, the bucket of
+     *         its price and its agents.
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> property(final String primaryKey, final Map<String, Object> source, final int precision) {
+        Set<String> tags = new HashSet<>();
+        tags.add(property(primaryKey));
+
+        if (source == null) {
+            return tags;
+        }
+
+        Object location = source.get("location");
+        if (location instanceof Map) {
+            Map<String, Object> point = (Map<String, Object>) location;
+            if (point.get("lat") instanceof Number && point.get("lon") instanceof Number) {
+                tags.add(cell(((Number) point.get("lat")).doubleValue(), ((Number) point.get("lon")).doubleValue(), precision));
+            }
+        }
+
+        tags.addAll(words((String) source.get("name")));
+
+        Object address = source.get("address");
+        if (address instanceof Map) {
+            Map<String, Object> fields = (Map<String, Object>) address;
+            tags.addAll(words((String) fields.get("street")));
+            tags.addAll(words((String) fields.get("city")));
+            tags.addAll(words((String) fields.get("state")));
+        }
+
+        if (source.get("price") instanceof Number) {
+            tags.add(price(((Number) source.get("price")).longValue()));
+        }
+
+        Object agentIds = source.get("agentIds");
+        if (agentIds instanceof Collection) {
+            ((Collection<Object>) agentIds).forEach(agentId -> tags.add(agent(String.valueOf(agentId))));
+        }
+
+        return tags;
+    }
+
+    /**
+     * @return the number of bits of the price, 0 to 63.
+     */
+    private static int priceBucket(final long price) {
+        return price <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(price);
+    }
+
+    public static String normalize(final String value) {
+        if (!StringUtils.hasText(value)) {
+            return "";
+        }
+        return value.toLowerCase().replaceAll("[^\\p{L}\\p{N}\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+}
@@ -0,0 +1,35 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.geo.Point;
+import org.springframework.stereotype.Service;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.service.Geocoder;
+
+/**
+ * 
+ * Local geocoder for tests and development ("searchahouse.geocoder.provider: stub"). It never leaves the jvm: the same address always gets the same point
+ * somewhere inside the continental USA, and an address without street is never resolved.
+ */
+@Service
+@ConditionalOnProperty(prefix = "searchahouse.geocoder", name = "provider", havingValue = "stub")
+public class StubGeocoder implements Geocoder {
+
+    @Override
+    public Point geocode(final Address address) {
+
+        if (address == null || address.getStreet() == null) {
+            return null;
+        }
+
+        int hash = (address.getStreet() + address.getCity() + address.getState()).hashCode();
+
+        // latitude between 25 and 49, longitude between -124 and -67.
+        double lat = 25 + Math.floorMod(hash, 24000) / 1000d;
+        double lon = -124 + Math.floorMod(hash >>> 8, 57000) / 1000d;
+
+        return new Point(lat, lon);
+    }
+
+}
@@ -0,0 +1,412 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.Location;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Suggestion;
+import edu.searchahouse.searchengine.model.Suggestion.SuggestionType;
+
+//@formatter:off
+/**
+ *
+ * In memory prefix index of the property addresses, locations and agent names, for the autocomplete.
+ *
+ * --- a sorted map from every word of the normalized label (lower case, no accents nor punctuation) to the suggestion. Only the words are keys, not
+ * --- the rest of the label after them, so the memory grows with the length of the labels and not with its square. The suggestions with a word
+ * --- starting with a prefix are a range of the map, found in O(log n). A prefix of several words is the range of its first word (a whole word),
+ * --- filtered by the labels that have the prefix at the start of a word.
+ * --- built from elasticsearch on startup and every "searchahouse.suggest.rebuild-interval" milliseconds, and kept up to date in between by the
+ * --- consumer of the rabbitMq queues (see {@link edu.searchahouse.searchengine.rabbitmq.Receiver}), once the bulk indexer wrote each change. Every
+ * --- entry has the version of its document: an older change, or a rebuild that read the document before a change, never replaces a newer one.
+ * --- The rebuild catches up what the consumer did not see: the locations, changes consumed by another instance or loaded by a reindex.
+ *
+ * Metrics (see /metrics): suggest.index.size and suggest.index.key-chars (the characters of every key of the map).
+ */
+//@formatter:on
+@Component
+public class SuggestIndex implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestIndex.class);
+
+    // after the label in the keys, sorts before any character of a label.
+    private static final char SEPARATOR = '\u0000';
+
+    private static final Map<SuggestionType, Class<?>> DOCUMENTS = new EnumMap<>(SuggestionType.class);
+    // the source fields the label is made of.
+    private static final Map<SuggestionType, String[]> SOURCE_FIELDS = new EnumMap<>(SuggestionType.class);
+
+    static {
+        DOCUMENTS.put(SuggestionType.ADDRESS, Property.class);
+        DOCUMENTS.put(SuggestionType.LOCATION, Location.class);
+        DOCUMENTS.put(SuggestionType.AGENT, Agent.class);
+
+        SOURCE_FIELDS.put(SuggestionType.ADDRESS, new String[] { "address.street", "address.city", "address.state" });
+        SOURCE_FIELDS.put(SuggestionType.LOCATION, new String[] { "city", "state" });
+        SOURCE_FIELDS.put(SuggestionType.AGENT, new String[] { "firstName", "lastName" });
+    }
+
+    private final Client client;
+    private final int batchSize;
+    private final long rebuildInterval;
+
+    // one of the words of the normalized label + separator + type:id -> what is indexed for it.
+    private final ConcurrentSkipListMap<String, Entry> prefixes = new ConcurrentSkipListMap<>();
+    // type:id -> what is indexed for it.
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong keyChars = new AtomicLong();
+
+    // incremented by every rebuild, the entries not seen by the last rebuild are gone.
+    private final AtomicLong generation = new AtomicLong();
+
+    // false until the first rebuild, the index is incomplete until then.
+    private volatile boolean ready;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SuggestIndex(//
+            final Client client, //
+            @Value("${searchahouse.suggest.batch-size:1000}") final int batchSize, //
+            @Value("${searchahouse.suggest.rebuild-interval:3600000}") final long rebuildInterval //
+    ) {
+        this.client = client;
+        this.batchSize = batchSize;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        // in the background, the startup does not wait for the whole index to be read.
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "suggest-index"));
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not rebuild the suggest index.", e);
+            }
+        }, 0, this.rebuildInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.scheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     *
+     * @param text
+     *            the prefix, normalized here.
+     * @param size
+     *            max suggestions.
+     * @return the suggestions with a word starting with the text, alphabetically by that word.
+     */
+    public List<Suggestion> find(final String text, final int size) {
+        String prefix = normalize(text);
+        if (prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int space = prefix.indexOf(' ');
+        String from = space < 0 ? prefix : prefix.substring(0, space) + SEPARATOR;
+
+        // the same suggestion can match by several words.
+        Map<String, Suggestion> found = new LinkedHashMap<>();
+        for (Entry entry : this.prefixes.subMap(from, from + Character.MAX_VALUE).values()) {
+            if (space >= 0 && !entry.matches(prefix)) {
+                continue;
+            }
+            found.putIfAbsent(entry.suggestion.getType() + ":" + entry.suggestion.getId(), entry.suggestion);
+            if (found.size() == size) {
+                break;
+            }
+        }
+
+        return new ArrayList<>(found.values());
+    }
+
+    public void put(final Property property) {
+        Address address = property.getAddress() == null ? new Address() : property.getAddress();
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("address.street", address.getStreet());
+        fields.put("address.city", address.getCity());
+        fields.put("address.state", address.getState());
+        put(SuggestionType.ADDRESS, property.getPrimaryKey(), fields, property.getVersion());
+    }
+
+    public void put(final Agent agent) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("firstName", agent.getFirstName());
+        fields.put("lastName", agent.getLastName());
+        put(SuggestionType.AGENT, agent.getPrimaryKey(), fields, agent.getVersion());
+    }
+
+    /**
+     *
+     * Apply the changes of a delta event, if they change the label.
+     *
+     * @param version
+     *            the version of the document after the change, null if it has none.
+     * @param changes
+     *            field name and new value, as in the delta events.
+     */
+    public void update(final SuggestionType type, final String id, final Long version, final Map<String, Object> changes) {
+        Map<String, String> changed = fields(type, changes);
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        // not indexed yet, the next rebuild brings it.
+        this.entries.computeIfPresent(key(type, id), (key, old) -> {
+            if (isOlder(version, old.version)) {
+                return old;
+            }
+            Map<String, String> fields = new HashMap<>(old.fields);
+            fields.putAll(changed);
+            unindex(old);
+            return index(type, id, fields, version != null ? version : old.version);
+        });
+    }
+
+    public void remove(final SuggestionType type, final String id) {
+        this.entries.computeIfPresent(key(type, id), (key, old) -> {
+            unindex(old);
+            return null;
+        });
+    }
+
+    /**
+     * @return the characters of every key of the index, what most of its memory grows with.
+     */
+    public long keyChars() {
+        return this.keyChars.get();
+    }
+
+    /**
+     * Read every address, location and agent name from elasticsearch (only the fields of the labels), and drop the ones that are not there anymore.
+     */
+    public void rebuild() {
+        long current = this.generation.incrementAndGet();
+        long start = System.currentTimeMillis();
+
+        for (SuggestionType type : SuggestionType.values()) {
+            Class<?> document = DOCUMENTS.get(type);
+
+            SearchResponse scroll = this.client.prepareSearch(ElasticsearchIndexBootstrap.alias(document)) //
+                    .setTypes(ElasticsearchIndexBootstrap.type(document)) //
+                    .setSearchType(SearchType.SCAN) //
+                    .setScroll(TimeValue.timeValueMinutes(1)) //
+                    .setSize(this.batchSize) //
+                    .setFetchSource(SOURCE_FIELDS.get(type), null) //
+                    .setVersion(true) //
+                    .get();
+
+            while (true) {
+                scroll = this.client.prepareSearchScroll(scroll.getScrollId()).setScroll(TimeValue.timeValueMinutes(1)).get();
+                if (scroll.getHits().getHits().length == 0) {
+                    break;
+                }
+                for (SearchHit hit : scroll.getHits().getHits()) {
+                    put(type, hit.getId(), fields(type, hit.getSource()), hit.getVersion());
+                }
+            }
+        }
+
+        // entries put by the consumer during the rebuild have the current generation too.
+        this.entries.keySet().forEach(key -> this.entries.computeIfPresent(key, (k, entry) -> {
+            if (entry.generation == current) {
+                return entry;
+            }
+            unindex(entry);
+            return null;
+        }));
+
+        this.ready = true;
+        LOGGER.info("Suggest index rebuilt with {} entries in {} ms.", this.entries.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Integer>("suggest.index.size", this.entries.size()));
+        metrics.add(new Metric<Long>("suggest.index.key-chars", keyChars()));
+        return metrics;
+    }
+
+    /**
+     * @return the suggestion of an elasticsearch document.
+     */
+    static Suggestion suggestion(final String documentType, final String id, final Map<String, Object> source) {
+        SuggestionType type = DOCUMENTS.entrySet().stream() //
+                .filter(document -> ElasticsearchIndexBootstrap.type(document.getValue()).equals(documentType)) //
+                .findFirst().orElseThrow(() -> new IllegalArgumentException("No suggestions for " + documentType)).getKey();
+
+        return new Suggestion(id, label(type, fields(type, source)), type);
+    }
+
+    /**
+     * @return the fields of the label for the source of a document, or of a delta event. Only the ones present.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> fields(final SuggestionType type, final Map<String, Object> source) {
+        Map<String, String> fields = new HashMap<>();
+        if (source == null) {
+            return fields;
+        }
+
+        for (String field : SOURCE_FIELDS.get(type)) {
+            Map<String, Object> object = source;
+            String[] path = field.split("\\.");
+            for (int i = 0; i < path.length - 1 && object != null; i++) {
+                object = object.get(path[i]) instanceof Map ? (Map<String, Object>) object.get(path[i]) : null;
+            }
+            if (object != null && object.containsKey(path[path.length - 1])) {
+                fields.put(field, Objects.toString(object.get(path[path.length - 1]), null));
+            }
+        }
+        return fields;
+    }
+
+    static String label(final SuggestionType type, final Map<String, String> fields) {
+        // "31340 Mulholland Dr., Beverly Hills, California", "Beverly Hills, California" or "Gustavo Orsi".
+        String separator = type == SuggestionType.AGENT ? " " : ", ";
+
+        return Stream.of(SOURCE_FIELDS.get(type)) //
+                .map(fields::get) //
+                .filter(StringUtils::hasText) //
+                .map(String::trim) //
+                .collect(Collectors.joining(separator));
+    }
+
+    static String normalize(final String value) {
+        if (value == null) {
+            return "";
+        }
+        return Normalizer.normalize(value, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase() //
+                .replaceAll("[^\\p{L}\\p{N}\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+    private void put(final SuggestionType type, final String id, final Map<String, String> fields, final Long version) {
+        this.entries.compute(key(type, id), (key, old) -> {
+            if (old != null && isOlder(version, old.version)) {
+                // still there, the rebuild must not drop it.
+                old.generation = this.generation.get();
+                return old;
+            }
+            if (old != null) {
+                unindex(old);
+            }
+            return index(type, id, fields, version);
+        });
+    }
+
+    private Entry index(final SuggestionType type, final String id, final Map<String, String> fields, final Long version) {
+        String label = label(type, fields);
+        String normalized = normalize(label);
+        Entry entry = new Entry(new Suggestion(id, label, type), normalized, fields, version, this.generation.get());
+
+        if (!normalized.isEmpty()) {
+            for (String word : new LinkedHashSet<>(Arrays.asList(normalized.split(" ")))) {
+                String key = word + SEPARATOR + key(type, id);
+                this.prefixes.put(key, entry);
+                this.keyChars.addAndGet(key.length());
+                entry.keys.add(key);
+            }
+        }
+
+        return entry;
+    }
+
+    private void unindex(final Entry entry) {
+        for (String key : entry.keys) {
+            if (this.prefixes.remove(key) != null) {
+                this.keyChars.addAndGet(-key.length());
+            }
+        }
+    }
+
+    /**
+     * @return true if a change of the version is older than what is indexed. A change or an entry without version is never older.
+     */
+    private static boolean isOlder(final Long version, final Long indexed) {
+        return version != null && indexed != null && version < indexed;
+    }
+
+    private static String key(final SuggestionType type, final String id) {
+        return type + ":" + id;
+    }
+
+    private static class Entry {
+
+        private final Suggestion suggestion;
+        private final String normalized;
+        private final Map<String, String> fields;
+        private final Long version;
+        // the keys of the suggestion in the prefixes.
+        private final List<String> keys = new ArrayList<>();
+        private volatile long generation;
+
+        Entry(final Suggestion suggestion, final String normalized, final Map<String, String> fields, final Long version, final long generation) {
+            this.suggestion = suggestion;
+            this.normalized = normalized;
+            this.fields = fields;
+            this.version = version;
+            this.generation = generation;
+        }
+
+        /**
+         * @return true if a word of the label starts with the prefix, the prefix can go on with the next words.
+         */
+        boolean matches(final String prefix) {
+            return this.normalized.startsWith(prefix) || this.normalized.contains(" " + prefix);
+        }
+
+    }
+
+}
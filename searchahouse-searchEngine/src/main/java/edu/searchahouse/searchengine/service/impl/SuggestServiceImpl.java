@@ -0,0 +1,86 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.Location;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Suggestion;
+import edu.searchahouse.searchengine.service.SuggestService;
+
+@Service
+public class SuggestServiceImpl implements SuggestService {
+
+    // what the fuzzy fallback looks in, the address of the properties, the locations and the agent names.
+    private static final String[] FUZZY_FIELDS = { "address.street", "address.city.autocomplete", "address.state.autocomplete", "city.autocomplete",
+            "state.autocomplete", "firstName.autocomplete", "lastName" };
+    private static final String[] SOURCE_FIELDS = { "address.street", "address.city", "address.state", "city", "state", "firstName", "lastName" };
+
+    private final SuggestIndex suggestIndex;
+    private final Client client;
+    private final int maxSize;
+
+    @Autowired
+    public SuggestServiceImpl(//
+            final SuggestIndex suggestIndex, //
+            final Client client, //
+            @Value("${searchahouse.suggest.max-size:20}") final int maxSize //
+    ) {
+        this.suggestIndex = suggestIndex;
+        this.client = client;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public List<Suggestion> suggest(final String text, final int size) {
+
+        if (size < 1 || size > this.maxSize) {
+            throw new IllegalArgumentException("The size must be between 1 and " + this.maxSize);
+        }
+        if (!StringUtils.hasText(text)) {
+            return Collections.emptyList();
+        }
+
+        if (this.suggestIndex.isReady()) {
+            List<Suggestion> suggestions = this.suggestIndex.find(text, size);
+            if (!suggestions.isEmpty()) {
+                return suggestions;
+            }
+        }
+
+        return fuzzy(text, size);
+    }
+
+    /**
+     * @return the suggestions from elasticsearch, with typos: one query over the three aliases, only with the fields of the labels.
+     */
+    private List<Suggestion> fuzzy(final String text, final int size) {
+        SearchResponse response = this.client.prepareSearch(ElasticsearchIndexBootstrap.alias(Property.class), //
+                ElasticsearchIndexBootstrap.alias(Location.class), //
+                ElasticsearchIndexBootstrap.alias(Agent.class)) //
+                .setQuery(QueryBuilders.multiMatchQuery(text, FUZZY_FIELDS).fuzziness(Fuzziness.AUTO).prefixLength(1)) //
+                .setFetchSource(SOURCE_FIELDS, null) //
+                .setSize(size) //
+                .get();
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            suggestions.add(SuggestIndex.suggestion(hit.getType(), hit.getId(), hit.getSource()));
+        }
+        return suggestions;
+    }
+
+}
@@ -0,0 +1,48 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Token bucket rate limiter: up to "capacity" permits can be taken at once (burst), and the bucket refills at "permitsPerSecond".
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(final int capacity, final double permitsPerSecond) {
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take one permit, waiting until the bucket has one.
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (this.tokens >= 1) {
+                    this.tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - this.tokens) / this.permitsPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.permitsPerNano);
+        this.lastRefill = now;
+    }
+
+}
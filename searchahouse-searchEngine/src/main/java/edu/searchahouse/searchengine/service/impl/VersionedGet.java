@@ -0,0 +1,62 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+import edu.searchahouse.searchengine.model.BaseEntity;
+
+//@formatter:off
+/**
+ *
+ * Reads an entity by primary key with the version of its document, the ETag of the entity endpoints (the repositories search by primary key and the
+ * hits of a search have no version).
+ *
+ * --- a get by id, realtime: the entity is there as soon as the consumer indexed it, before the refresh.
+ */
+//@formatter:on
+@Component
+public class VersionedGet {
+
+    private final Client client;
+
+    private final EntityMapper entityMapper = new DefaultEntityMapper();
+
+    @Autowired
+    public VersionedGet(final Client client) {
+        this.client = client;
+    }
+
+    /**
+     *
+     * @param document
+     *            the document class, the alias and type come from its @Document.
+     * @return the entity with its version, empty if there is none with the primary key.
+     */
+    public <T extends BaseEntity> Optional<T> get(final Class<T> document, final String primaryKey) {
+
+        GetResponse response = this.client.prepareGet(ElasticsearchIndexBootstrap.alias(document), ElasticsearchIndexBootstrap.type(document), primaryKey)
+                .get();
+
+        if (!response.isExists()) {
+            return Optional.empty();
+        }
+
+        try {
+            T entity = this.entityMapper.mapToObject(response.getSourceAsString(), document);
+            entity.setVersion(response.getVersion());
+            return Optional.of(entity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
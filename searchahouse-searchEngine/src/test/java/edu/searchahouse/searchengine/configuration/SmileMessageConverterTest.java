@@ -0,0 +1,37 @@
+package edu.searchahouse.searchengine.configuration;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.messaging.support.MessageBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Property.PropertyStatus;
+import edu.searchahouse.searchengine.model.Property.PropertyType;
+import edu.searchahouse.searchengine.rabbitmq.wrappers.PropertyWrapperAmqp;
+import edu.searchahouse.searchengine.rabbitmq.wrappers.QueueOperation;
+
+public class SmileMessageConverterTest {
+
+	private final ObjectMapper json = RabbitMqConsumerConfiguration.configure(new ObjectMapper());
+	private final SmileMessageConverter converter = new SmileMessageConverter(RabbitMqConsumerConfiguration.configure(new ObjectMapper(new SmileFactory())));
+
+	@Test
+	public void a_message_written_and_read_as_smile_shouldBe_the_same_document_as_in_json() throws Exception {
+		Property property = new Property("Property1", "description1", new GeoPoint(34.1, -118.4), new Address("California", "Beverly Hills",
+				"31340 Mulholland Dr."), 100000L, PropertyType.SALE, PropertyStatus.AVAILABLE);
+		property.setPrimaryKey("1");
+		PropertyWrapperAmqp<Property> wrapper = new PropertyWrapperAmqp<>(property, QueueOperation.CREATE);
+
+		byte[] smile = (byte[]) converter.convertToInternal(wrapper, null);
+		Object read = converter.convertFromInternal(MessageBuilder.withPayload(smile).build(), PropertyWrapperAmqp.class);
+
+		assertEquals(json.readTree(json.writeValueAsBytes(wrapper)), json.valueToTree(read));
+	}
+
+}
@@ -0,0 +1,91 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Agent;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Property.PropertyStatus;
+import edu.searchahouse.searchengine.model.Property.PropertyType;
+import edu.searchahouse.searchengine.persistence.repository.elasticsearch.AgentRepository;
+
+public class AgentRestEndpointTest extends AbstractRestEndpointTest {
+
+	@Autowired
+	private AgentRepository agentRepository;
+
+	private Agent agent;
+
+	@Before
+	public void agentsForTest() {
+		agentRepository.deleteAll();
+		propertyRepository.deleteAll();
+
+		for (String index : "1,2".split(",")) {
+			agent = new Agent("Gustavo" + index, "Orsi" + index, index + "agent@example.com");
+			agent.setPrimaryKey(UUID.randomUUID().toString());
+
+			Property property = new Property("Property" + index, "description" + index, new GeoPoint(1, 1), new Address(), 100000L, PropertyType.SALE,
+					PropertyStatus.AVAILABLE);
+			property.setPrimaryKey(UUID.randomUUID().toString());
+			property.setAgentIds(Collections.singletonList(agent.getPrimaryKey()));
+			propertyRepository.save(property);
+
+			agentRepository.save(agent);
+		}
+	}
+
+	@Test
+	public void searchAgents_by_firstName_shouldReturn_one_page_without_property_ids_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/agent/autocomplete/gus" )
+						.param("size", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.agentList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.agentList[0].propertyIds" ).doesNotExist() )
+			.andExpect( jsonPath( "$.page.size", is(1)) )
+			.andExpect( jsonPath( "$.page.totalElements", is(2)) );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchAgents_by_firstName_too_many_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/agent/autocomplete/g" )
+						.param("size", "1000"))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+	@Test
+	public void getAgentProperties_shouldReturn_a_page_of_the_agent_properties_and_200_ok_httpcode() throws Exception {
+
+		Property second = new Property("Property3", "description3", new GeoPoint(1, 1), new Address(), 100000L, PropertyType.RENT, PropertyStatus.AVAILABLE);
+		second.setPrimaryKey(UUID.randomUUID().toString());
+		second.setAgentIds(Collections.singletonList(agent.getPrimaryKey()));
+		propertyRepository.save(second);
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/agent/" + agent.getPrimaryKey() + "/properties" )
+						.param("size", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$.page.totalElements", is(2)) );
+		//@formatter:on
+	}
+
+}
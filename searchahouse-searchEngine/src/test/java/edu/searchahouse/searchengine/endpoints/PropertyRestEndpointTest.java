@@ -1,24 +1,46 @@
 package edu.searchahouse.searchengine.endpoints;
 
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.VersionType;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 import org.springframework.hateoas.MediaTypes;
 
+import com.jayway.jsonpath.JsonPath;
+
+import edu.searchahouse.searchengine.configuration.ElasticsearchIndexBootstrap;
+import edu.searchahouse.searchengine.model.Address;
 import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Property.PropertyStatus;
+import edu.searchahouse.searchengine.model.Property.PropertyType;
 
 public class PropertyRestEndpointTest extends AbstractRestEndpointTest {
 
+	@Autowired
+	private Client client;
+
 	private List<Property> properties;
 
 	@Before
@@ -26,6 +48,70 @@ public class PropertyRestEndpointTest extends AbstractRestEndpointTest {
 		properties = super.createPropertiesForTest();
 	}
 
+	@Test
+	public void getProperty_with_its_etag_shouldReturn_304_notmodified_httpcode() throws Exception {
+
+		//@formatter:off
+		String eTag = mockMvc.perform(get( "/api/v1/property/" + properties.get(0).getPrimaryKey() ))
+			.andExpect( status().isOk() )
+			.andExpect( header().string("ETag", startsWith("\"" + properties.get(0).getPrimaryKey() + "-")) )
+			.andReturn().getResponse().getHeader("ETag");
+
+		mockMvc.perform(get( "/api/v1/property/" + properties.get(0).getPrimaryKey() )
+						.header("If-None-Match", eTag))
+			.andExpect( status().isNotModified() )
+			.andExpect( content().string("") );
+		//@formatter:on
+	}
+
+	@Test
+	public void getProperty_with_the_etag_of_an_older_version_shouldReturn_the_property_and_200_ok_httpcode() throws Exception {
+
+		// a new version of the property.
+		propertyRepository.save(properties.get(0));
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/" + properties.get(0).getPrimaryKey() )
+						.header("If-None-Match", "\"" + properties.get(0).getPrimaryKey() + "-1\""))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.name", is("Property1") ) );
+		//@formatter:on
+	}
+
+	@Test
+	public void getProperty_with_the_etag_before_the_location_was_written_shouldReturn_200_ok_httpcode_and_the_new_version() throws Exception {
+
+		//@formatter:off
+		String eTag = mockMvc.perform(get( "/api/v1/property/" + properties.get(0).getPrimaryKey() ))
+			.andReturn().getResponse().getHeader("ETag");
+		//@formatter:on
+
+		String index = ElasticsearchIndexBootstrap.alias(Property.class);
+		String type = ElasticsearchIndexBootstrap.type(Property.class);
+		long version = client.prepareGet(index, type, properties.get(0).getPrimaryKey()).get().getVersion();
+
+		// like the location the geocoder writes to the crud service: it comes back with the next version.
+		Map<String, Object> location = new HashMap<>();
+		location.put("lat", 10.0);
+		location.put("lon", 10.0);
+
+		//@formatter:off
+		client.prepareUpdate(index, type, properties.get(0).getPrimaryKey())
+				.setDoc(Collections.singletonMap("location", location))
+				.setVersion(version + 1)
+				.setVersionType(VersionType.FORCE)
+				.get();
+		//@formatter:on
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/" + properties.get(0).getPrimaryKey() )
+						.header("If-None-Match", eTag))
+			.andExpect( status().isOk() )
+			.andExpect( header().string("ETag", not(eTag)) )
+			.andExpect( header().string("ETag", is("\"" + properties.get(0).getPrimaryKey() + "-" + (version + 1) + "\"")) );
+		//@formatter:on
+	}
+
 	@Test
 	public void searchAllProperties_by_location_shouldReturn_all_properties_and_200_ok_httpcode() throws Exception {
 
@@ -45,4 +131,145 @@ public class PropertyRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
 	}
 
+	@Test
+	public void searchProperties_by_location_with_the_after_link_shouldReturn_the_next_page() throws Exception {
+
+		//@formatter:off
+		String firstPage = mockMvc.perform(get( "/api/v1/property/location" )
+						.param("longitude", "1")
+						.param("latitude", "1")
+						.param("distance", "100000")
+						.param("sortOrder", "asc")
+						.param("size", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].name", containsString("Property1") ) )
+			.andExpect( jsonPath( "$.page.totalElements", is(properties.size())) )
+			.andReturn().getResponse().getContentAsString();
+
+		String after = JsonPath.read(firstPage, "$._links.after.href");
+
+		mockMvc.perform(get( URI.create(after) ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].name", containsString("Property2") ) )
+			.andExpect( jsonPath( "$._links.after" ).doesNotExist() );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_by_location_too_deep_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("longitude", "1")
+						.param("latitude", "1")
+						.param("page", "1000")
+						.param("size", "10"))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_clusters_shouldReturn_one_cell_with_the_properties_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/clusters" )
+						.param("top", "3")
+						.param("left", "0")
+						.param("bottom", "0")
+						.param("right", "3")
+						.param("zoom", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].count", is(properties.size())) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].minPrice", is(100000)) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].maxPrice", is(100000)) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].properties", hasSize(properties.size())) );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_clusters_shouldReturn_the_mean_of_the_locations_as_centroid_and_200_ok_httpcode() throws Exception {
+
+		// (1, 1), (1, 1) and (2, 2): the mean is (1.33, 1.33), the middle of their box would be (1.5, 1.5).
+		Property property = new Property("Property3", "description3", new GeoPoint(1, 1), new Address(), 100000L, PropertyType.SALE,
+				PropertyStatus.AVAILABLE);
+		property.setPrimaryKey(UUID.randomUUID().toString());
+		propertyRepository.save(property);
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/clusters" )
+						.param("top", "3")
+						.param("left", "0")
+						.param("bottom", "0")
+						.param("right", "3")
+						.param("zoom", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].count", is(3)) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].centroid.lat", closeTo(4.0 / 3, 0.0001)) )
+			.andExpect( jsonPath( "$._embedded.propertyClusterList[0].centroid.lon", closeTo(4.0 / 3, 0.0001)) );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_clusters_with_a_wrong_zoom_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/clusters" )
+						.param("top", "3")
+						.param("left", "0")
+						.param("bottom", "0")
+						.param("right", "3")
+						.param("zoom", "30"))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_without_criteria_shouldReturn_all_properties_with_facets_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/search" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(properties.size())) )
+			.andExpect( jsonPath( "$.page.totalElements", is(properties.size())) )
+			.andExpect( jsonPath( "$.facets.type.SALE", is(properties.size())) )
+			.andExpect( jsonPath( "$.facets.status.AVAILABLE", is(properties.size())) )
+			.andExpect( jsonPath( "$.facets.price.100000", is(properties.size())) );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_by_text_location_and_price_shouldReturn_the_matching_properties_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("q", "Property1")
+						.param("latitude", "1")
+						.param("longitude", "1")
+						.param("distance", "100000")
+						.param("type", "SALE")
+						.param("status", "AVAILABLE")
+						.param("minPrice", "50000")
+						.param("maxPrice", "150000"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].name", is("Property1") ) )
+			.andExpect( jsonPath( "$.facets.type.SALE", is(1)) );
+		//@formatter:on
+	}
+
+	@Test
+	public void searchProperties_by_type_without_matches_shouldReturn_no_properties_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("type", "RENT"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.page.totalElements", is(0)) )
+			.andExpect( jsonPath( "$.facets.type.SALE" ).doesNotExist() );
+		//@formatter:on
+	}
+
 }
@@ -0,0 +1,198 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import edu.searchahouse.searchengine.configuration.ResultCacheFilter;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.rabbitmq.ElasticsearchBulkIndexer;
+import edu.searchahouse.searchengine.service.impl.ResultCache;
+import edu.searchahouse.searchengine.service.impl.ResultCacheTags;
+
+public class ResultCacheTest extends AbstractRestEndpointTest {
+
+	@Autowired
+	private ResultCache resultCache;
+
+	@Autowired
+	private ResultCacheFilter resultCacheFilter;
+
+	@Autowired
+	private ElasticsearchBulkIndexer bulkIndexer;
+
+	private List<Property> properties;
+
+	@Before
+	@Override
+	public void setup() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).addFilters(resultCacheFilter).build();
+
+		properties = createPropertiesForTest();
+		resultCache.clear();
+	}
+
+	@Test
+	public void the_same_search_twice_shouldReturn_the_cached_response_the_second_time() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( header().string("X-Cache", "MISS") );
+
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("longitude", " 1")
+						.param("latitude", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( header().string("X-Cache", "HIT") );
+		//@formatter:on
+	}
+
+	@Test
+	public void a_change_to_a_property_of_the_area_shouldInvalidate_the_cached_search() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+
+		// the property is in elasticsearch at (1, 1), the indexer tells the cache before it writes the change.
+		Map<String, Object> changes = new HashMap<>();
+		changes.put("name", "renamed");
+		resultCache.propertyChanged(properties.get(0).getPrimaryKey(), changes);
+		bulkIndexer.update(Property.class, properties.get(0).getPrimaryKey(), null, changes, null);
+		bulkIndexer.flush();
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+	}
+
+	@Test
+	public void an_invalidation_from_another_instance_shouldInvalidate_the_cached_search() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+
+		// what the instance that received a change of a property at (1, 1) publishes.
+		MessageProperties messageProperties = new MessageProperties();
+		messageProperties.setAppId(UUID.randomUUID().toString());
+		messageProperties.setType("invalidate");
+		String tags = "[\"" + ResultCacheTags.cell(1, 1, resultCache.getGeohashPrecision()) + "\"]";
+		resultCache.receiveInvalidation(new Message(tags.getBytes("UTF-8"), messageProperties));
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+	}
+
+	@Test
+	public void a_change_to_a_property_in_the_price_range_shouldInvalidate_the_cached_search_by_price() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("minPrice", "50000")
+						.param("maxPrice", "150000"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+
+		Map<String, Object> changes = new HashMap<>();
+		changes.put("price", 120000L);
+		resultCache.propertyChanged(UUID.randomUUID().toString(), changes);
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("minPrice", "50000")
+						.param("maxPrice", "150000"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+	}
+
+	@Test
+	public void a_change_to_a_property_far_away_and_out_of_the_price_range_shouldNotInvalidate_the_other_cached_searches() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("minPrice", "50000")
+						.param("maxPrice", "150000"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+
+		Map<String, Object> location = new HashMap<>();
+		location.put("lat", 40.0);
+		location.put("lon", -70.0);
+		Map<String, Object> changes = new HashMap<>();
+		changes.put("location", location);
+		changes.put("price", 5000000L);
+		resultCache.propertyChanged(UUID.randomUUID().toString(), changes);
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "HIT") );
+
+		mockMvc.perform(get( "/api/v1/property/search" )
+						.param("minPrice", "50000")
+						.param("maxPrice", "150000"))
+			.andExpect( header().string("X-Cache", "HIT") );
+		//@formatter:on
+	}
+
+	@Test
+	public void a_change_to_a_property_far_away_shouldNotInvalidate_the_cached_search() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "MISS") );
+		//@formatter:on
+
+		Map<String, Object> location = new HashMap<>();
+		location.put("lat", 40.0);
+		location.put("lon", -70.0);
+		Map<String, Object> changes = new HashMap<>();
+		changes.put("location", location);
+		resultCache.propertyChanged(UUID.randomUUID().toString(), changes);
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/property/location" )
+						.param("latitude", "1")
+						.param("longitude", "1"))
+			.andExpect( header().string("X-Cache", "HIT") );
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,79 @@
+package edu.searchahouse.searchengine.endpoints;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Property.PropertyStatus;
+import edu.searchahouse.searchengine.model.Property.PropertyType;
+import edu.searchahouse.searchengine.service.impl.SuggestIndex;
+
+public class SuggestRestEndpointTest extends AbstractRestEndpointTest {
+
+	@Autowired
+	private SuggestIndex suggestIndex;
+
+	private Property property;
+
+	@Before
+	public void propertyForTest() {
+		propertyRepository.deleteAll();
+
+		property = new Property("Property1", "description1", new GeoPoint(1, 1), new Address("California", "Beverly Hills", "31340 Mulholland Dr."),
+				100000L, PropertyType.SALE, PropertyStatus.AVAILABLE);
+		property.setPrimaryKey(UUID.randomUUID().toString());
+		propertyRepository.save(property);
+
+		suggestIndex.rebuild();
+	}
+
+	@Test
+	public void suggest_by_the_prefix_of_any_word_shouldReturn_the_address_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/suggest" )
+						.param("q", "hil"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$", hasSize(1)) )
+			.andExpect( jsonPath( "$[0].id", is(property.getPrimaryKey())) )
+			.andExpect( jsonPath( "$[0].label", is("31340 Mulholland Dr., Beverly Hills, California")) )
+			.andExpect( jsonPath( "$[0].type", is("ADDRESS")) );
+		//@formatter:on
+	}
+
+	@Test
+	public void suggest_with_a_typo_shouldReturn_the_address_from_elasticsearch_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/suggest" )
+						.param("q", "mulholand"))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$", hasSize(1)) )
+			.andExpect( jsonPath( "$[0].id", is(property.getPrimaryKey())) )
+			.andExpect( jsonPath( "$[0].type", is("ADDRESS")) );
+		//@formatter:on
+	}
+
+	@Test
+	public void suggest_too_many_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/suggest" )
+						.param("q", "bev")
+						.param("size", "1000"))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+}
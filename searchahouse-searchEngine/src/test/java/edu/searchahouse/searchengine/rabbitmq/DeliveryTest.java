@@ -0,0 +1,58 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Message;
+
+import com.rabbitmq.client.Channel;
+
+public class DeliveryTest {
+
+	private final Channel channel = mock(Channel.class);
+	private final FailedMessageHandler failedMessageHandler = mock(FailedMessageHandler.class);
+	private final Message message = FailedMessageHandlerTest.message(null);
+	private final Delivery delivery = new Delivery(message, channel, failedMessageHandler);
+
+	@Test
+	public void ack_shouldAck_only_its_message() throws Exception {
+		delivery.ack();
+
+		verify(channel).basicAck(42, false);
+	}
+
+	@Test
+	public void reject_shouldNack_the_message_and_requeue_it_if_asked() throws Exception {
+		delivery.reject(true);
+
+		verify(channel).basicNack(42, false, true);
+	}
+
+	@Test
+	public void fail_shouldHand_the_message_to_the_failed_message_handler_and_ack_it() throws Exception {
+		IllegalStateException cause = new IllegalStateException("elasticsearch said no");
+
+		delivery.fail(cause);
+
+		verify(failedMessageHandler).failed(message, cause);
+		verify(channel).basicAck(42, false);
+	}
+
+	@Test
+	public void fail_when_the_message_can_not_be_retried_nor_quarantined_shouldRequeue_it() throws Exception {
+		doThrow(new AmqpIOException(new IOException("broker down"))).when(failedMessageHandler).failed(any(Message.class), any(Throwable.class));
+
+		delivery.fail(new IllegalStateException("elasticsearch said no"));
+
+		verify(channel).basicNack(42, false, true);
+		verify(channel, never()).basicAck(42, false);
+	}
+
+}
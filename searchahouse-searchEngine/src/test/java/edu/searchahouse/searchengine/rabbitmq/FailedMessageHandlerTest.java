@@ -0,0 +1,84 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+
+public class FailedMessageHandlerTest {
+
+	private static final int MAX_RETRIES = 3;
+	private static final long BACKOFF = 1000;
+
+	private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+	private final CounterService counterService = mock(CounterService.class);
+	private final FailedMessageHandler failedMessageHandler = new FailedMessageHandler(rabbitTemplate, counterService, MAX_RETRIES, BACKOFF);
+
+	@Test
+	public void the_first_failure_shouldSend_the_message_to_the_retry_exchange_with_one_retry_after_the_backoff() {
+		failedMessageHandler.failed(message(null), new IllegalStateException("elasticsearch said no"));
+
+		Message retry = sent(RabbitMqConsumerConfiguration.amqpRetryExchange);
+		assertEquals(1, retry.getMessageProperties().getHeaders().get(FailedMessageHandler.RETRY_COUNT));
+		assertEquals(String.valueOf(BACKOFF), retry.getMessageProperties().getExpiration());
+		verify(counterService).increment("searchengine.consumer.retried");
+	}
+
+	@Test
+	public void every_retry_shouldCount_one_more_and_double_the_wait() {
+		failedMessageHandler.failed(message(2), new IllegalStateException("elasticsearch said no"));
+
+		Message retry = sent(RabbitMqConsumerConfiguration.amqpRetryExchange);
+		assertEquals(3, retry.getMessageProperties().getHeaders().get(FailedMessageHandler.RETRY_COUNT));
+		assertEquals(String.valueOf(BACKOFF * 4), retry.getMessageProperties().getExpiration());
+	}
+
+	@Test
+	public void a_failure_after_the_last_retry_shouldQuarantine_the_message() {
+		failedMessageHandler.failed(message(MAX_RETRIES), new IllegalStateException("elasticsearch said no"));
+
+		Message quarantined = sent(RabbitMqConsumerConfiguration.amqpDeadLetterExchange);
+		assertEquals("elasticsearch said no", quarantined.getMessageProperties().getHeaders().get("x-exception-message"));
+		assertEquals(RabbitMqConsumerConfiguration.amqpQueueProperty, quarantined.getMessageProperties().getHeaders().get("x-original-routingKey"));
+		verify(rabbitTemplate, never()).send(eq(RabbitMqConsumerConfiguration.amqpRetryExchange), anyString(), any(Message.class));
+		verify(counterService).increment("searchengine.consumer.quarantined");
+	}
+
+	@Test
+	public void a_message_that_can_not_be_converted_shouldGo_to_the_quarantine_without_retries() {
+		failedMessageHandler.failed(message(null), new MessageConversionException("not json"));
+
+		sent(RabbitMqConsumerConfiguration.amqpDeadLetterExchange);
+		verify(rabbitTemplate, never()).send(eq(RabbitMqConsumerConfiguration.amqpRetryExchange), anyString(), any(Message.class));
+	}
+
+	private Message sent(final String exchange) {
+		ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+		verify(rabbitTemplate).send(eq(exchange), anyString(), message.capture());
+		return message.getValue();
+	}
+
+	static Message message(final Integer retries) {
+		MessageProperties properties = new MessageProperties();
+		properties.setReceivedRoutingKey(RabbitMqConsumerConfiguration.amqpQueueProperty);
+		properties.setDeliveryTag(42);
+		if (retries != null) {
+			properties.setHeader(FailedMessageHandler.RETRY_COUNT, retries);
+		}
+		return new Message("{}".getBytes(), properties);
+	}
+
+}
@@ -0,0 +1,91 @@
+package edu.searchahouse.searchengine.rabbitmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+
+import edu.searchahouse.searchengine.configuration.RabbitMqConsumerConfiguration;
+
+public class QuarantineTest {
+
+	private final Channel channel = mock(Channel.class);
+	private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+	private final Quarantine quarantine = new Quarantine(rabbitTemplate, mock(AmqpAdmin.class));
+
+	@Before
+	public void setup() throws Exception {
+		when(rabbitTemplate.execute(Matchers.<ChannelCallback<Integer>> any())).thenAnswer(
+				invocation -> ((ChannelCallback<?>) invocation.getArguments()[0]).doInRabbit(channel));
+	}
+
+	@Test
+	public void replay_shouldPublish_the_message_to_its_queue_without_the_failure_and_ack_it() throws Exception {
+		Map<String, Object> headers = new HashMap<>();
+		headers.put("x-original-routingKey", RabbitMqConsumerConfiguration.amqpQueueProperty);
+		headers.put("x-exception-message", "elasticsearch said no");
+		headers.put(FailedMessageHandler.RETRY_COUNT, 5);
+		headers.put("__TypeId__", "PropertyWrapperAmqp");
+		when(channel.basicGet(RabbitMqConsumerConfiguration.amqpQueueQuarantine, false)).thenReturn(quarantined(1, "error.whatever", headers), (GetResponse) null);
+
+		assertEquals(1, quarantine.replay(10));
+
+		ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+		verify(channel).basicPublish(eq(""), eq(RabbitMqConsumerConfiguration.amqpQueueProperty), properties.capture(), any(byte[].class));
+		assertFalse(properties.getValue().getHeaders().containsKey("x-exception-message"));
+		assertFalse(properties.getValue().getHeaders().containsKey(FailedMessageHandler.RETRY_COUNT));
+		assertEquals("PropertyWrapperAmqp", properties.getValue().getHeaders().get("__TypeId__"));
+		verify(channel).basicAck(1, false);
+	}
+
+	@Test
+	public void replay_of_a_message_from_an_unknown_queue_shouldLeave_it_in_the_quarantine() throws Exception {
+		when(channel.basicGet(RabbitMqConsumerConfiguration.amqpQueueQuarantine, false)).thenReturn(quarantined(1, "SOMEWHERE-ELSE", null), (GetResponse) null);
+
+		assertEquals(0, quarantine.replay(10));
+
+		verify(channel, never()).basicPublish(anyString(), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+		verify(channel).basicNack(1, false, true);
+	}
+
+	@Test
+	public void replay_shouldStop_at_the_max() throws Exception {
+		when(channel.basicGet(RabbitMqConsumerConfiguration.amqpQueueQuarantine, false)).thenReturn(
+				quarantined(1, RabbitMqConsumerConfiguration.amqpQueueLead, null), quarantined(2, RabbitMqConsumerConfiguration.amqpQueueLead, null));
+
+		assertEquals(1, quarantine.replay(1));
+
+		verify(channel).basicAck(1, false);
+		verify(channel, never()).basicAck(eq(2L), anyBoolean());
+		verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+	}
+
+	private static GetResponse quarantined(final long deliveryTag, final String routingKey, final Map<String, Object> headers) {
+		AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().headers(headers).build();
+		return new GetResponse(new Envelope(deliveryTag, false, RabbitMqConsumerConfiguration.amqpDeadLetterExchange, routingKey), properties, "{}".getBytes(), 0);
+	}
+
+}
@@ -0,0 +1,119 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.springframework.data.geo.Point;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.service.impl.GeocodeCache.CachedGeocode;
+
+public class GeocodeCacheTest {
+
+	private static final Point POINT = new Point(40.0, -70.0);
+
+	@Test
+	public void key_shouldIgnore_case_punctuation_and_spaces() {
+		assertEquals(GeocodeCache.key(new Address("IL", "Springfield", "742 Evergreen Terrace.")),
+				GeocodeCache.key(new Address("il", " springfield", "742  evergreen terrace")));
+	}
+
+	@Test
+	public void key_without_some_fields_shouldNot_fail() {
+		assertEquals("||", GeocodeCache.key(new Address()));
+	}
+
+	@Test
+	public void get_after_put_shouldReturn_the_point_of_the_same_address_written_differently() {
+		GeocodeCache cache = cache(10, 720, 24, "");
+		cache.put(new Address("IL", "Springfield", "742 Evergreen Terrace"), POINT);
+
+		CachedGeocode cached = cache.get(new Address("il", "SPRINGFIELD", "742 evergreen terrace.")).get();
+
+		assertFalse(cached.isNegative());
+		assertEquals(POINT, cached.getPoint());
+	}
+
+	@Test
+	public void get_of_an_unresolved_address_shouldReturn_a_negative_entry() {
+		GeocodeCache cache = cache(10, 720, 24, "");
+		cache.put(new Address("IL", "Springfield", "nowhere"), null);
+
+		CachedGeocode cached = cache.get(new Address("IL", "Springfield", "nowhere")).get();
+
+		assertTrue(cached.isNegative());
+		assertNull(cached.getPoint());
+	}
+
+	@Test
+	public void get_of_an_expired_address_shouldReturn_nothing() throws Exception {
+		GeocodeCache cache = cache(10, 0, 0, "");
+		cache.put(new Address("IL", "Springfield", "742 Evergreen Terrace"), POINT);
+
+		Thread.sleep(5);
+
+		assertFalse(cache.get(new Address("IL", "Springfield", "742 Evergreen Terrace")).isPresent());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void negative_entries_shouldExpire_with_their_own_ttl() throws Exception {
+		GeocodeCache cache = cache(10, 720, 0, "");
+		cache.put(new Address("IL", "Springfield", "742 Evergreen Terrace"), POINT);
+		cache.put(new Address("IL", "Springfield", "nowhere"), null);
+
+		Thread.sleep(5);
+
+		assertTrue(cache.get(new Address("IL", "Springfield", "742 Evergreen Terrace")).isPresent());
+		assertFalse(cache.get(new Address("IL", "Springfield", "nowhere")).isPresent());
+	}
+
+	@Test
+	public void put_when_full_shouldEvict_the_least_recently_used_address() {
+		GeocodeCache cache = cache(2, 720, 24, "");
+		cache.put(new Address("IL", "Springfield", "1"), POINT);
+		cache.put(new Address("IL", "Springfield", "2"), POINT);
+
+		// "1" is used, so "2" is the least recently used one.
+		cache.get(new Address("IL", "Springfield", "1"));
+		cache.put(new Address("IL", "Springfield", "3"), POINT);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.get(new Address("IL", "Springfield", "1")).isPresent());
+		assertFalse(cache.get(new Address("IL", "Springfield", "2")).isPresent());
+		assertTrue(cache.get(new Address("IL", "Springfield", "3")).isPresent());
+	}
+
+	@Test
+	public void stop_and_start_shouldKeep_the_addresses_in_the_json_file() throws Exception {
+		Path file = Files.createTempDirectory("geocode-cache").resolve("geocode-cache.json");
+
+		GeocodeCache cache = cache(10, 720, 24, file.toString());
+		cache.start();
+		cache.put(new Address("IL", "Springfield", "742 Evergreen Terrace"), POINT);
+		cache.put(new Address("IL", "Springfield", "nowhere"), null);
+		cache.stop();
+
+		assertTrue(new String(Files.readAllBytes(file), "UTF-8").startsWith("{"));
+
+		GeocodeCache loaded = cache(10, 720, 24, file.toString());
+		loaded.start();
+		loaded.stop();
+
+		assertEquals(POINT, loaded.get(new Address("IL", "Springfield", "742 Evergreen Terrace")).get().getPoint());
+		assertTrue(loaded.get(new Address("IL", "Springfield", "nowhere")).get().isNegative());
+	}
+
+	private static GeocodeCache cache(final int maxSize, final long ttlHours, final long negativeTtlHours, final String file) {
+		return new GeocodeCache(new ObjectMapper(), maxSize, ttlHours, negativeTtlHours, file, 300000);
+	}
+
+}
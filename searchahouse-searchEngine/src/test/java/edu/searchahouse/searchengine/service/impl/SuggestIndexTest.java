@@ -0,0 +1,88 @@
+package edu.searchahouse.searchengine.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import edu.searchahouse.searchengine.model.Address;
+import edu.searchahouse.searchengine.model.Property;
+import edu.searchahouse.searchengine.model.Suggestion;
+import edu.searchahouse.searchengine.model.Suggestion.SuggestionType;
+
+public class SuggestIndexTest {
+
+	private final SuggestIndex suggestIndex = new SuggestIndex(null, 1000, 3600000);
+
+	@Test
+	public void find_by_the_prefix_of_any_word_shouldReturn_the_address() {
+		suggestIndex.put(property("1", 1L, "31340 Mulholland Dr."));
+
+		assertEquals(Collections.singletonList("1"), ids(suggestIndex.find("mulh", 10)));
+		assertEquals(Collections.singletonList("1"), ids(suggestIndex.find("Beverly", 10)));
+	}
+
+	@Test
+	public void find_by_several_words_shouldReturn_only_the_addresses_with_those_words_in_a_row() {
+		suggestIndex.put(property("1", 1L, "31340 Mulholland Dr."));
+		suggestIndex.put(property("2", 1L, "9 Beverly Dr."));
+
+		assertEquals(Collections.singletonList("1"), ids(suggestIndex.find("mulholland dr", 10)));
+		assertEquals(Collections.singletonList("2"), ids(suggestIndex.find("beverly dr", 10)));
+		assertTrue(suggestIndex.find("hills beverly", 10).isEmpty());
+	}
+
+	@Test
+	public void an_older_version_shouldNotReplace_the_indexed_address() {
+		suggestIndex.put(property("1", 2L, "31340 Mulholland Dr."));
+		suggestIndex.put(property("1", 1L, "1 Old St."));
+		suggestIndex.update(SuggestionType.ADDRESS, "1", 1L, Collections.singletonMap("address", Collections.singletonMap("street", "2 Old St.")));
+
+		assertTrue(suggestIndex.find("old", 10).isEmpty());
+		assertEquals(Collections.singletonList("1"), ids(suggestIndex.find("mulholland", 10)));
+	}
+
+	@Test
+	public void a_newer_version_shouldReplace_the_indexed_address() {
+		suggestIndex.put(property("1", 1L, "31340 Mulholland Dr."));
+		suggestIndex.update(SuggestionType.ADDRESS, "1", 2L, Collections.singletonMap("address", Collections.singletonMap("street", "1 New St.")));
+
+		assertEquals(Collections.singletonList("1"), ids(suggestIndex.find("new", 10)));
+		assertTrue(suggestIndex.find("mulholland", 10).isEmpty());
+	}
+
+	@Test
+	public void the_keys_shouldGrow_with_the_length_of_the_label_not_with_its_square() {
+		StringBuilder street = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			street.append("word").append(i).append(' ');
+		}
+		Property property = property("1", 1L, street.toString());
+		suggestIndex.put(property);
+
+		String label = street.toString().trim() + ", Beverly Hills, California";
+		int words = 500 + 3;
+		// every word once, with the separator and the id of the suggestion.
+		assertTrue(suggestIndex.keyChars() <= label.length() + words * ("ADDRESS:1".length() + 1));
+
+		suggestIndex.remove(SuggestionType.ADDRESS, "1");
+		assertEquals(0, suggestIndex.keyChars());
+	}
+
+	private static Property property(final String primaryKey, final Long version, final String street) {
+		Property property = new Property();
+		property.setPrimaryKey(primaryKey);
+		property.setVersion(version);
+		property.setAddress(new Address("California", "Beverly Hills", street));
+		return property;
+	}
+
+	private static List<String> ids(final List<Suggestion> suggestions) {
+		return suggestions.stream().map(Suggestion::getId).collect(Collectors.toList());
+	}
+
+}
@@ -21,9 +21,12 @@ public class AgentServiceImpl implements AgentService {
 
 	private final RestTemplate restTemplate;
 
+	private final ConditionalRestClient conditionalRestClient;
+
 	@Autowired
-	public AgentServiceImpl(final RestTemplate restTemplate) {
+	public AgentServiceImpl(final RestTemplate restTemplate, final ConditionalRestClient conditionalRestClient) {
 		this.restTemplate = restTemplate;
+		this.conditionalRestClient = conditionalRestClient;
 	}
 
 	@Override
@@ -46,11 +49,11 @@ public class AgentServiceImpl implements AgentService {
 
 		String endpoint = "http://localhost:8081/api/v1/agent/" + id;
 
-		ResponseEntity<Resource<Agent>> resourceResponse = this.restTemplate.exchange(endpoint, HttpMethod.GET, null,
-				new ParameterizedTypeReference<Resource<Agent>>() {
-				});
+		// the agent is downloaded only if it changed since the last time.
+		Resource<Agent> resource = this.conditionalRestClient.get(endpoint, new ParameterizedTypeReference<Resource<Agent>>() {
+		});
 
-		Agent agent = resourceResponse.getBody().getContent();
+		Agent agent = resource.getContent();
 
 		return agent;
 	}
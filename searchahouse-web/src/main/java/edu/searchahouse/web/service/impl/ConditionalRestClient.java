@@ -0,0 +1,103 @@
+package edu.searchahouse.web.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+//@formatter:off
+/**
+ * 
+ * GET of the entities of the search engine with a local cache: the entities come with an ETag (primary key and version), the next time the same entity is
+ * requested with "If-None-Match" and a 304 means the cached one is still the current one, it is neither downloaded nor parsed again.
+ * 
+ * --- at most "searchahouse.web.entity-cache.max-size" entities, the least recently used one is evicted.
+ */
+//@formatter:on
+@Component
+public class ConditionalRestClient {
+
+	private final RestTemplate restTemplate;
+
+	private final Map<String, CachedEntity> entries;
+
+	@Autowired
+	public ConditionalRestClient(//
+			final RestTemplate restTemplate, //
+			@Value("${searchahouse.web.entity-cache.max-size:1000}") final int maxSize //
+	) {
+		this.restTemplate = restTemplate;
+
+		// access order, so the eldest entry is the least recently used one.
+		this.entries = new LinkedHashMap<String, CachedEntity>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CachedEntity> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @param url
+	 *            the url of the entity.
+	 * @param type
+	 *            the type of the response.
+	 * @return the response, the cached one if the entity did not change.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(final String url, final ParameterizedTypeReference<T> type) {
+
+		CachedEntity cached;
+		synchronized (this.entries) {
+			cached = this.entries.get(url);
+		}
+
+		HttpHeaders headers = new HttpHeaders();
+		if (cached != null) {
+			headers.setIfNoneMatch(cached.eTag);
+		}
+
+		ResponseEntity<T> response = this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<Void>(headers), type);
+
+		if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+			return (T) cached.body;
+		}
+
+		String eTag = response.getHeaders().getETag();
+		synchronized (this.entries) {
+			if (eTag == null) {
+				this.entries.remove(url);
+			} else {
+				this.entries.put(url, new CachedEntity(eTag, response.getBody()));
+			}
+		}
+
+		return response.getBody();
+	}
+
+	private static class CachedEntity {
+
+		private final String eTag;
+		private final Object body;
+
+		CachedEntity(final String eTag, final Object body) {
+			this.eTag = eTag;
+			this.body = body;
+		}
+
+	}
+
+}
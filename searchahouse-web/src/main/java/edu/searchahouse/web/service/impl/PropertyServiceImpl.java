@@ -3,10 +3,7 @@ package edu.searchahouse.web.service.impl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.hateoas.Resource;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import edu.searchahouse.web.model.Property;
 import edu.searchahouse.web.service.PropertyService;
@@ -14,11 +11,11 @@ import edu.searchahouse.web.service.PropertyService;
 @Service
 public class PropertyServiceImpl implements PropertyService {
 
-    private final RestTemplate restTemplate;
+    private final ConditionalRestClient conditionalRestClient;
 
     @Autowired
-    public PropertyServiceImpl(final RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public PropertyServiceImpl(final ConditionalRestClient conditionalRestClient) {
+        this.conditionalRestClient = conditionalRestClient;
     }
 
     @Override
@@ -26,11 +23,11 @@ public class PropertyServiceImpl implements PropertyService {
 
         String endpoint = "http://localhost:8080/api/v1/property/" + id;
 
-        ResponseEntity<Resource<Property>> resourceResponse = this.restTemplate.exchange(endpoint, HttpMethod.GET, null,
-                new ParameterizedTypeReference<Resource<Property>>() {
-                });
+        // the property is downloaded only if it changed since the last time.
+        Resource<Property> resource = this.conditionalRestClient.get(endpoint, new ParameterizedTypeReference<Resource<Property>>() {
+        });
 
-        Property property = resourceResponse.getBody().getContent();
+        Property property = resource.getContent();
 
         return property;
     }
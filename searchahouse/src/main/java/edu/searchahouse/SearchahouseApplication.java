@@ -1,6 +1,7 @@
 package edu.searchahouse;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.IntStream;
@@ -11,7 +12,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import edu.searchahouse.model.Address;
 import edu.searchahouse.model.Agent;
@@ -26,7 +27,6 @@ import edu.searchahouse.repository.mongo.PropertyRepository;
 
 @SpringBootApplication
 @EnableAspectJAutoProxy
-@EnableAsync
 public class SearchahouseApplication {
 
 	final static Map<Integer, String[]> ADDRESSES = new HashMap<Integer, String[]>();
@@ -48,6 +48,14 @@ public class SearchahouseApplication {
 		SpringApplication.run(SearchahouseApplication.class, args);
 	}
 
+	/**
+	 * The bean validation of the entities written without an endpoint's @Valid, e.g. the bulk writes.
+	 */
+	@Bean
+	public LocalValidatorFactoryBean validator() {
+		return new LocalValidatorFactoryBean();
+	}
+
 	@Profile("development")
 	@Bean
 	CommandLineRunner init(//
@@ -68,43 +76,48 @@ public class SearchahouseApplication {
 							propertyRepository.save(property);
 
 							Lead lead = createLead(index, Status.UNCONTACTED);
-							leadRepository.save(lead);
-							
 							Lead lead2 = createLead("_"+index, Status.UNCONTACTED);
-							leadRepository.save(lead2);
 
 							Agent agent = createAgent(index);
-							agent.addLead(lead);
-							agent.addProperty(property);
+							agentRepository.save(agent);
+
+							// the leads and properties reference their agent.
+							addLead(agent, lead, leadRepository);
+							addProperty(agent, property, propertyRepository);
 							
 							if( index.equals("1") ){
-							    agent.addLead(lead2);
+							    addLead(agent, lead2, leadRepository);
+							} else {
+							    leadRepository.save(lead2);
 							}
 							
 							if( index.equals("2") ){
-								Lead l1 = createLead("a", Status.CONTACTED);
-								Lead l2 = createLead("b", Status.CONTACTED);
-								Lead l3 = createLead("c", Status.CONTACTED);
-								Lead l4 = createLead("d", Status.CONTACTED);
-								leadRepository.save(l1);
-								leadRepository.save(l2);
-								leadRepository.save(l3);
-								leadRepository.save(l4);
-							    agent.addLead( l1 );
-							    agent.addLead( l2 );
-							    agent.addLead( l3 );
-							    agent.addLead( l4 );
+							    addLead(agent, createLead("a", Status.CONTACTED), leadRepository);
+							    addLead(agent, createLead("b", Status.CONTACTED), leadRepository);
+							    addLead(agent, createLead("c", Status.CONTACTED), leadRepository);
+							    addLead(agent, createLead("d", Status.CONTACTED), leadRepository);
 							    
 							    Property p = propertyRepository.findPropertyByName("Property1").get();
-							    agent.addProperty(p);
+							    addProperty(agent, p, propertyRepository);
 							}
 							
-							agentRepository.save(agent);
-							
 						});
 		//@formatter:on
 	}
 
+	private void addLead(final Agent agent, final Lead lead, final LeadRepository leadRepository) {
+		lead.setAgentId(agent.getPrimaryKey());
+		leadRepository.save(lead);
+	}
+
+	private void addProperty(final Agent agent, final Property property, final PropertyRepository propertyRepository) {
+		if (property.getAgentIds() == null) {
+			property.setAgentIds(new HashSet<String>());
+		}
+		property.getAgentIds().add(agent.getPrimaryKey());
+		propertyRepository.save(property);
+	}
+
 	private Property createProperty(final String index) {
 		Property property = new Property("Property" + index, "description" + index, new Address(VALUES.get(Integer.valueOf(1))[0][0], VALUES.get(Integer
 				.valueOf(1))[0][1], VALUES.get(Integer.valueOf(1))[0][2]), 100000L, PropertyType.SALE, PropertyStatus.AVAILABLE);
@@ -0,0 +1,127 @@
+package edu.searchahouse.aop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
+import edu.searchahouse.configuration.RabbitMqProducerConfiguration;
+import edu.searchahouse.model.Agent;
+import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.model.Lead;
+import edu.searchahouse.model.Property;
+import edu.searchahouse.outbox.Outbox;
+import edu.searchahouse.outbox.OutboxEvent;
+
+/**
+ * 
+ * Change capture: every write to an entity (and only writes) ends up here, and is written to the outbox for the search engine.
+ * 
+ * Repository saves and deletes are captured by {@link RabbitMqAspect}. Writes done with MongoOperations (partial updates) don't go through a repository, so
+ * the services call this class themselves, with just the fields they changed.
+ */
+@Component
+public class EntityChangePublisher {
+
+    private final Outbox outbox;
+
+    @Autowired
+    public EntityChangePublisher(final Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * 
+     * The whole entity was written.
+     * 
+     * @param entity
+     *            the entity as it is stored in mongo after the write (with its new version).
+     * @param operation
+     *            CREATE, or UPDATE if the entity already existed.
+     */
+    public void saved(final BaseEntity entity, final CrudOperation operation) {
+        append(new EntityWrapperAmqp<BaseEntity>(entity, operation), entity);
+    }
+
+    /**
+     * 
+     * Some fields of the entity were written.
+     * 
+     * @param entity
+     *            the entity after the write, only its type, primary key and version are published.
+     * @param changes
+     *            the changed fields and their new value (see {@link EntityWrapperAmqp} for the keys).
+     */
+    public void updated(final BaseEntity entity, final Map<String, Object> changes) {
+        append(new EntityWrapperAmqp<BaseEntity>(entity.getPrimaryKey(), entity.getVersion(), CrudOperation.UPDATE, changes), entity);
+    }
+
+    public void deleted(final BaseEntity entity) {
+        append(new EntityWrapperAmqp<BaseEntity>(entity.getPrimaryKey(), entity.getVersion(), CrudOperation.DELETE, null), entity);
+    }
+
+    private void append(final EntityWrapperAmqp<BaseEntity> wrapper, final BaseEntity entity) {
+        // synchronous on purpose: when the request returns the change is already safe in the outbox.
+        this.outbox.append(wrapper, entity.getClass().getSimpleName(), routingKey(entity));
+    }
+
+    /**
+     * @return a batch of changes, written to the outbox at once when it is published.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * 
+     * The changes of many entities (a chunk of a bulk request), written to the outbox with one insert instead of one per change. The relay publishes them
+     * as usual, one message per entity.
+     * 
+     */
+    public class Batch {
+
+        private final List<OutboxEvent> events = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        public void saved(final BaseEntity entity, final CrudOperation operation) {
+            add(new EntityWrapperAmqp<BaseEntity>(entity, operation), entity);
+        }
+
+        public void updated(final BaseEntity entity, final Map<String, Object> changes) {
+            add(new EntityWrapperAmqp<BaseEntity>(entity.getPrimaryKey(), entity.getVersion(), CrudOperation.UPDATE, changes), entity);
+        }
+
+        public void deleted(final BaseEntity entity) {
+            add(new EntityWrapperAmqp<BaseEntity>(entity.getPrimaryKey(), entity.getVersion(), CrudOperation.DELETE, null), entity);
+        }
+
+        public void publish() {
+            outbox.appendAll(this.events);
+            this.events.clear();
+        }
+
+        private void add(final EntityWrapperAmqp<BaseEntity> wrapper, final BaseEntity entity) {
+            // serialized now, the entity may change before the batch is published. The id and creation time are the ones of the insert (see
+            // Outbox.appendAll).
+            this.events.add(outbox.event(wrapper, entity.getClass().getSimpleName(), routingKey(entity)));
+        }
+
+    }
+
+    private String routingKey(final BaseEntity entity) {
+        if (entity instanceof Property) {
+            return RabbitMqProducerConfiguration.amqpQueueProperty;
+        } else if (entity instanceof Agent) {
+            return RabbitMqProducerConfiguration.amqpQueueAgent;
+        } else if (entity instanceof Lead) {
+            return RabbitMqProducerConfiguration.amqpQueueLead;
+        }
+        throw new IllegalArgumentException("No queue for " + entity.getClass().getSimpleName());
+    }
+
+}
@@ -1,19 +1,78 @@
 package edu.searchahouse.aop;
 
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
 import edu.searchahouse.model.BaseEntity;
 
+//@formatter:off
+/**
+ * 
+ * A change event sent to the search engine. There are two kinds of events:
+ * 
+ * --- full events carry the whole entity: CREATE, and UPDATE when we don't know which fields changed (a repository save).
+ * --- delta events carry only the primary key, the version and the changed fields: UPDATE done with a partial update and DELETE (no fields).
+ * 
+ * The keys of "changes" are field names, or "field.elementPrimaryKey.subField" to change the sub field of the element with that primary key in the
+ * collection "field" (e.g. "leads.1234.contactStatus").
+ * 
+ * @author Gustavo Orsi
+ *
+ */
+//@formatter:on
 @JsonAutoDetect( fieldVisibility = Visibility.ANY )
+@JsonInclude(Include.NON_NULL)
 public class EntityWrapperAmqp<E extends BaseEntity> {
 
     private E entity;
+    private String primaryKey;
     private CrudOperation crudOperation;
+    // version of the entity after the write, so the consumers can tell an old message from a newer one.
+    private Long version;
+    private Map<String, Object> changes;
 
+    /**
+     * A full event.
+     */
     public EntityWrapperAmqp(E entity, CrudOperation crudOperation) {
         this.entity = entity;
+        this.primaryKey = entity.getPrimaryKey();
+        this.crudOperation = crudOperation;
+        this.version = entity.getVersion();
+    }
+
+    /**
+     * A delta event.
+     */
+    public EntityWrapperAmqp(String primaryKey, Long version, CrudOperation crudOperation, Map<String, Object> changes) {
+        this.primaryKey = primaryKey;
         this.crudOperation = crudOperation;
+        this.version = version;
+        this.changes = changes;
+    }
+
+    public E getEntity() {
+        return entity;
+    }
+
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public CrudOperation getCrudOperation() {
+        return crudOperation;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Map<String, Object> getChanges() {
+        return changes;
     }
 
     public enum CrudOperation {
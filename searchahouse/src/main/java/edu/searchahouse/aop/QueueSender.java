@@ -1,30 +1,94 @@
 package edu.searchahouse.aop;
 
-import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.rabbitmq.client.AMQP;
+
 import edu.searchahouse.configuration.RabbitMqProducerConfiguration;
-import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.outbox.OutboxEvent;
 
+/**
+ * 
+ * Publishes outbox events to the entities exchange, as json ("application/json") or as smile, the binary json format ("application/x-jackson-smile"),
+ * depending on "searchahouse.outbox.relay.content-type". The search engine reads both, by content type.
+ * 
+ * @author Gustavo Orsi
+ *
+ */
 @Service
 public class QueueSender {
 
-    private final RabbitMessagingTemplate rabbitMessagingTemplate;
-    private final MappingJackson2MessageConverter mappingJackson2MessageConverter;
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final long confirmTimeout;
+    private final String contentType;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
 
     @Autowired
-    public QueueSender(RabbitMessagingTemplate rabbitMessagingTemplate, MappingJackson2MessageConverter mappingJackson2MessageConverter) {
-        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
-        this.mappingJackson2MessageConverter = mappingJackson2MessageConverter;
+    public QueueSender(//
+            final RabbitTemplate rabbitTemplate, //
+            @Value("${searchahouse.outbox.relay.confirm-timeout:10000}") final long confirmTimeout, //
+            @Value("${searchahouse.outbox.relay.content-type:" + JSON + "}") final String contentType //
+    ) {
+        if (!JSON.equals(contentType) && !SMILE.equals(contentType)) {
+            throw new IllegalArgumentException("Unsupported content type " + contentType + ", use " + JSON + " or " + SMILE);
+        }
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmTimeout = confirmTimeout;
+        this.contentType = contentType;
+    }
+
+    /**
+     * 
+     * Publish the events and wait until the broker confirms all of them.
+     * 
+     * @param events
+     *            the events to publish, in order.
+     * @throws org.springframework.amqp.AmqpException
+     *             if the broker did not confirm every message (nack or timeout). Some of them may have been delivered anyway.
+     */
+    public void publish(final List<OutboxEvent> events) {
+        this.rabbitTemplate.execute(channel -> {
+            // a no-op if the (cached) channel is already in confirm mode.
+            channel.confirmSelect();
+
+            for (OutboxEvent event : events) {
+                AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder() //
+                        .contentType(this.contentType) //
+                        .contentEncoding(JSON.equals(this.contentType) ? StandardCharsets.UTF_8.name() : null) //
+                        .deliveryMode(2) // persistent
+                        .messageId(event.getId().toHexString()) //
+                        .build();
+
+                channel.basicPublish(RabbitMqProducerConfiguration.amqpTopicExchange, event.getRoutingKey(), properties, encode(event.getPayload()));
+            }
+
+            channel.waitForConfirmsOrDie(this.confirmTimeout);
+            return null;
+        });
     }
 
-    @Async
-    public void convertAndSend(final EntityWrapperAmqp<? extends BaseEntity> entity, final String routingKey) {
-        this.rabbitMessagingTemplate.setMessageConverter(this.mappingJackson2MessageConverter);
-        this.rabbitMessagingTemplate.convertAndSend(RabbitMqProducerConfiguration.amqpTopicExchange, routingKey, entity);
+    /**
+     * The outbox keeps the payloads as json, so they are readable in mongo.
+     */
+    private byte[] encode(final String payload) throws IOException {
+        if (SMILE.equals(this.contentType)) {
+            return this.smileMapper.writeValueAsBytes(this.jsonMapper.readTree(payload));
+        }
+        return payload.getBytes(StandardCharsets.UTF_8);
     }
 
 }
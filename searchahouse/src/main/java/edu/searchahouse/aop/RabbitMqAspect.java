@@ -1,93 +1,62 @@
 package edu.searchahouse.aop;
 
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
-import edu.searchahouse.configuration.RabbitMqProducerConfiguration;
-import edu.searchahouse.model.Agent;
 import edu.searchahouse.model.BaseEntity;
-import edu.searchahouse.model.Lead;
-import edu.searchahouse.model.Property;
 
 @Component
 @Aspect
 public class RabbitMqAspect {
 
-    private final QueueSender queueSender;
+    private final EntityChangePublisher entityChangePublisher;
 
     @Autowired
     public RabbitMqAspect(//
-            final QueueSender queueSender //
+            final EntityChangePublisher entityChangePublisher //
     ) {
-        this.queueSender = queueSender;
+        this.entityChangePublisher = entityChangePublisher;
     }
 
     /**
      * 
-     * Whenever an entity is updated, we want to trigger an update in elasticsearch. So we send a message to rabbitMq, later the search engine service will get
-     * this message to do what it wants.
+     * Whenever an entity is saved, we want to trigger an update in elasticsearch. So we write a message to the outbox, the outbox relay sends it to rabbitMq
+     * and later the search engine service will get this message to do what it wants.
      * 
-     * @param entity
-     *            the saved or updated entity.
-     */
-    @AfterReturning(value = "execution(* edu.searchahouse.repository.mongo.*.*(..))", returning = "entity")
-    public void updateElasticsearch(final Property entity) {
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.CREATE), RabbitMqProducerConfiguration.amqpQueueProperty);
-    }
-
-    /**
-     * 
-     * Whenever an entity is updated, we want to trigger an update in elasticsearch. So we send a message to rabbitMq, later the search engine service will get
-     * this message to do what it wants.
+     * Only the repository save is intercepted: reads never publish anything.
      * 
      * @param entity
-     *            the saved or updated entity.
+     *            the entity to save.
      */
-    @AfterReturning(value = "execution(* edu.searchahouse.repository.mongo.*.*(..))", returning = "entity")
-    public void updateElasticsearch(final Agent entity) {
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.CREATE), RabbitMqProducerConfiguration.amqpQueueAgent);
+    @Around(value = "execution(* org.springframework.data.repository.CrudRepository+.save(..)) && args(entity)")
+    public Object saveElasticsearch(final ProceedingJoinPoint joinPoint, final BaseEntity entity) throws Throwable {
+
+        // spring data sets the version when the entity is inserted, so no version means this save is an insert.
+        CrudOperation operation = entity.getVersion() == null ? CrudOperation.CREATE : CrudOperation.UPDATE;
+
+        BaseEntity saved = (BaseEntity) joinPoint.proceed();
+
+        // a save writes the whole entity, we don't know what changed.
+        this.entityChangePublisher.saved(saved, operation);
+
+        return saved;
     }
 
     /**
      * 
-     * Whenever an entity is updated, we want to trigger an update in elasticsearch. So we send a message to rabbitMq, later the search engine service will get
-     * this message to do what it wants.
+     * Whenever an entity is deleted, we want to delete it from elasticsearch too.
      * 
      * @param entity
-     *            the saved or updated entity.
+     *            the deleted entity.
      */
-    @AfterReturning(value = "execution(* edu.searchahouse.repository.mongo.*.*(..))", returning = "entity")
-    public void updateElasticsearch(final Lead entity) {
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.CREATE), RabbitMqProducerConfiguration.amqpQueueLead);
+    @AfterReturning(value = "execution(* org.springframework.data.repository.CrudRepository+.delete(..)) && args(entity)")
+    public void deleteElasticsearch(final BaseEntity entity) {
+        this.entityChangePublisher.deleted(entity);
     }
 
-    @After(value = "execution(* org.springframework.data.repository.*.delete(..)) && args(property) )")
-    public void delePropertyElasticsearch(final JoinPoint joinPoint, Property property) {
-
-        BaseEntity entity = (BaseEntity) joinPoint.getArgs()[0];
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.DELETE), RabbitMqProducerConfiguration.amqpQueueProperty);
-    }
-
-    @After(value = "execution(* org.springframework.data.repository.*.delete(..)) && args(agent) )")
-    public void deleAgentElasticsearch(final JoinPoint joinPoint, Agent agent) {
-
-        BaseEntity entity = (BaseEntity) joinPoint.getArgs()[0];
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.DELETE), RabbitMqProducerConfiguration.amqpQueueAgent);
-    }
-
-    @After(value = "execution(* org.springframework.data.repository.*.delete(..)) && args(lead) )")
-    public void deleLeadElasticsearch(final JoinPoint joinPoint, Lead lead) {
-
-        BaseEntity entity = (BaseEntity) joinPoint.getArgs()[0];
-        convertAndSend(new EntityWrapperAmqp<BaseEntity>(entity, CrudOperation.DELETE), RabbitMqProducerConfiguration.amqpQueueLead);
-    }
-
-    private void convertAndSend(final EntityWrapperAmqp<? extends BaseEntity> entity, final String routingKey) {
-        this.queueSender.convertAndSend(entity, routingKey);
-    }
 }
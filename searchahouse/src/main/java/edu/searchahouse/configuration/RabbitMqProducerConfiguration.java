@@ -1,12 +1,14 @@
 package edu.searchahouse.configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 
 @Configuration
 public class RabbitMqProducerConfiguration {
@@ -15,20 +17,27 @@ public class RabbitMqProducerConfiguration {
     public final static String amqpQueueAgent = "SEARCHAHOUSE-QUEUE-AGENT";
     public final static String amqpQueueLead = "SEARCHAHOUSE-QUEUE-LEAD";
     public final static String amqpTopicExchange = "crudmicroservice.entities.updated";
+    // the messages the search engine gives up on (see the quarantine queue of the search engine).
+    public final static String amqpDeadLetterExchange = "searchahouse.dlx";
 
     @Bean
     Queue queueProperty() {
-        return new Queue(amqpQueueProperty, false);
+        return entityQueue(amqpQueueProperty);
     }
 
     @Bean
     Queue queueAgent() {
-        return new Queue(amqpQueueAgent, false);
+        return entityQueue(amqpQueueAgent);
     }
 
     @Bean
     Queue queueLead() {
-        return new Queue(amqpQueueLead, false);
+        return entityQueue(amqpQueueLead);
+    }
+
+    @Bean
+    TopicExchange deadLetterExchange() {
+        return new TopicExchange(amqpDeadLetterExchange);
     }
 
     @Bean
@@ -51,10 +60,13 @@ public class RabbitMqProducerConfiguration {
         return BindingBuilder.bind(queueAgent).to(exchange).with(amqpQueueAgent);
     }
 
-    @Bean
-    public MappingJackson2MessageConverter jackson2Converter() {
-        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-        return converter;
+    /**
+     * The search engine declares the same queues, the arguments must be the same or rabbitMq refuses the second declaration.
+     */
+    private Queue entityQueue(final String name) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", amqpDeadLetterExchange);
+        return new Queue(name, false, false, false, arguments);
     }
 
 }
@@ -3,6 +3,8 @@ package edu.searchahouse.endpoints;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
+import java.util.List;
+
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,12 +24,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.searchahouse.endpoints.resources.assemblers.AgentResourceAssembler;
+import edu.searchahouse.endpoints.resources.assemblers.LeadResourceAssembler;
+import edu.searchahouse.endpoints.resources.assemblers.PropertyResourceAssembler;
 import edu.searchahouse.model.Agent;
 import edu.searchahouse.model.Lead;
 import edu.searchahouse.model.Property;
 import edu.searchahouse.service.AgentService;
+import edu.searchahouse.service.LeadsContactStatusResult;
 
 @RestController
 @RequestMapping("/api/v1/agent")
@@ -40,16 +46,24 @@ public class AgentRestEndpoint {
 
 	private final AgentResourceAssembler agentResourceAssembler;
 
+	private final LeadResourceAssembler leadResourceAssembler;
+
+	private final PropertyResourceAssembler propertyResourceAssembler;
+
 	// *************************************************************//
 	// *********************** CONSTRUCTORS ************************//
 	// *************************************************************//
 	@Autowired
 	public AgentRestEndpoint(//
 			AgentService agentService,//
-			AgentResourceAssembler agentResourceAssembler//
+			AgentResourceAssembler agentResourceAssembler,//
+			LeadResourceAssembler leadResourceAssembler,//
+			PropertyResourceAssembler propertyResourceAssembler//
 	) {
 		this.agentService = agentService;
 		this.agentResourceAssembler = agentResourceAssembler;
+		this.leadResourceAssembler = leadResourceAssembler;
+		this.propertyResourceAssembler = propertyResourceAssembler;
 	}
 
 	// *************************************************************//
@@ -105,11 +119,63 @@ public class AgentRestEndpoint {
 			PagedResourcesAssembler<Agent> assembler //
 	) {
 
-		Page<Agent> agents = this.agentService.findAgentsByPropertyId(propertyId, pageable, false);
+		Page<Agent> agents = this.agentService.findAgentsByPropertyId(propertyId, pageable);
 
 		return new ResponseEntity<>(assembler.toResource(agents, this.agentResourceAssembler), HttpStatus.OK);
 	}
 
+	/**
+	 *
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * GET - find the leads of an Agent (paged result).
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * Find the leads of an agent (return a paged result). Throw 404 if the agent is not found.
+	 * 
+	 * @param agentId
+	 * @return A list of leads in json or xml format (default to json).
+	 * 
+	 */
+	@RequestMapping(value = "/{agentId}/leads", method = RequestMethod.GET)
+	public HttpEntity<PagedResources<ResourceSupport>> getLeadsByAgent(//
+			@PathVariable("agentId") final String agentId, //
+			@PageableDefault(size = 10, page = 0) Pageable pageable, //
+			PagedResourcesAssembler<Lead> assembler //
+	) {
+
+		Page<Lead> leads = this.agentService.findLeadsByAgentId(agentId, pageable);
+
+		return new ResponseEntity<>(assembler.toResource(leads, this.leadResourceAssembler), HttpStatus.OK);
+	}
+
+	/**
+	 *
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * GET - find the properties of an Agent (paged result).
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * Find the properties of an agent (return a paged result). Throw 404 if the agent is not found.
+	 * 
+	 * @param agentId
+	 * @return A list of properties in json or xml format (default to json).
+	 * 
+	 */
+	@RequestMapping(value = "/{agentId}/properties", method = RequestMethod.GET)
+	public HttpEntity<PagedResources<ResourceSupport>> getPropertiesByAgent(//
+			@PathVariable("agentId") final String agentId, //
+			@PageableDefault(size = 10, page = 0) Pageable pageable, //
+			PagedResourcesAssembler<Property> assembler //
+	) {
+
+		Page<Property> properties = this.agentService.findPropertiesByAgentId(agentId, pageable);
+
+		return new ResponseEntity<>(assembler.toResource(properties, this.propertyResourceAssembler), HttpStatus.OK);
+	}
+
 	/**
 	 *
 	 * ----------------------------------------------------------------------------------------------------------------
@@ -118,7 +184,9 @@ public class AgentRestEndpoint {
 	 * 
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
-	 * Get an agent by it's primary key. Throw 404 if not found.
+	 * Get an agent by it's primary key. Throw 404 if not found. The ETag is the primary key and version of the agent: if it is the one of the
+	 * "If-None-Match" header the response is a 304 without body. The leads and properties of the agent are not part of it, see the "leads" and
+	 * "properties" links.
 	 * 
 	 * @param agentId
 	 * @return An agent in json or xml format (default to json).
@@ -127,9 +195,14 @@ public class AgentRestEndpoint {
 	@RequestMapping(value = "/{agentId}", method = RequestMethod.GET)
 	public HttpEntity<ResourceSupport> getAgent(//
 			@PathVariable String agentId, //
-			@RequestParam(value = "lazy", defaultValue = "true", required = false) final Boolean lazyNested //
+			WebRequest request //
 	) {
-		Agent aAgent = this.agentService.findAgentByPrimaryKey(agentId, lazyNested);
+		Agent aAgent = this.agentService.findAgentByPrimaryKey(agentId);
+
+		if (request.checkNotModified(EntityTags.of(aAgent))) {
+			// 304, the client has it. Nothing to assemble nor serialize.
+			return null;
+		}
 
 		return new ResponseEntity<ResourceSupport>(this.agentResourceAssembler.toResource(aAgent), HttpStatus.OK);
 	}
@@ -152,7 +225,7 @@ public class AgentRestEndpoint {
 		Agent agent = this.agentService.save(input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agent.getPrimaryKey()).getAgent(agent.getPrimaryKey(), false)).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agent.getPrimaryKey()).getAgent(agent.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>(httpHeaders, HttpStatus.CREATED);
 	}
@@ -178,7 +251,7 @@ public class AgentRestEndpoint {
 		Property property = this.agentService.addProperty(agentId, propertyId);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey())).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>("The resource was updated ok.", httpHeaders, HttpStatus.NO_CONTENT);
 	}
@@ -192,8 +265,11 @@ public class AgentRestEndpoint {
 	 * 
 	 * Updates an existing agent. Throw 404 if resource does not exist or 403 in case the resource exist but could not be updated.
 	 * 
+	 * Only the fields that changed are written. If the agent has a "version" it must be the current one, otherwise it was changed since it was read:
+	 * 409 conflict.
+	 * 
 	 * @param agentId
-	 * @return 204 if updated ok, 404 if resource does not exist or 403 in case the resource exist but could not be updated.
+	 * @return 204 if updated ok, 404 if resource does not exist or 403 in case the resource exist but could not be updated, 409 if it was changed since it was read.
 	 */
 	@RequestMapping(value = "/{agentId}", method = RequestMethod.PUT)
 	public HttpEntity<?> updateAgent( //
@@ -204,7 +280,7 @@ public class AgentRestEndpoint {
 		Agent agent = this.agentService.update(agentId, input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agent.getPrimaryKey()).getAgent(agent.getPrimaryKey(), false)).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agent.getPrimaryKey()).getAgent(agent.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>("The resource was updated ok.", httpHeaders, HttpStatus.NO_CONTENT);
 	}
@@ -232,11 +308,39 @@ public class AgentRestEndpoint {
 		this.agentService.updateLeadContactStatus(agentId, leadId, input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agentId).getAgent(agentId, false)).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agentId).getAgent(agentId, null)).toUri());
 
 		return new ResponseEntity<>("The resource was updated ok.", httpHeaders, HttpStatus.NO_CONTENT);
 	}
 
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * PUT - Update contact status of many leads of an agent.
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * Updates the contact status of the leads (a json array with their ids) of an agent in one request, e.g. an agent triaging the inbox. Throw 400 if
+	 * there are more than 1000 leads.
+	 * 
+	 * @param agentId
+	 * @param contactStatus
+	 *            the new contact status of the leads.
+	 * @return 200 and the number of leads whose status changed, and the ids of the ones that were not updated (they are not leads of the agent). Throw
+	 *         404 if the agent does not exist.
+	 */
+	@RequestMapping(value = "/{agentId}/leads", method = RequestMethod.PUT)
+	public HttpEntity<LeadsContactStatusResult> updateLeadsContactStatus( //
+			@PathVariable String agentId, //
+			@RequestParam("contactStatus") final Lead.Status contactStatus, //
+			@RequestBody List<String> leadIds //
+	) {
+
+		LeadsContactStatusResult result = this.agentService.updateLeadsContactStatus(agentId, leadIds, contactStatus);
+
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+
 	/**
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
@@ -244,10 +348,11 @@ public class AgentRestEndpoint {
 	 * 
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
-	 * Create and add a lead to the agent. Throw 422 if resource already exist.
+	 * Create a lead of the agent. Throw 404 if the agent does not exist, 409 if the lead (same primary key) is a lead of another agent and 400 if its
+	 * email is the one of another lead. Sending the same lead (same primary key) again is a no-op, the intake can retry it safely.
 	 * 
 	 * @param agentId
-	 * @return 201 Created and the agent location. 422 if the agent already exist.
+	 * @return 201 Created and the lead location.
 	 */
 	@RequestMapping(value = "/{agentId}/lead", method = RequestMethod.POST)
 	public HttpEntity<?> addLeadToAgent(//
@@ -255,10 +360,10 @@ public class AgentRestEndpoint {
 			@Valid @RequestBody Lead input //
 	) {
 
-		Agent agent = this.agentService.addLead(agentId, input);
+		Lead lead = this.agentService.addLead(agentId, input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(AgentRestEndpoint.class, agent.getPrimaryKey()).getAgent(agent.getPrimaryKey(), false)).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(LeadRestEndpoint.class, lead.getPrimaryKey()).getLead(lead.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>(httpHeaders, HttpStatus.CREATED);
 	}
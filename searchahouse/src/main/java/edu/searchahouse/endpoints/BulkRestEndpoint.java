@@ -0,0 +1,253 @@
+package edu.searchahouse.endpoints;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.service.BulkResult;
+import edu.searchahouse.service.BulkService;
+
+//@formatter:off
+/**
+ *
+ * Create, update or delete many properties, agents or leads with one request. The body is a json array of entities ("application/json") or one entity
+ * per line ("application/x-ndjson"), so a big import can be streamed: the entities are written a chunk at a time as they are read (see BulkService).
+ *
+ * The response has the same format as the request, one result per entity in the order of the request, written as soon as its chunk is written:
+ *
+ * --- index: the position of the entity in the request.
+ * --- primaryKey: the primary key of the entity (the new one for a created entity without primary key).
+ * --- status: what the request for just this entity returns, 201 created, 204 updated or deleted, 400, 404 or 409.
+ * --- version: the version of the entity after the write, message: why it failed.
+ *
+ * The response is 200 even if some entities failed. If an entity can not be read (invalid json), the entities before it are written and its result is
+ * the last one (400), the rest of the request is not read.
+ */
+//@formatter:on
+@RestController
+@RequestMapping("/api/v1/bulk")
+public class BulkRestEndpoint {
+
+	// *************************************************************//
+	// ************************* FIELDS ****************************//
+	// *************************************************************//
+	private final BulkService bulkService;
+
+	// the mapper of the other endpoints. Like their request bodies, the fields we don't know (e.g. "_links") are ignored; jackson must not close the
+	// response, the results are streamed.
+	private final ObjectMapper objectMapper;
+
+	// *************************************************************//
+	// *********************** CONSTRUCTORS ************************//
+	// *************************************************************//
+	@Autowired
+	public BulkRestEndpoint(BulkService bulkService, ObjectMapper objectMapper) {
+		this.bulkService = bulkService;
+		this.objectMapper = objectMapper.copy() //
+				.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false) //
+				.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+	}
+
+	// *************************************************************//
+	// ********************* REST ENDPOINTS ************************//
+	// *************************************************************//
+
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * POST - Create many entities
+	 *
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * @param entity
+	 *            property, agent or lead.
+	 */
+	@RequestMapping(value = "/{entity}", method = RequestMethod.POST, consumes = { MediaType.APPLICATION_JSON_VALUE, ExportRestEndpoint.NDJSON })
+	public void create( //
+			@PathVariable String entity, //
+			HttpServletRequest request, //
+			HttpServletResponse response //
+	) throws IOException {
+		bulk(ExportRestEndpoint.entityType(entity), this.bulkService::create, request, response);
+	}
+
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * PUT - Update many entities
+	 *
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * Every entity must have its primary key. Like the update of one entity, only the fields that changed are written and an entity with a "version" is
+	 * only updated if it is still that version.
+	 *
+	 * @param entity
+	 *            property, agent or lead.
+	 */
+	@RequestMapping(value = "/{entity}", method = RequestMethod.PUT, consumes = { MediaType.APPLICATION_JSON_VALUE, ExportRestEndpoint.NDJSON })
+	public void update( //
+			@PathVariable String entity, //
+			HttpServletRequest request, //
+			HttpServletResponse response //
+	) throws IOException {
+		bulk(ExportRestEndpoint.entityType(entity), this.bulkService::update, request, response);
+	}
+
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * DELETE - Delete many entities
+	 *
+	 * ----------------------------------------------------------------------------------------------------------------
+	 *
+	 * The entities only need their primary key, e.g. {"primaryKey":"1234"}. An entity with a "version" is only deleted if it is still that version.
+	 *
+	 * @param entity
+	 *            property, agent or lead.
+	 */
+	@RequestMapping(value = "/{entity}", method = RequestMethod.DELETE, consumes = { MediaType.APPLICATION_JSON_VALUE, ExportRestEndpoint.NDJSON })
+	public void delete( //
+			@PathVariable String entity, //
+			HttpServletRequest request, //
+			HttpServletResponse response //
+	) throws IOException {
+		bulk(ExportRestEndpoint.entityType(entity), this.bulkService::delete, request, response);
+	}
+
+	private <E extends BaseEntity> void bulk(final Class<E> type, final Operation operation, final HttpServletRequest request,
+			final HttpServletResponse response) throws IOException {
+
+		boolean ndjson = request.getContentType().startsWith(ExportRestEndpoint.NDJSON);
+
+		Entities<E> entities;
+		try {
+			entities = new Entities<E>(this.objectMapper.reader(type).<E> readValues(request.getInputStream()));
+		} catch (JsonProcessingException e) {
+			// not even the start of the body is json.
+			throw new IllegalArgumentException("Invalid " + type.getSimpleName() + ": " + e.getOriginalMessage());
+		}
+
+		response.setContentType(ndjson ? ExportRestEndpoint.NDJSON : MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+
+		JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream());
+		// one result per line, without the space jackson puts between root values.
+		generator.setRootValueSeparator(null);
+		if (!ndjson) {
+			generator.writeStartArray();
+		}
+
+		Consumer<List<BulkResult>> results = chunk -> {
+			try {
+				for (BulkResult result : chunk) {
+					write(generator, result, ndjson);
+				}
+				// the client gets the results of every chunk as soon as it is written.
+				generator.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+
+		try {
+			operation.apply(type, entities, results);
+		} catch (UncheckedIOException e) {
+			// most likely the client went away.
+			throw e.getCause();
+		}
+
+		if (entities.error != null) {
+			write(generator, BulkResult.failed(entities.index, null, HttpStatus.BAD_REQUEST.value(), "Invalid " + type.getSimpleName() + ": "
+					+ entities.error.getOriginalMessage()), ndjson);
+		}
+
+		if (!ndjson) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+
+	private static void write(final JsonGenerator generator, final BulkResult result, final boolean ndjson) throws IOException {
+		generator.writeObject(result);
+		if (ndjson) {
+			generator.writeRaw('\n');
+		}
+	}
+
+	/**
+	 * A bulk operation of BulkService.
+	 */
+	private interface Operation {
+		<E extends BaseEntity> void apply(Class<E> type, Iterator<E> entities, Consumer<List<BulkResult>> results);
+	}
+
+	/**
+	 * The entities of the request, read one at a time. An entity that can not be read ends them, the error is kept for its result.
+	 */
+	private static class Entities<E> implements Iterator<E> {
+
+		private final MappingIterator<E> values;
+
+		// the index of the next entity.
+		private int index;
+		private JsonProcessingException error;
+
+		// the next entity, read by hasNext (null is a valid entity, see BulkService).
+		private boolean read;
+		private E next;
+
+		Entities(final MappingIterator<E> values) {
+			this.values = values;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!this.read && this.error == null) {
+				try {
+					if (this.values.hasNextValue()) {
+						this.next = this.values.nextValue();
+						this.read = true;
+					}
+				} catch (JsonProcessingException e) {
+					this.error = e;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return this.read;
+		}
+
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			this.read = false;
+			this.index++;
+			return this.next;
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package edu.searchahouse.endpoints;
+
+import edu.searchahouse.model.BaseEntity;
+
+/**
+ * 
+ * The ETag of an entity: its primary key and version, the version changes with every update so the same tag is always the same entity.
+ */
+final class EntityTags {
+
+	private EntityTags() {
+	}
+
+	/**
+	 * @return the strong ETag of the entity, null if it has no version (nothing to compare with).
+	 */
+	static String of(final BaseEntity entity) {
+		if (entity.getVersion() == null) {
+			return null;
+		}
+		return "\"" + entity.getPrimaryKey() + "-" + entity.getVersion() + "\"";
+	}
+
+}
@@ -0,0 +1,136 @@
+package edu.searchahouse.endpoints;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.aop.EntityWrapperAmqp;
+import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
+import edu.searchahouse.model.Agent;
+import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.model.Lead;
+import edu.searchahouse.model.Property;
+import edu.searchahouse.service.ExportService;
+
+@RestController
+@RequestMapping("/api/v1/export")
+public class ExportRestEndpoint {
+
+	public static final String NDJSON = "application/x-ndjson";
+
+	// *************************************************************//
+	// *********************** PROPERTIES **************************//
+	// *************************************************************//
+	private final ExportService exportService;
+
+	// jackson must not close the response after the first line.
+	private final ObjectMapper objectMapper = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+	// *************************************************************//
+	// *********************** CONSTRUCTORS ************************//
+	// *************************************************************//
+	@Autowired
+	public ExportRestEndpoint(ExportService exportService) {
+		this.exportService = exportService;
+	}
+
+	// *************************************************************//
+	// ********************* REST ENDPOINTS ************************//
+	// *************************************************************//
+
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * GET - export a whole collection
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * Stream every property, agent or lead as newline delimited json, in primary key order. Every line is a CREATE event, the same the search engine gets
+	 * from rabbitMq (entity and version). Used by the search engine to rebuild its index.
+	 * 
+	 * @param entity
+	 *            property, agent or lead.
+	 * @param after
+	 *            export only the entities with a greater primary key (the last one already received), to resume an export.
+	 */
+	@RequestMapping(value = "/{entity}", method = RequestMethod.GET)
+	public void export( //
+			@PathVariable String entity, //
+			@RequestParam(value = "after", required = false) String after, //
+			HttpServletResponse response //
+	) throws IOException {
+
+		Class<? extends BaseEntity> type = entityType(entity);
+
+		response.setContentType(NDJSON);
+		response.setCharacterEncoding("UTF-8");
+
+		OutputStream out = response.getOutputStream();
+		try {
+			this.exportService.export(type, after, anEntity -> {
+				try {
+					this.objectMapper.writeValue(out, new EntityWrapperAmqp<BaseEntity>(anEntity, CrudOperation.CREATE));
+					out.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			// most likely the client went away.
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * GET - count a collection
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * @param entity
+	 *            property, agent or lead.
+	 * @param after
+	 *            count only the entities with a greater primary key.
+	 * @return the number of entities an export with the same parameters returns.
+	 */
+	@RequestMapping(value = "/{entity}/count", method = RequestMethod.GET)
+	public HttpEntity<Map<String, Long>> count( //
+			@PathVariable String entity, //
+			@RequestParam(value = "after", required = false) String after //
+	) {
+		return new ResponseEntity<Map<String, Long>>(Collections.singletonMap("count", this.exportService.count(entityType(entity), after)), HttpStatus.OK);
+	}
+
+	static Class<? extends BaseEntity> entityType(final String entity) {
+		switch (entity) {
+		case "property":
+			return Property.class;
+		case "agent":
+			return Agent.class;
+		case "lead":
+			return Lead.class;
+		default:
+			throw new IllegalArgumentException("Unknown entity " + entity + ", use property, agent or lead");
+		}
+	}
+
+}
@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.searchahouse.endpoints.resources.assemblers.LeadResourceAssembler;
 import edu.searchahouse.model.Lead;
@@ -84,16 +85,22 @@ public class LeadRestEndpoint {
 	 * 
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
-	 * Get a lead by it's primary key. Throw 404 if not found.
+	 * Get a lead by it's primary key. Throw 404 if not found. The ETag is the primary key and version of the lead: if it is the one of the
+	 * "If-None-Match" header the response is a 304 without body.
 	 * 
 	 * @param leadId
 	 * @return A lead in json or xml format (default to json).
 	 * 
 	 */
 	@RequestMapping(value = "/{leadId}", method = RequestMethod.GET)
-	public HttpEntity<ResourceSupport> getLead(@PathVariable String leadId) {
+	public HttpEntity<ResourceSupport> getLead(@PathVariable String leadId, WebRequest request) {
 		Lead aLead = this.leadService.findLeadByPrimaryKey(leadId);
 
+		if (request.checkNotModified(EntityTags.of(aLead))) {
+			// 304, the client has it. Nothing to assemble nor serialize.
+			return null;
+		}
+
 		return new ResponseEntity<ResourceSupport>(this.leadResourceAssembler.toResource(aLead), HttpStatus.OK);
 	}
 
@@ -115,7 +122,7 @@ public class LeadRestEndpoint {
 		Lead lead = this.leadService.save(input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(LeadRestEndpoint.class, lead.getPrimaryKey()).getLead(lead.getPrimaryKey())).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(LeadRestEndpoint.class, lead.getPrimaryKey()).getLead(lead.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>(httpHeaders, HttpStatus.CREATED);
 	}
@@ -129,8 +136,11 @@ public class LeadRestEndpoint {
 	 * 
 	 * Updates an existing lead. Throw 402 if resource does not exist or 403 in case the resource exist but could not be updated.
 	 * 
+	 * Only the fields that changed are written. If the lead has a "version" it must be the current one, otherwise it was changed since it was read:
+	 * 409 conflict.
+	 * 
 	 * @param leadId
-	 * @return 204 if updated ok, 402 if resource does not exist or 403 in case the resource exist but could not be updated.
+	 * @return 204 if updated ok, 402 if resource does not exist or 403 in case the resource exist but could not be updated, 409 if it was changed since it was read.
 	 */
 	@RequestMapping(value = "/{leadId}", method = RequestMethod.PUT)
 	public HttpEntity<?> updateLead( //
@@ -141,7 +151,7 @@ public class LeadRestEndpoint {
 		Lead lead = this.leadService.update(leadId, input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(LeadRestEndpoint.class, lead.getPrimaryKey()).getLead(lead.getPrimaryKey())).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(LeadRestEndpoint.class, lead.getPrimaryKey()).getLead(lead.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>("The resource was updated ok.", httpHeaders, HttpStatus.NO_CONTENT);
 	}
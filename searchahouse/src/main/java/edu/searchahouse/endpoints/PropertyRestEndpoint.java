@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.searchahouse.endpoints.resources.assemblers.PropertyResourceAssembler;
 import edu.searchahouse.model.Property;
@@ -84,16 +85,22 @@ public class PropertyRestEndpoint {
 	 * 
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
-	 * Get a property by it's primary key. Throw 404 if not found.
+	 * Get a property by it's primary key. Throw 404 if not found. The ETag is the primary key and version of the property: if it is the one of the
+	 * "If-None-Match" header the response is a 304 without body.
 	 * 
 	 * @param propertyId
 	 * @return A property in json or xml format (default to json).
 	 * 
 	 */
 	@RequestMapping(value = "/{propertyId}", method = RequestMethod.GET)
-	public HttpEntity<ResourceSupport> getProperty(@PathVariable String propertyId) {
+	public HttpEntity<ResourceSupport> getProperty(@PathVariable String propertyId, WebRequest request) {
 		Property aProperty = this.propertyService.findPropertyByPrimaryKey(propertyId);
 
+		if (request.checkNotModified(EntityTags.of(aProperty))) {
+			// 304, the client has it. Nothing to assemble nor serialize.
+			return null;
+		}
+
 		return new ResponseEntity<ResourceSupport>(this.propertyResourceAssembler.toResource(aProperty), HttpStatus.OK);
 	}
 
@@ -115,7 +122,7 @@ public class PropertyRestEndpoint {
 		Property property = this.propertyService.save(input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey())).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>(httpHeaders, HttpStatus.CREATED);
 	}
@@ -129,8 +136,11 @@ public class PropertyRestEndpoint {
 	 * 
 	 * Updates an existing property. Throw 402 if resource does not exist or 403 in case the resource exist but could not be updated.
 	 * 
+	 * Only the fields that changed are written. If the property has a "version" it must be the current one, otherwise it was changed since it was read:
+	 * 409 conflict.
+	 * 
 	 * @param propertyId
-	 * @return 204 if updated ok, 402 if resource does not exist or 403 in case the resource exist but could not be updated.
+	 * @return 204 if updated ok, 402 if resource does not exist or 403 in case the resource exist but could not be updated, 409 if it was changed since it was read.
 	 */
 	@RequestMapping(value = "/{propertyId}", method = RequestMethod.PUT)
 	public HttpEntity<?> updateProperty( //
@@ -141,11 +151,38 @@ public class PropertyRestEndpoint {
 		Property property = this.propertyService.update(propertyId, input);
 
 		HttpHeaders httpHeaders = new HttpHeaders();
-		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey())).toUri());
+		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey(), null)).toUri());
 
 		return new ResponseEntity<>("The resource was updated ok.", httpHeaders, HttpStatus.NO_CONTENT);
 	}
 
+	/**
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * PUT - Update the location of a property
+	 * 
+	 * ----------------------------------------------------------------------------------------------------------------
+	 * 
+	 * Set the location the search engine found for the address of the property. The input has the address that was geocoded and the location: if the
+	 * property has another address by now the location is stale, 409 conflict. The property gets a new version, like with any other update.
+	 * 
+	 * @param propertyId
+	 * @return 204 if updated ok, 404 if resource does not exist, 409 if the property has another address.
+	 */
+	@RequestMapping(value = "/{propertyId}/location", method = RequestMethod.PUT)
+	public HttpEntity<?> updatePropertyLocation( //
+			@RequestBody Property input,//
+			@PathVariable String propertyId //
+	) {
+
+		Property property = this.propertyService.updateLocation(propertyId, input);
+
+		HttpHeaders httpHeaders = new HttpHeaders();
+		httpHeaders.setLocation(linkTo(methodOn(PropertyRestEndpoint.class, property.getPrimaryKey()).getProperty(property.getPrimaryKey(), null)).toUri());
+
+		return new ResponseEntity<>(httpHeaders, HttpStatus.NO_CONTENT);
+	}
+
 	/**
 	 * ----------------------------------------------------------------------------------------------------------------
 	 * 
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import edu.searchahouse.exceptions.EntityConflictException;
 import edu.searchahouse.exceptions.EntityNotFoundException;
 import edu.searchahouse.exceptions.EntityNotUpdatedException;
 
@@ -141,6 +142,20 @@ public class ExceptionControllerAdvice {
 		return new VndErrors(HttpStatus.BAD_REQUEST.getReasonPhrase(), ex.getLocalizedMessage());
 	}
 
+	/**
+	 * 
+	 * Catch <code>EntityConflictException</code> exception thrown by any endpoint and change the return code.
+	 * 
+	 * @param ex
+	 * @return
+	 */
+	@ResponseBody
+	@ExceptionHandler(EntityConflictException.class)
+	@ResponseStatus(HttpStatus.CONFLICT)
+	VndErrors entityConflictExceptionHandler(EntityConflictException ex) {
+		return new VndErrors(HttpStatus.CONFLICT.getReasonPhrase(), ex.getLocalizedMessage());
+	}
+
 	/**
 	 * 
 	 * 
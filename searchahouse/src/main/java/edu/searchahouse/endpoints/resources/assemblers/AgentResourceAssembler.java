@@ -3,7 +3,6 @@ package edu.searchahouse.endpoints.resources.assemblers;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.ResourceAssembler;
 import org.springframework.hateoas.ResourceSupport;
@@ -15,29 +14,16 @@ import edu.searchahouse.model.Agent;
 @Component
 public class AgentResourceAssembler implements ResourceAssembler<Agent, ResourceSupport> {
 
-    private final PropertyResourceAssembler propertyResourceAssembler;
-    private final LeadResourceAssembler leadResourceAssembler;
-
-    @Autowired
-    public AgentResourceAssembler(final PropertyResourceAssembler propertyResourceAssembler, final LeadResourceAssembler leadResourceAssembler) {
-        this.propertyResourceAssembler = propertyResourceAssembler;
-        this.leadResourceAssembler = leadResourceAssembler;
-    }
-
     @Override
     public ResourceSupport toResource(Agent entity) {
 
         // add link to itself ( rel = self )
-        Link selfLink = linkTo(methodOn(AgentRestEndpoint.class).getAgent(entity.getPrimaryKey().toString(), false)).withSelfRel();
+        Link selfLink = linkTo(methodOn(AgentRestEndpoint.class).getAgent(entity.getPrimaryKey().toString(), null)).withSelfRel();
         entity.add(selfLink);
-        
-        if( entity.getProperties() != null ){
-            entity.getProperties().forEach(p -> this.propertyResourceAssembler.toResource(p));
-        }
-
-        if( entity.getLeads() != null ){
-            entity.getLeads().forEach( l -> this.leadResourceAssembler.toResource(l) );
-        }
+
+        // the leads and properties are not part of the agent, they are read a page at a time.
+        entity.add(linkTo(AgentRestEndpoint.class).slash(entity.getPrimaryKey()).slash("leads").withRel("leads"));
+        entity.add(linkTo(AgentRestEndpoint.class).slash(entity.getPrimaryKey()).slash("properties").withRel("properties"));
 
         return entity;
     }
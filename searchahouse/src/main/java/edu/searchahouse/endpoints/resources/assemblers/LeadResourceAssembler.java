@@ -18,7 +18,7 @@ public class LeadResourceAssembler implements ResourceAssembler<Lead, ResourceSu
     public ResourceSupport toResource(Lead entity) {
 
         // add link to itself ( rel = self )
-        Link selfLink = linkTo(methodOn(LeadRestEndpoint.class).getLead(entity.getPrimaryKey().toString())).withSelfRel();
+        Link selfLink = linkTo(methodOn(LeadRestEndpoint.class).getLead(entity.getPrimaryKey().toString(), null)).withSelfRel();
         entity.add(selfLink);
 
         return entity;
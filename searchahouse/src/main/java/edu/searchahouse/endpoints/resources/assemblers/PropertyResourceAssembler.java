@@ -18,7 +18,7 @@ public class PropertyResourceAssembler implements ResourceAssembler<Property, Re
     public ResourceSupport toResource(Property entity) {
 
 		// add link to itself ( rel = self )
-		Link selfLink = linkTo(methodOn(PropertyRestEndpoint.class).getProperty(entity.getPrimaryKey().toString())).withSelfRel();
+		Link selfLink = linkTo(methodOn(PropertyRestEndpoint.class).getProperty(entity.getPrimaryKey().toString(), null)).withSelfRel();
 		entity.add(selfLink);
 
 		return entity;
@@ -0,0 +1,15 @@
+package edu.searchahouse.exceptions;
+
+/**
+ * 
+ * Base class exception for conflicts. Throw this exception when the entity is in a state that is in conflict with the request (for example, it was changed
+ * by someone else or it belongs to another entity).
+ */
+@SuppressWarnings("serial")
+public class EntityConflictException extends RuntimeException {
+
+	public EntityConflictException(String entityName, String reason) {
+		super(entityName + " " + reason);
+	}
+
+}
@@ -0,0 +1,167 @@
+package edu.searchahouse.migration;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import edu.searchahouse.aop.EntityChangePublisher;
+import edu.searchahouse.model.Agent;
+import edu.searchahouse.model.Lead;
+import edu.searchahouse.model.Property;
+import edu.searchahouse.repository.mongo.LeadRepository;
+
+//@formatter:off
+/**
+ *
+ * Splits the leads and properties embedded in the agent documents (the model before they were referenced, see {@link Agent}) out of them, on startup.
+ *
+ * --- every embedded lead gets the id of the agent ("agentId"), the leads missing from the leads collection are inserted.
+ * --- the id of the agent is added to the "agentIds" of every embedded property ($addToSet).
+ * --- then the "leads" and "properties" arrays are removed from the agent. That is the last step, so a migration that stops half way (crash, restart) is
+ * --- run again on the next startup for the same agent, every step can be repeated.
+ * --- the changes are published like any other, the search engine indexes the new references.
+ * --- a lead embedded in more than one agent is the lead of the first agent migrated, the others are logged.
+ *
+ * Once every agent is migrated it only costs a query on startup, disable it with "searchahouse.migration.embedded-collections.enabled".
+ */
+//@formatter:on
+@Component
+@ConditionalOnProperty(prefix = "searchahouse.migration.embedded-collections", name = "enabled", matchIfMissing = true)
+public class EmbeddedCollectionsMigration implements CommandLineRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedCollectionsMigration.class);
+
+    // the agents with embedded collections are big documents, few of them per round trip.
+    private static final int BATCH_SIZE = 50;
+
+    private final MongoOperations mongoOperations;
+    private final LeadRepository leadRepository;
+    private final EntityChangePublisher entityChangePublisher;
+
+    @Autowired
+    public EmbeddedCollectionsMigration(//
+            final MongoOperations mongoOperations, //
+            final LeadRepository leadRepository, //
+            final EntityChangePublisher entityChangePublisher //
+    ) {
+        this.mongoOperations = mongoOperations;
+        this.leadRepository = leadRepository;
+        this.entityChangePublisher = entityChangePublisher;
+    }
+
+    @Override
+    public void run(final String... args) {
+        migrate();
+    }
+
+    /**
+     * @return the number of agents migrated.
+     */
+    public int migrate() {
+
+        DBCollection agents = this.mongoOperations.getCollection(this.mongoOperations.getCollectionName(Agent.class));
+
+        BasicDBList embedded = new BasicDBList();
+        embedded.add(new BasicDBObject("leads", new BasicDBObject("$exists", true)));
+        embedded.add(new BasicDBObject("properties", new BasicDBObject("$exists", true)));
+
+        DBObject fields = new BasicDBObject("leads", 1).append("properties", 1);
+
+        DBCursor cursor = agents.find(new BasicDBObject("$or", embedded), fields) //
+                .batchSize(BATCH_SIZE) //
+                .addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+
+        int migrated = 0;
+        try {
+            while (cursor.hasNext()) {
+                DBObject agent = cursor.next();
+                String agentId = String.valueOf(agent.get("_id"));
+
+                forEach(agent.get("leads"), lead -> migrateLead(agentId, lead));
+                forEach(agent.get("properties"), property -> migrateProperty(agentId, property));
+
+                agents.update(new BasicDBObject("_id", agent.get("_id")), //
+                        new BasicDBObject("$unset", new BasicDBObject("leads", "").append("properties", "")));
+                migrated++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (migrated > 0) {
+            LOGGER.info("Moved the embedded leads and properties of {} agents to their collections.", migrated);
+        }
+        return migrated;
+    }
+
+    private void migrateLead(final String agentId, final DBObject embeddedLead) {
+        Object leadId = embeddedLead.get("_id");
+
+        // only the leads without an agent, so a repeated step changes nothing.
+        Query query = new Query(Criteria.where("_id").is(leadId).and("agentId").exists(false));
+        query.fields().include("version");
+        Update update = new Update().set("agentId", agentId).inc("version", 1);
+
+        Lead updated = this.mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Lead.class);
+        if (updated != null) {
+            this.entityChangePublisher.updated(updated, Collections.singletonMap("agentId", agentId));
+            return;
+        }
+
+        Lead stored = this.mongoOperations.findById(leadId, Lead.class);
+        if (stored == null) {
+            Lead lead = this.mongoOperations.getConverter().read(Lead.class, embeddedLead);
+            lead.setAgentId(agentId);
+            lead.setVersion(null);
+            try {
+                // through the repository, so it is published as a new lead.
+                this.leadRepository.save(lead);
+            } catch (DuplicateKeyException e) {
+                LOGGER.warn("The lead {} of the agent {} was not migrated, its email is the one of another lead.", leadId, agentId, e);
+            }
+        } else if (!agentId.equals(stored.getAgentId())) {
+            LOGGER.warn("The lead {} is embedded in the agents {} and {}, it stays with {}.", leadId, stored.getAgentId(), agentId, stored.getAgentId());
+        }
+    }
+
+    private void migrateProperty(final String agentId, final DBObject embeddedProperty) {
+        Object propertyId = embeddedProperty.get("_id");
+
+        Query query = new Query(Criteria.where("_id").is(propertyId).and("agentIds").ne(agentId));
+        query.fields().include("version").include("agentIds");
+        Update update = new Update().addToSet("agentIds", agentId).inc("version", 1);
+
+        Property updated = this.mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Property.class);
+        if (updated != null) {
+            this.entityChangePublisher.updated(updated, Collections.singletonMap("agentIds", updated.getAgentIds()));
+        } else if (!this.mongoOperations.exists(new Query(Criteria.where("_id").is(propertyId)), Property.class)) {
+            LOGGER.warn("The property {} of the agent {} does not exist, it was not migrated.", propertyId, agentId);
+        }
+    }
+
+    private static void forEach(final Object embedded, final Consumer<DBObject> migration) {
+        if (embedded instanceof BasicDBList) {
+            ((BasicDBList) embedded).stream().filter(DBObject.class::isInstance).map(DBObject.class::cast).forEach(migration);
+        }
+    }
+
+}
@@ -1,7 +1,5 @@
 package edu.searchahouse.model;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,6 +17,8 @@ import org.springframework.data.mongodb.core.index.Indexed;
  * For mongodb embedded documents or ref documents:
  * --- As a general rule, if you have a lot of "comments" or if they are large, a separate collection might be best. Smaller and/or fewer documents tend to be a
  * --- natural fit for embedding.
+ * --- the leads and properties of an agent are not embedded: a busy agent has thousands of leads, and every new lead rewrote the whole agent document.
+ * --- a lead references its agent ({@link Lead#getAgentId()}) and a property the agents it is assigned to ({@link Property#getAgentIds()}), both indexed.
  * 
  * @author Gustavo Orsi
  *
@@ -40,10 +40,6 @@ public class Agent extends BaseEntity {
 
     private String imageUrl;
 
-    private Collection<Property> properties;
-
-    private Collection<Lead> leads;
-
     public Agent() {
     }
 
@@ -85,46 +81,12 @@ public class Agent extends BaseEntity {
         this.email = email;
     }
 
-    public Collection<Property> getProperties() {
-        return properties;
-    }
-
-    public void setProperties(Collection<Property> properties) {
-        this.properties = properties;
-    }
-
-    public Collection<Lead> getLeads() {
-        return leads;
-    }
-
-    public void setLeads(Collection<Lead> leads) {
-        this.leads = leads;
-    }
-
-    public Collection<Property> addProperty(final Property aProperty) {
-        if (getProperties() == null) {
-            setProperties(new ArrayList<Property>());
-        }
-        getProperties().add(aProperty);
-        return getProperties();
-    }
-
-    public Collection<Lead> addLead(final Lead lead) {
-        if (getLeads() == null) {
-            setLeads(new ArrayList<Lead>());
-        }
-        getLeads().add(lead);
-        return getLeads();
-    }
-
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<String, Object>();
         put(map, this.email, "email");
         put(map, this.imageUrl, "imageUrl");
         put(map, this.firstName, "firstName");
         put(map, this.lastName, "lastName");
-        put(map, this.leads, "leads");
-        put(map, this.properties, "properties");
 
         return map;
     }
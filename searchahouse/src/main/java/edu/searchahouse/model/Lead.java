@@ -20,10 +20,13 @@ public class Lead extends BaseEntity {
     private Status contactStatus = Status.UNCONTACTED;
     private String firstName;
     private String lastName;
-    // sparse = true means that it will accept duplicates if the entity is inside a nested collection (for example, the leads collections in Agent class).
+    // sparse = true means that it will accept the leads without an email.
     @Indexed(unique = true, sparse = true)
     private String email;
     private String mobilePhone;
+    // the agent the lead is assigned to, set by the agent endpoint (see AgentService#addLead), it is not part of the updates of the lead.
+    @Indexed
+    private String agentId;
 
     public Lead() {
     }
@@ -75,6 +78,14 @@ public class Lead extends BaseEntity {
         this.mobilePhone = mobilePhone;
     }
 
+    public String getAgentId() {
+        return agentId;
+    }
+
+    public void setAgentId(String agentId) {
+        this.agentId = agentId;
+    }
+
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<String, Object>();
         put(map, this.email, "email");
@@ -0,0 +1,37 @@
+package edu.searchahouse.model;
+
+/**
+ * 
+ * The location of a property, as the search engine indexes it (an elasticsearch geo_point).
+ * 
+ */
+public class Location {
+
+	private Double lat;
+	private Double lon;
+
+	public Location() {
+	}
+
+	public Location(Double lat, Double lon) {
+		this.lat = lat;
+		this.lon = lon;
+	}
+
+	public Double getLat() {
+		return lat;
+	}
+
+	public void setLat(Double lat) {
+		this.lat = lat;
+	}
+
+	public Double getLon() {
+		return lon;
+	}
+
+	public void setLon(Double lon) {
+		this.lon = lon;
+	}
+
+}
@@ -2,8 +2,10 @@ package edu.searchahouse.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.Indexed;
 
 //Customizing type mapping to avoid writing the entire Java class name as type information in mongodb ("_class" : "du.searchahouse.model.Property").
 @TypeAlias("Property")
@@ -16,6 +18,12 @@ public class Property extends BaseEntity {
 	private Long price;
 	private PropertyType type;
 	private PropertyStatus status;
+	// the agents the property is assigned to, set by the agent endpoint (see AgentService#addProperty), it is not part of the updates of the property.
+	@Indexed
+	private Set<String> agentIds;
+	// found by the geocoder of the search engine for the address, set by the location endpoint (see PropertyService#updateLocation), it is not part of
+	// the updates of the property.
+	private Location location;
 
 	public Property() {
 	}
@@ -85,6 +93,22 @@ public class Property extends BaseEntity {
 		this.address = address;
 	}
 
+	public Set<String> getAgentIds() {
+		return agentIds;
+	}
+
+	public void setAgentIds(Set<String> agentIds) {
+		this.agentIds = agentIds;
+	}
+
+	public Location getLocation() {
+		return location;
+	}
+
+	public void setLocation(Location location) {
+		this.location = location;
+	}
+
 	public Map<String, Object> toMap() {
 		Map<String, Object> map = new HashMap<String, Object>();
 		put(map, this.name, "name");
@@ -0,0 +1,62 @@
+package edu.searchahouse.outbox;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.searchahouse.aop.EntityWrapperAmqp;
+import edu.searchahouse.model.BaseEntity;
+
+/**
+ * 
+ * Writes the entity changes to the "outbox" collection. The write is synchronous and happens right after the entity was saved, so once the request
+ * returns the change is durable in mongo and {@link OutboxRelay} will publish it even if rabbitMq is down right now.
+ * 
+ * Mongo has no multi document transactions: if the outbox write fails the entity is already saved, but the request fails and the client can retry it.
+ */
+@Component
+public class Outbox {
+
+    private final MongoOperations mongoOperations;
+
+    // same serialization the rabbitMq message converter used before the outbox.
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public Outbox(final MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    public void append(final EntityWrapperAmqp<? extends BaseEntity> wrapper, final String entityType, final String routingKey) {
+        this.mongoOperations.insert(event(wrapper, entityType, routingKey));
+    }
+
+    /**
+     * One insert for all the events, e.g. the changes of a chunk of a bulk request (see EntityChangePublisher.Batch). The events get their id and creation
+     * time now, not when they were made: the chunk can take a while and the outbox is relayed by creation.
+     */
+    public void appendAll(final List<OutboxEvent> events) {
+        if (!events.isEmpty()) {
+            this.mongoOperations.insert(events.stream().map(OutboxEvent::stamped).collect(Collectors.toList()), OutboxEvent.class);
+        }
+    }
+
+    public OutboxEvent event(final EntityWrapperAmqp<? extends BaseEntity> wrapper, final String entityType, final String routingKey) {
+
+        String payload;
+        try {
+            payload = this.objectMapper.writeValueAsString(wrapper);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + entityType + " " + wrapper.getPrimaryKey(), e);
+        }
+
+        return new OutboxEvent(routingKey, entityType, wrapper.getPrimaryKey(), wrapper.getCrudOperation().name(), wrapper.getVersion(), payload);
+    }
+
+}
@@ -0,0 +1,147 @@
+package edu.searchahouse.outbox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
+
+//@formatter:off
+/**
+ * 
+ * Merges the outbox events of the same entity, so a burst of writes to an entity becomes a single message (see EntityWrapperAmqp for full and delta events):
+ * 
+ * --- anything + DELETE = the DELETE.
+ * --- anything + full event = the full event, a CREATE stays a CREATE (the search engine has not seen the entity yet).
+ * --- delta UPDATE + delta UPDATE = one delta UPDATE with the changes of both, the last value of a field wins.
+ * --- full event + delta UPDATE = the full event with the changed fields applied. If the delta changes an element of a collection the events are not merged.
+ */
+//@formatter:on
+class OutboxCoalescer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 
+     * @param events
+     *            outbox events sorted by creation.
+     * @return the merged events, sorted by the creation of the last write to each entity.
+     */
+    List<OutboxEvent> coalesce(final List<OutboxEvent> events) {
+
+        Map<String, LinkedList<OutboxEvent>> byEntity = new LinkedHashMap<>();
+
+        for (OutboxEvent event : events) {
+            String key = event.getRoutingKey() + "|" + event.getEntityId();
+
+            // remove first, so the entity takes the position of its last write.
+            LinkedList<OutboxEvent> entityEvents = byEntity.remove(key);
+            if (entityEvents == null) {
+                entityEvents = new LinkedList<>();
+            }
+
+            OutboxEvent merged = entityEvents.isEmpty() ? null : merge(entityEvents.getLast(), event);
+            if (merged == null) {
+                entityEvents.add(event);
+            } else {
+                entityEvents.set(entityEvents.size() - 1, merged);
+            }
+
+            byEntity.put(key, entityEvents);
+        }
+
+        List<OutboxEvent> coalesced = new ArrayList<>();
+        byEntity.values().forEach(coalesced::addAll);
+        return coalesced;
+    }
+
+    /**
+     * @return the merged event, or null if the events can not be merged.
+     */
+    private OutboxEvent merge(final OutboxEvent previous, final OutboxEvent last) {
+
+        if (CrudOperation.DELETE.name().equals(last.getOperation())) {
+            return last;
+        }
+
+        ObjectNode lastWrapper = read(last.getPayload());
+
+        if (isFull(lastWrapper)) {
+            if (CrudOperation.CREATE.name().equals(previous.getOperation())) {
+                lastWrapper.put("crudOperation", CrudOperation.CREATE.name());
+                return last.merged(CrudOperation.CREATE.name(), write(lastWrapper));
+            }
+            return last;
+        }
+
+        if (CrudOperation.DELETE.name().equals(previous.getOperation())) {
+            // an update after a delete, should not happen. Keep both.
+            return null;
+        }
+
+        ObjectNode previousWrapper = read(previous.getPayload());
+        ObjectNode changes = (ObjectNode) lastWrapper.get("changes");
+
+        if (isFull(previousWrapper)) {
+            ObjectNode entity = (ObjectNode) previousWrapper.get("entity");
+
+            Iterator<String> fields = changes.fieldNames();
+            while (fields.hasNext()) {
+                if (fields.next().contains(".")) {
+                    return null;
+                }
+            }
+
+            entity.setAll(changes);
+            entity.set("version", lastWrapper.get("version"));
+            previousWrapper.set("version", lastWrapper.get("version"));
+            return last.merged(previous.getOperation(), write(previousWrapper));
+        }
+
+        ObjectNode mergedChanges = (ObjectNode) previousWrapper.get("changes");
+        changes.fields().forEachRemaining(field -> {
+            // a new value for a field replaces the previous changes of its elements ("leads" replaces "leads.1234.contactStatus").
+            List<String> replaced = new ArrayList<>();
+            mergedChanges.fieldNames().forEachRemaining(name -> {
+                if (name.startsWith(field.getKey() + ".")) {
+                    replaced.add(name);
+                }
+            });
+            mergedChanges.remove(replaced);
+            // remove first, so the field is applied after the ones it depends on.
+            mergedChanges.remove(field.getKey());
+            mergedChanges.set(field.getKey(), field.getValue());
+        });
+        lastWrapper.set("changes", mergedChanges);
+        return last.merged(CrudOperation.UPDATE.name(), write(lastWrapper));
+    }
+
+    private boolean isFull(final JsonNode wrapper) {
+        return wrapper.hasNonNull("entity");
+    }
+
+    private ObjectNode read(final String payload) {
+        try {
+            return (ObjectNode) this.objectMapper.readTree(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid outbox payload.", e);
+        }
+    }
+
+    private String write(final ObjectNode wrapper) {
+        try {
+            return this.objectMapper.writeValueAsString(wrapper);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid outbox payload.", e);
+        }
+    }
+
+}
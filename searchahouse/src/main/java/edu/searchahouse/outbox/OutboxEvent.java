@@ -0,0 +1,91 @@
+package edu.searchahouse.outbox;
+
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * 
+ * An entity change waiting to be published to rabbitMq. The _id is an ObjectId, so the outbox is naturally sorted by creation time.
+ */
+@Document(collection = "outbox")
+public class OutboxEvent {
+
+    @Id
+    private ObjectId id;
+
+    private String routingKey;
+    private String entityType;
+    private String entityId;
+    private String operation;
+    private Long version;
+    // the message body, already serialized (json).
+    private String payload;
+    private Date createdAt;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String routingKey, String entityType, String entityId, String operation, Long version, String payload) {
+        this.id = new ObjectId();
+        this.routingKey = routingKey;
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.version = version;
+        this.payload = payload;
+        this.createdAt = new Date();
+    }
+
+    /**
+     * @return a copy of this event with another operation and payload, the result of merging previous events into this one.
+     */
+    public OutboxEvent merged(String operation, String payload) {
+        OutboxEvent copy = new OutboxEvent(this.routingKey, this.entityType, this.entityId, operation, this.version, payload);
+        copy.id = this.id;
+        copy.createdAt = this.createdAt;
+        return copy;
+    }
+
+    /**
+     * @return a copy of this event with a new id and creation time, the ones of its insert.
+     */
+    public OutboxEvent stamped() {
+        return new OutboxEvent(this.routingKey, this.entityType, this.entityId, this.operation, this.version, this.payload);
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+}
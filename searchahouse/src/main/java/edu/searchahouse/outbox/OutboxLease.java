@@ -0,0 +1,39 @@
+package edu.searchahouse.outbox;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * 
+ * Which crud instance relays the outbox, and until when. Only the owner of the lease publishes, it renews the lease on every poll; when it stops (crash,
+ * shutdown) another instance takes it over once the lease expired.
+ */
+@Document(collection = "outbox_lease")
+public class OutboxLease {
+
+    public static final String RELAY = "relay";
+
+    @Id
+    private String id;
+
+    private String owner;
+    private Date expiresAt;
+
+    public OutboxLease() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+}
@@ -0,0 +1,208 @@
+package edu.searchahouse.outbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import edu.searchahouse.aop.QueueSender;
+
+//@formatter:off
+/**
+ * 
+ * Publishes the "outbox" collection to rabbitMq, oldest event first, in batches of "searchahouse.outbox.relay.batch-size" events.
+ * 
+ * --- the outbox only holds the events not published yet. A batch is confirmed by the broker (publisher confirms) before its events are deleted, by
+ * --- their ids (never a range of ids: an event inserted late, with an older id, is still in the outbox and goes in a later batch). So an event is never
+ * --- lost. If the relay crashes between the confirm and the delete the batch is published again (at least once delivery), the search engine indexes the
+ * --- same entity twice, which is harmless.
+ * --- only one crud instance relays: the one holding the lease in "outbox_lease" (see OutboxLease), renewed on every poll and taken over by another
+ * --- instance "searchahouse.outbox.relay.lease" milliseconds after its owner stopped renewing it. The clocks of the instances must agree within that
+ * --- margin. An owner paused longer than its lease can publish a batch the new owner publishes too, which is again a duplicate, never a loss.
+ * --- an event is relayed once it is older than "searchahouse.outbox.relay.settle" milliseconds and the events of the same entity inside a batch are
+ * --- merged into one message (see OutboxCoalescer), so a burst of writes to an entity within that window is published once. The window only delays
+ * --- the events, an event inserted after its window is relayed on the next poll.
+ * --- when rabbitMq is down the events just wait in mongo, the request threads are never blocked.
+ * 
+ * Metrics (see /metrics): outbox.lag (milliseconds the oldest waiting event has been waiting), outbox.pending, outbox.published and outbox.coalesced
+ * (events merged into another one).
+ */
+//@formatter:on
+@Component
+@ConditionalOnProperty(prefix = "searchahouse.outbox.relay", name = "enabled", matchIfMissing = true)
+public class OutboxRelay implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final MongoOperations mongoOperations;
+    private final QueueSender queueSender;
+
+    private final int batchSize;
+    private final long pollInterval;
+    private final long settle;
+    private final long lease;
+
+    // this instance, as the owner of the lease.
+    private final String owner = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "outbox-relay"));
+
+    private final OutboxCoalescer coalescer = new OutboxCoalescer();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile long lag;
+    private volatile long pending;
+
+    @Autowired
+    public OutboxRelay(//
+            final MongoOperations mongoOperations, //
+            final QueueSender queueSender, //
+            @Value("${searchahouse.outbox.relay.batch-size:500}") final int batchSize, //
+            @Value("${searchahouse.outbox.relay.poll-interval:500}") final long pollInterval, //
+            @Value("${searchahouse.outbox.relay.settle:1000}") final long settle, //
+            @Value("${searchahouse.outbox.relay.lease:10000}") final long lease //
+    ) {
+        this.mongoOperations = mongoOperations;
+        this.queueSender = queueSender;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.settle = settle;
+        this.lease = lease;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.scheduler.scheduleWithFixedDelay(this::relay, this.pollInterval, this.pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.scheduler.shutdown();
+
+        try {
+            // another instance takes over on its next poll, not once the lease expired.
+            this.mongoOperations.updateFirst(new Query(Criteria.where("_id").is(OutboxLease.RELAY).and("owner").is(this.owner)), new Update().set(
+                    "expiresAt", new Date(0)), OutboxLease.class);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not release the outbox lease, it expires in {} ms.", this.lease, e);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("outbox.lag", this.lag));
+        metrics.add(new Metric<Long>("outbox.pending", this.pending));
+        metrics.add(new Metric<Long>("outbox.published", this.published.get()));
+        metrics.add(new Metric<Long>("outbox.coalesced", this.coalesced.get()));
+        return metrics;
+    }
+
+    private void relay() {
+        try {
+            if (acquireLease()) {
+                int count;
+                do {
+                    count = publishBatch();
+                    // a full batch means there is a backlog, keep going (as long as the lease is still ours).
+                } while (count == this.batchSize && acquireLease());
+            }
+        } catch (RuntimeException e) {
+            // never let an exception cancel the scheduled relay, the batch is tried again on the next poll.
+            LOGGER.warn("Could not relay the outbox, trying again in {} ms.", this.pollInterval, e);
+        }
+
+        try {
+            updateLag();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not measure the outbox lag.", e);
+        }
+    }
+
+    /**
+     * Takes the lease, or renews it if it is already ours: one findAndModify on the lease document.
+     * 
+     * @return true if this instance relays the outbox until the next poll.
+     */
+    private boolean acquireLease() {
+        Date now = new Date();
+
+        Query query = new Query(Criteria.where("_id").is(OutboxLease.RELAY).orOperator(Criteria.where("owner").is(this.owner), //
+                Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", this.owner).set("expiresAt", new Date(now.getTime() + this.lease));
+
+        try {
+            this.mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().upsert(true), OutboxLease.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // the lease exists and is another instance's: the upsert tried to insert a second one.
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of events published.
+     */
+    private int publishBatch() {
+
+        Query query = new Query(Criteria.where("createdAt").lt(new Date(System.currentTimeMillis() - this.settle))) //
+                .with(new Sort(Direction.ASC, "_id")) //
+                .limit(this.batchSize);
+
+        List<OutboxEvent> batch = this.mongoOperations.find(query, OutboxEvent.class);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<OutboxEvent> messages = this.coalescer.coalesce(batch);
+
+        // blocks until the broker confirmed every message of the batch.
+        this.queueSender.publish(messages);
+
+        // only the events of the batch, the ones inserted since (even with an older id) are still to publish.
+        List<ObjectId> published = batch.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+        this.mongoOperations.remove(new Query(Criteria.where("_id").in(published)), OutboxEvent.class);
+
+        this.published.addAndGet(messages.size());
+        this.coalesced.addAndGet(batch.size() - messages.size());
+
+        return batch.size();
+    }
+
+    private void updateLag() {
+        Query oldestQuery = new Query().with(new Sort(Direction.ASC, "createdAt"));
+        OutboxEvent oldest = this.mongoOperations.findOne(oldestQuery, OutboxEvent.class);
+
+        this.lag = oldest == null ? 0 : System.currentTimeMillis() - oldest.getCreatedAt().getTime();
+        this.pending = this.mongoOperations.count(new Query(), OutboxEvent.class);
+    }
+
+}
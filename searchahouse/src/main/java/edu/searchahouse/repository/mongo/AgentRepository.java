@@ -1,11 +1,11 @@
 package edu.searchahouse.repository.mongo;
 
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.data.mongodb.repository.Query;
 
 import edu.searchahouse.model.Agent;
 
@@ -13,14 +13,7 @@ public interface AgentRepository extends MongoRepository<Agent, String> {
 
 	Optional<Agent> findAgentByPrimaryKey(final String primaryKey);
 
-	@Query(value = "{ '_id' : ?0 }", fields = "{ 'properties' : 0, 'leads' : 0}")
-	Optional<Agent> findAgentByPrimaryKeyLazyNestedCollections(final String id);
-
-	@Query(value = "{ 'properties._id' : ?0 }", fields = "{ 'properties' : 0, 'leads' : 0}")
-	Page<Agent> findAgentsByProperty(final String propertyPrimaryKey, Pageable pageable);
-
-	@Query(value = "{ 'properties._id' : ?0 }")
-	Page<Agent> findAgentsByPropertyIncludeNestedCollections(final String propertyPrimaryKey, Pageable pageable);
+	Page<Agent> findAgentsByPrimaryKeyIn(final Collection<String> primaryKeys, Pageable pageable);
 
 	Optional<Agent> findAgentByEmail(final String email);
 	
@@ -2,6 +2,8 @@ package edu.searchahouse.repository.mongo;
 
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import edu.searchahouse.model.Lead;
@@ -12,4 +14,6 @@ public interface LeadRepository extends MongoRepository<Lead, String> {
 
 	Optional<Lead> findLeadByEmail(final String email);
 
+	Page<Lead> findLeadsByAgentId(final String agentId, Pageable pageable);
+
 }
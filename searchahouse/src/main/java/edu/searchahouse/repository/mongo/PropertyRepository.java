@@ -2,7 +2,10 @@ package edu.searchahouse.repository.mongo;
 
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import edu.searchahouse.model.Property;
 
@@ -12,4 +15,8 @@ public interface PropertyRepository extends MongoRepository<Property, String> {
 
 	Optional<Property> findPropertyByName(final String name);
 
+	// "agentIds" is an array, the query matches the properties with the agent in it.
+	@Query(value = "{ 'agentIds' : ?0 }")
+	Page<Property> findPropertiesByAgentId(final String agentId, Pageable pageable);
+
 }
@@ -1,5 +1,7 @@
 package edu.searchahouse.service;
 
+import java.util.Collection;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -9,9 +11,13 @@ import edu.searchahouse.model.Property;
 
 public interface AgentService {
 
-    public Agent findAgentByPrimaryKey(String id, boolean lazyLoadNested);
+    public Agent findAgentByPrimaryKey(String id);
+
+    public Page<Agent> findAgentsByPropertyId(String propertyId, Pageable pageable);
 
-    public Page<Agent> findAgentsByPropertyId(String propertyId, Pageable pageable, final boolean lazyCollections);
+    public Page<Lead> findLeadsByAgentId(String agentId, Pageable pageable);
+
+    public Page<Property> findPropertiesByAgentId(String agentId, Pageable pageable);
 
     public Page<Agent> getAgentsByPage(Pageable pageable);
 
@@ -19,12 +25,17 @@ public interface AgentService {
 
     public Agent update(final String agentId, Agent input);
 
-    public Agent addLead(final String agentId, Lead lead);
+    public Lead addLead(final String agentId, Lead lead);
     
     public void deleteAgent( final String agentId );
 
     public void updateLeadContactStatus(final String agentId, final String leadId, Lead lead);
 
+    /**
+     * @return the number of leads whose status changed, and the leads that were not updated because they are not leads of the agent.
+     */
+    public LeadsContactStatusResult updateLeadsContactStatus(final String agentId, final Collection<String> leadIds, Lead.Status contactStatus);
+
     public Property addProperty(final String agentId, final String propertyId);
 
 }
@@ -0,0 +1,58 @@
+package edu.searchahouse.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * 
+ * The result of one entity of a bulk request: its position in the request, its primary key and the http code the same request for just that entity would
+ * have returned, with the new version of the entity or the reason it failed.
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonPropertyOrder({ "index", "primaryKey", "status", "version", "message" })
+public class BulkResult {
+
+	private final int index;
+	private final String primaryKey;
+	private final int status;
+	private final Long version;
+	private final String message;
+
+	private BulkResult(int index, String primaryKey, int status, Long version, String message) {
+		this.index = index;
+		this.primaryKey = primaryKey;
+		this.status = status;
+		this.version = version;
+		this.message = message;
+	}
+
+	public static BulkResult done(int index, String primaryKey, int status, Long version) {
+		return new BulkResult(index, primaryKey, status, version, null);
+	}
+
+	public static BulkResult failed(int index, String primaryKey, int status, String message) {
+		return new BulkResult(index, primaryKey, status, null, message);
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String getPrimaryKey() {
+		return primaryKey;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+}
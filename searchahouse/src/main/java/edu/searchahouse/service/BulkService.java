@@ -0,0 +1,31 @@
+package edu.searchahouse.service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import edu.searchahouse.model.BaseEntity;
+
+/**
+ * 
+ * Writes many entities of the same type, a chunk at a time: the entities are read from the iterator as they are written, so a request of any size only
+ * keeps one chunk in memory. The results of a chunk are given to the consumer once the chunk is written and its changes are in the outbox.
+ */
+public interface BulkService {
+
+	/**
+	 * Insert the entities, with the primary key they have or a new one.
+	 */
+	public <E extends BaseEntity> void create(Class<E> type, Iterator<E> entities, Consumer<List<BulkResult>> results);
+
+	/**
+	 * Update the entities by primary key, like {@link LeadService#update} does for one.
+	 */
+	public <E extends BaseEntity> void update(Class<E> type, Iterator<E> entities, Consumer<List<BulkResult>> results);
+
+	/**
+	 * Delete the entities by primary key. An entity with a version is only deleted if it is still that version.
+	 */
+	public <E extends BaseEntity> void delete(Class<E> type, Iterator<E> entities, Consumer<List<BulkResult>> results);
+
+}
@@ -0,0 +1,28 @@
+package edu.searchahouse.service;
+
+import java.util.function.Consumer;
+
+import edu.searchahouse.model.BaseEntity;
+
+/**
+ * 
+ * Reads whole collections for the search engine reindex, in primary key order, so an export that stopped can go on from the last primary key it got.
+ */
+public interface ExportService {
+
+	/**
+	 * @param after
+	 *            count only the entities with a greater primary key, null to count all.
+	 */
+	public long count(Class<? extends BaseEntity> type, String after);
+
+	/**
+	 * 
+	 * Stream the entities to the consumer, in primary key order, with a mongo cursor (not page by page).
+	 * 
+	 * @param after
+	 *            export only the entities with a greater primary key, null to export all.
+	 */
+	public <E extends BaseEntity> void export(Class<E> type, String after, Consumer<E> consumer);
+
+}
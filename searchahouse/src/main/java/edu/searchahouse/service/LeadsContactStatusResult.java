@@ -0,0 +1,31 @@
+package edu.searchahouse.service;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * 
+ * The result of changing the contact status of many leads of an agent: how many leads got the new status, and the ids of the ones that are not leads of the
+ * agent. The leads that already had the status are in neither.
+ */
+@JsonPropertyOrder({ "updated", "notUpdated" })
+public class LeadsContactStatusResult {
+
+	private final int updated;
+	private final Collection<String> notUpdated;
+
+	public LeadsContactStatusResult(int updated, Collection<String> notUpdated) {
+		this.updated = updated;
+		this.notUpdated = notUpdated;
+	}
+
+	public int getUpdated() {
+		return updated;
+	}
+
+	public Collection<String> getNotUpdated() {
+		return notUpdated;
+	}
+
+}
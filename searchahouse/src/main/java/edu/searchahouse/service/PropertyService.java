@@ -14,6 +14,11 @@ public interface PropertyService {
 	public Property save(Property input);
 
 	public Property update(final String propertyId, Property input);
+
+	/**
+	 * Set the location of the property, only if it still has the address of the input: a location found for an old address is a conflict.
+	 */
+	public Property updateLocation(final String propertyId, Property input);
 	
 	public void deleteProperty( final String propertyId );
 
@@ -1,18 +1,31 @@
 package edu.searchahouse.service.impl;
 
-import java.util.Optional;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import com.mongodb.WriteResult;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 
+import edu.searchahouse.aop.EntityChangePublisher;
+import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
+import edu.searchahouse.exceptions.EntityConflictException;
 import edu.searchahouse.exceptions.EntityNotFoundException;
 import edu.searchahouse.exceptions.EntityNotUpdatedException;
 import edu.searchahouse.model.Agent;
@@ -22,10 +35,31 @@ import edu.searchahouse.repository.mongo.AgentRepository;
 import edu.searchahouse.repository.mongo.LeadRepository;
 import edu.searchahouse.repository.mongo.PropertyRepository;
 import edu.searchahouse.service.AgentService;
-
+import edu.searchahouse.service.LeadsContactStatusResult;
+
+//@formatter:off
+/**
+ *
+ * The leads and properties of an agent are referenced, not embedded (see {@link Agent}): adding a lead or a property writes the lead or the property, never
+ * the agent document.
+ *
+ * --- a lead has the id of its agent ("agentId"), a property the ids of its agents ("agentIds", a property can be sold by more than one agent). Both are
+ * --- indexed, the leads and properties of an agent are read a page at a time.
+ * --- a new lead is one upsert by its primary key, adding the same lead again changes nothing: the intake can retry it. A lead of another agent is a
+ * --- conflict (409).
+ * --- the contact status of many leads is two reads and one write, whatever the number of leads. Only the leads that change are written and published.
+ * --- deleting an agent does not touch its leads and properties, the references to it are left dangling (its pages are a 404).
+ *
+ * @author Gustavo Orsi
+ *
+ */
+//@formatter:on
 @Service
 public class AgentServiceImpl extends BaseService implements AgentService {
 
+    // leads per request of updateLeadsContactStatus, an agent's inbox page.
+    static final int MAX_BATCH_SIZE = 1000;
+
     private final AgentRepository agentRepository;
     private final PropertyRepository propertyRepository;
     private final LeadRepository leadRepository;
@@ -35,37 +69,45 @@ public class AgentServiceImpl extends BaseService implements AgentService {
             final AgentRepository agentRepository, //
             final PropertyRepository propertyRepository, //
             final MongoOperations mongoOperations, //
-            final LeadRepository leadRepository //
+            final LeadRepository leadRepository, //
+            final EntityChangePublisher entityChangePublisher //
     ) {
-        super(mongoOperations);
+        super(mongoOperations, entityChangePublisher);
         this.agentRepository = agentRepository;
         this.propertyRepository = propertyRepository;
         this.leadRepository = leadRepository;
     }
 
     @Override
-    public Agent findAgentByPrimaryKey(String id, final boolean lazyNested) {
+    public Agent findAgentByPrimaryKey(String id) {
+        return this.agentRepository.findAgentByPrimaryKey(id).orElseThrow(() -> new EntityNotFoundException("Agent"));
+    }
 
-        Optional<Agent> agent;
+    @Override
+    public Page<Agent> findAgentsByPropertyId(String propertyId, Pageable pageable) {
+
+        Property property = this.propertyRepository.findPropertyByPrimaryKey(propertyId).orElseThrow(() -> new EntityNotFoundException("Property"));
 
-        if (lazyNested) {
-            agent = this.agentRepository.findAgentByPrimaryKeyLazyNestedCollections(id);
-        } else {
-            agent = this.agentRepository.findAgentByPrimaryKey(id);
+        Set<String> agentIds = property.getAgentIds();
+        if (agentIds == null || agentIds.isEmpty()) {
+            return new PageImpl<Agent>(Collections.emptyList(), pageable, 0);
         }
 
-        return agent.orElseThrow(() -> new EntityNotFoundException("Agent"));
+        return this.agentRepository.findAgentsByPrimaryKeyIn(agentIds, pageable);
+    }
+
+    @Override
+    public Page<Lead> findLeadsByAgentId(String agentId, Pageable pageable) {
+        checkAgentExists(agentId);
 
+        return this.leadRepository.findLeadsByAgentId(agentId, pageable);
     }
 
     @Override
-    public Page<Agent> findAgentsByPropertyId(String propertyId, Pageable pageable, final boolean lazyCollections) {
-        if (lazyCollections) {
-            return this.agentRepository.findAgentsByProperty(propertyId, pageable);
-        } else {
-            return this.agentRepository.findAgentsByPropertyIncludeNestedCollections(propertyId, pageable);
-        }
+    public Page<Property> findPropertiesByAgentId(String agentId, Pageable pageable) {
+        checkAgentExists(agentId);
 
+        return this.propertyRepository.findPropertiesByAgentId(agentId, pageable);
     }
 
     @Override
@@ -84,20 +126,78 @@ public class AgentServiceImpl extends BaseService implements AgentService {
     }
 
     @Override
-    public Agent addLead(final String agentId, Lead lead) {
+    public Lead addLead(final String agentId, Lead lead) {
+
+        checkAgentExists(agentId);
+
+        if (lead.getPrimaryKey() == null) {
+            lead.setPrimaryKey(new ObjectId().toString());
+        }
+        lead.setAgentId(agentId);
+        // what spring data sets when it inserts a versioned entity.
+        lead.setVersion(0L);
+
+        Lead existing;
+        try {
+            existing = insertIfMissing(lead);
+        } catch (DuplicateKeyException e) {
+            // the same lead sent twice at the same time, one of the upserts loses the race on the _id and finds the lead now. A duplicate email fails
+            // again.
+            existing = insertIfMissing(lead);
+        }
+
+        if (existing == null) {
+            // inserted, it does not go through a repository so the aspect does not see it.
+            getEntityChangePublisher().saved(lead, CrudOperation.CREATE);
+            return lead;
+        }
 
-        Agent agent = this.agentRepository.findAgentByPrimaryKey(agentId).orElseThrow(() -> new EntityNotFoundException("Agent"));
+        if (agentId.equals(existing.getAgentId())) {
+            // the lead was already added, e.g. the client retried a request that timed out.
+            return existing;
+        }
+
+        if (existing.getAgentId() != null) {
+            throw new EntityConflictException("Lead", "is a lead of another agent.");
+        }
 
-        this.leadRepository.save(lead);
-        agent.addLead(lead);
+        // a lead created on its own, without an agent.
+        Query query = new Query(Criteria.where("_id").is(lead.getPrimaryKey()).and("agentId").exists(false));
+        query.fields().include("version").include("agentId");
+        Update update = new Update().set("agentId", agentId).inc("version", 1);
 
-        return this.update(agentId, agent);
+        Lead assigned = getMongoOperations().findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Lead.class);
+        if (assigned == null) {
+            throw new EntityConflictException("Lead", "is a lead of another agent.");
+        }
+
+        getEntityChangePublisher().updated(assigned, Collections.singletonMap("agentId", agentId));
+
+        return assigned;
+    }
+
+    /**
+     * One round trip: an upsert by the primary key of the lead that only sets the fields when it inserts, an existing lead is left as it is.
+     * 
+     * @return the lead as it was before the upsert, null if it was inserted.
+     */
+    private Lead insertIfMissing(final Lead lead) {
+
+        DBObject document = new BasicDBObject();
+        getMongoOperations().getConverter().write(lead, document);
+        document.removeField("_id");
+
+        Update update = new Update();
+        document.keySet().forEach(field -> update.setOnInsert(field, document.get(field)));
+
+        return getMongoOperations().findAndModify(new Query(Criteria.where("_id").is(lead.getPrimaryKey())), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(false), Lead.class);
     }
 
     @Override
     public void deleteAgent(String agentId) {
 
-        Agent agent = this.findAgentByPrimaryKey(agentId, true);
+        Agent agent = this.findAgentByPrimaryKey(agentId);
 
         this.agentRepository.delete(agent);
     }
@@ -105,42 +205,98 @@ public class AgentServiceImpl extends BaseService implements AgentService {
     @Override
     public Property addProperty(final String agentId, final String propertyId) {
 
-        Agent agent = this.agentRepository.findAgentByPrimaryKey(agentId).orElseThrow(() -> new EntityNotFoundException("Agent"));
-        Property property = this.propertyRepository.findPropertyByPrimaryKey(propertyId).orElseThrow(() -> new EntityNotFoundException("Property"));
+        checkAgentExists(agentId);
 
-        agent.addProperty(property);
+        // $addToSet: assigning the same property twice changes nothing but the version.
+        Query query = new Query(Criteria.where("_id").is(propertyId));
+        query.fields().include("version").include("agentIds");
+        Update update = new Update();
+        update.addToSet("agentIds", agentId);
+        update.inc("version", 1);
+
+        Property updatedProperty = getMongoOperations().findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Property.class);
 
-        this.agentRepository.save(agent);
+        if (updatedProperty == null) {
+            throw new EntityNotFoundException("Property");
+        }
 
-        return property;
+        getEntityChangePublisher().updated(updatedProperty, Collections.singletonMap("agentIds", updatedProperty.getAgentIds()));
+
+        return updatedProperty;
     }
 
     @Override
     public void updateLeadContactStatus(String agentId, String leadId, Lead lead) {
 
-        // update the lead entity
-        Query query = new Query(Criteria.where("_id").is(leadId));
+        // the lead must be one of the agent's.
+        Query query = new Query(Criteria.where("_id").is(leadId).and("agentId").is(agentId));
+        query.fields().include("version");
         Update update = new Update();
         update.set("contactStatus", lead.getContactStatus());
+        update.inc("version", 1);
 
-        WriteResult writeResult = getMongoOperations().updateMulti(query, update, Lead.class);
+        Lead updatedLead = getMongoOperations().findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Lead.class);
 
-        if (writeResult.getN() == 0) {
+        if (updatedLead == null) {
             throw new EntityNotUpdatedException("Lead");
         }
 
-        // update the nested lead entity in agent
-        Query queryNested = new Query(Criteria.where("_id").is(agentId).and("leads._id").is(leadId));
+        getEntityChangePublisher().updated(updatedLead, Collections.singletonMap("contactStatus", lead.getContactStatus()));
+    }
+
+    @Override
+    public LeadsContactStatusResult updateLeadsContactStatus(final String agentId, final Collection<String> leadIds, final Lead.Status contactStatus) {
+
+        if (leadIds.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " leads per request.");
+        }
 
-        Update updateNested = new Update();
-        updateNested.set("leads.0.contactStatus", lead.getContactStatus());
+        checkAgentExists(agentId);
 
-        WriteResult writeResultNested = getMongoOperations().updateMulti(queryNested, updateNested, Agent.class);
+        // the leads of the agent, and which of them change: an event is published only for those.
+        Query leads = new Query(Criteria.where("_id").in(leadIds).and("agentId").is(agentId));
+        leads.fields().include("contactStatus");
 
-        if (writeResultNested.getN() == 0) {
-            throw new EntityNotUpdatedException("Nested Lead");
+        Set<String> notUpdated = new LinkedHashSet<>(leadIds);
+        List<String> changing = new ArrayList<>();
+        for (Lead lead : getMongoOperations().find(leads, Lead.class)) {
+            notUpdated.remove(lead.getPrimaryKey());
+            if (lead.getContactStatus() != contactStatus) {
+                changing.add(lead.getPrimaryKey());
+            }
         }
 
+        if (changing.isEmpty()) {
+            return new LeadsContactStatusResult(0, notUpdated);
+        }
+
+        // one write for all the leads that change, a lead that got the status in between is left as it is.
+        Query query = new Query(Criteria.where("_id").in(changing).and("agentId").is(agentId).and("contactStatus").ne(contactStatus));
+        Update update = new Update();
+        update.set("contactStatus", contactStatus);
+        update.inc("version", 1);
+
+        int updatedCount = getMongoOperations().updateMulti(query, update, Lead.class).getN();
+        if (updatedCount == 0) {
+            return new LeadsContactStatusResult(0, notUpdated);
+        }
+
+        // and one read for their versions: each lead is published with the status and version it has now, a concurrent change of a lead has a newer
+        // version and wins in the search engine.
+        Query updated = new Query(Criteria.where("_id").in(changing).and("agentId").is(agentId));
+        updated.fields().include("version").include("contactStatus");
+
+        for (Lead lead : getMongoOperations().find(updated, Lead.class)) {
+            getEntityChangePublisher().updated(lead, Collections.singletonMap("contactStatus", lead.getContactStatus()));
+        }
+
+        return new LeadsContactStatusResult(updatedCount, notUpdated);
+    }
+
+    private void checkAgentExists(final String agentId) {
+        if (!this.agentRepository.exists(agentId)) {
+            throw new EntityNotFoundException("Agent");
+        }
     }
 
 }
@@ -1,51 +1,180 @@
 package edu.searchahouse.service.impl;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 
-import com.mongodb.WriteResult;
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
 
+import edu.searchahouse.aop.EntityChangePublisher;
+import edu.searchahouse.exceptions.EntityConflictException;
 import edu.searchahouse.exceptions.EntityNotFoundException;
 import edu.searchahouse.model.BaseEntity;
 
+//@formatter:off
+/**
+ *
+ * The updates of the entities write only what changed:
+ *
+ * --- the fields of the input (see {@link BaseEntity#toMap()}, the null ones are left as they are) are compared with the stored document, only the
+ * --- different ones are $set. Inside an object (e.g. the address) the comparison goes down to its fields, the ones missing from the input are $unset.
+ * --- an input without changes writes and publishes nothing.
+ * --- the write is a compare and set on the version that was compared. If the input has a version it must be the stored one, otherwise the update is a
+ * --- conflict (409). Without a version a concurrent write is not lost either: the update compares again with the new document, up to MAX_ATTEMPTS times.
+ * --- the changes are published by top level field (the new address, not its city), the search engine reads the dotted fields as elements of a
+ * --- collection (see EntityWrapperAmqp).
+ *
+ * @author Gustavo Orsi
+ *
+ */
+//@formatter:on
 public abstract class BaseService {
 
+	// the compare and set of an update without a version, before it is a conflict.
+	static final int MAX_ATTEMPTS = 3;
+
 	private final MongoOperations mongoOperations;
+	private final EntityChangePublisher entityChangePublisher;
 
 	@Autowired
-	public BaseService(final MongoOperations mongoOperations) {
+	public BaseService(final MongoOperations mongoOperations, final EntityChangePublisher entityChangePublisher) {
 		this.mongoOperations = mongoOperations;
+		this.entityChangePublisher = entityChangePublisher;
 	}
 
 	protected BaseEntity update(String entityId, BaseEntity inputEntity) {
 
+		Class<? extends BaseEntity> type = inputEntity.getClass();
+		Map<String, Object> input = inputEntity.toMap();
+
+		for (int attempt = 1;; attempt++) {
+
+			DBObject stored = findStored(entityId, type, input);
+			if (stored == null) {
+				throw new EntityNotFoundException(type.getSimpleName());
+			}
+
+			Long storedVersion = version(stored);
+			if (inputEntity.getVersion() != null && !inputEntity.getVersion().equals(storedVersion)) {
+				throw new EntityConflictException(type.getSimpleName(), "was changed, its version is " + storedVersion + ".");
+			}
+
+			Update update = new Update();
+			Map<String, Object> changes = diff(input, stored, update);
+
+			inputEntity.setPrimaryKey(entityId);
+
+			if (changes.isEmpty()) {
+				inputEntity.setVersion(storedVersion);
+				return inputEntity;
+			}
+
+			Query query = new Query(Criteria.where("_id").is(entityId).and("version").is(storedVersion));
+			// we only need the new version back.
+			query.fields().include("version");
+
+			BaseEntity updated = this.mongoOperations.findAndModify(query, update.inc("version", 1), FindAndModifyOptions.options().returnNew(true), type);
+
+			if (updated != null) {
+				// this write does not go through a repository, so the aspect does not see it.
+				this.entityChangePublisher.updated(updated, changes);
+
+				inputEntity.setVersion(updated.getVersion());
+				return inputEntity;
+			}
+
+			if (inputEntity.getVersion() != null || attempt == MAX_ATTEMPTS) {
+				throw new EntityConflictException(type.getSimpleName(), "was changed while it was updated.");
+			}
+			// someone else wrote it (or deleted it) since it was read, compare again.
+		}
+	}
+
+	/**
+	 * @return the fields of the input and the version of the stored entity, null if there is none.
+	 */
+	private DBObject findStored(final String entityId, final Class<? extends BaseEntity> type, final Map<String, Object> input) {
 		Query query = new Query(Criteria.where("_id").is(entityId));
-		Update update = createUpdate(inputEntity);
+		input.keySet().forEach(field -> query.fields().include(field));
+		query.fields().include("version");
 
-		WriteResult writeResult = this.mongoOperations.updateFirst(query, update, inputEntity.getClass());
+		return this.mongoOperations.findOne(query, DBObject.class, this.mongoOperations.getCollectionName(type));
+	}
 
-		if (writeResult.getN() == 0) {
-			throw new EntityNotFoundException( inputEntity.getClass().getSimpleName() );
+	/**
+	 * Adds to the update the paths of the input where the value is not the stored one.
+	 *
+	 * @param input
+	 *            the fields to write, see {@link BaseEntity#toMap()}.
+	 * @param stored
+	 *            the stored document, with at least the fields of the input.
+	 * @return the changed top level fields and their new value, what is published.
+	 */
+	protected Map<String, Object> diff(final Map<String, Object> input, final DBObject stored, final Update update) {
+		Map<String, Object> changes = new LinkedHashMap<String, Object>();
+		input.forEach((field, value) -> {
+			if (diff(field, stored.get(field), this.mongoOperations.getConverter().convertToMongoType(value), update)) {
+				changes.put(field, value);
+			}
+		});
+		return changes;
+	}
+
+	/**
+	 * Adds to the update the paths where the value is not the stored one.
+	 *
+	 * @return true if something changed.
+	 */
+	private static boolean diff(final String path, final Object stored, final Object value, final Update update) {
+
+		if (isObject(stored) && isObject(value)) {
+			DBObject storedObject = (DBObject) stored;
+			DBObject object = (DBObject) value;
+
+			boolean changed = false;
+			for (String field : object.keySet()) {
+				changed |= diff(path + "." + field, storedObject.get(field), object.get(field), update);
+			}
+			for (String field : storedObject.keySet()) {
+				if (!object.containsField(field)) {
+					update.unset(path + "." + field);
+					changed = true;
+				}
+			}
+			return changed;
 		}
 
-		inputEntity.setPrimaryKey(entityId);
+		// the arrays are compared (and written) as a whole.
+		if (Objects.equals(stored, value)) {
+			return false;
+		}
 
-		return inputEntity;
+		update.set(path, value);
+		return true;
 	}
 
-	private Update createUpdate(final BaseEntity entity) {
-		Update update = new Update();
-		
-		entity.toMap().forEach((k, v) -> update.set(k, v));
+	protected static Long version(final DBObject stored) {
+		return stored.get("version") == null ? null : ((Number) stored.get("version")).longValue();
+	}
 
-		return update;
+	private static boolean isObject(final Object value) {
+		return value instanceof DBObject && !(value instanceof BasicDBList);
 	}
 
 	public MongoOperations getMongoOperations() {
 		return mongoOperations;
 	}
 
+	public EntityChangePublisher getEntityChangePublisher() {
+		return entityChangePublisher;
+	}
+
 }
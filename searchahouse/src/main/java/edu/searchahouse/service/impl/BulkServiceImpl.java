@@ -0,0 +1,413 @@
+package edu.searchahouse.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import edu.searchahouse.aop.EntityChangePublisher;
+import edu.searchahouse.aop.EntityWrapperAmqp.CrudOperation;
+import edu.searchahouse.exceptions.EntityConflictException;
+import edu.searchahouse.exceptions.EntityNotFoundException;
+import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.service.BulkResult;
+import edu.searchahouse.service.BulkService;
+
+//@formatter:off
+/**
+ *
+ * The entities of a bulk request are written a chunk ("searchahouse.bulk.chunk-size" entities) at a time:
+ *
+ * --- one unordered bulk write per chunk: mongo applies the writes of the chunk in any order, an entity that fails (e.g. a duplicate email) does not
+ * --- stop the others.
+ * --- the changes of the entities written are added to the outbox with one insert per chunk (see EntityChangePublisher.Batch).
+ * --- the updates and deletes read the stored entities of the chunk with one query and write with a compare and set on the version they read, like
+ * --- BaseService.update. The bulk result only counts the entities written: when an entity was changed in between, the chunk is read again to tell
+ * --- which ones. An update is never written twice:
+ * --- --- the entity has the next version and the values sent: the bulk wrote it.
+ * --- --- the entity has the next version and other values: someone else wrote it first, the bulk did not. The update is done by itself, like the update
+ * --- --- of one entity (compared again, or a 409 if it has a version).
+ * --- --- the entity is newer than that, or was deleted: there is no telling whether the bulk wrote it before the other writes. Nothing is written
+ * --- --- again, the update is a 409 (404 if deleted) and the whole entity as it is now is published with a new version, so the search engine ends up
+ * --- --- with what mongo has either way.
+ */
+//@formatter:on
+@Service
+public class BulkServiceImpl extends BaseService implements BulkService {
+
+	private final int chunkSize;
+
+	private final Validator validator;
+
+	@Autowired
+	public BulkServiceImpl(//
+			final MongoOperations mongoOperations, //
+			final EntityChangePublisher entityChangePublisher, //
+			final Validator validator, //
+			@Value("${searchahouse.bulk.chunk-size:500}") final int chunkSize //
+	) {
+		super(mongoOperations, entityChangePublisher);
+		this.validator = validator;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public <E extends BaseEntity> void create(final Class<E> type, final Iterator<E> entities, final Consumer<List<BulkResult>> results) {
+		forEachChunk(entities, (offset, chunk) -> results.accept(createChunk(type, offset, chunk)));
+	}
+
+	@Override
+	public <E extends BaseEntity> void update(final Class<E> type, final Iterator<E> entities, final Consumer<List<BulkResult>> results) {
+		forEachChunk(entities, (offset, chunk) -> results.accept(updateChunk(type, offset, chunk)));
+	}
+
+	@Override
+	public <E extends BaseEntity> void delete(final Class<E> type, final Iterator<E> entities, final Consumer<List<BulkResult>> results) {
+		forEachChunk(entities, (offset, chunk) -> results.accept(deleteChunk(type, offset, chunk)));
+	}
+
+	private <E extends BaseEntity> List<BulkResult> createChunk(final Class<E> type, final int offset, final List<E> chunk) {
+
+		BulkResult[] results = new BulkResult[chunk.size()];
+
+		BulkWriteOperation bulk = collection(type).initializeUnorderedBulkOperation();
+		// the index in the chunk of every write of the bulk.
+		List<Integer> written = new ArrayList<>();
+
+		for (int i = 0; i < chunk.size(); i++) {
+			E entity = chunk.get(i);
+			if (entity == null) {
+				results[i] = BulkResult.failed(offset + i, null, HttpStatus.BAD_REQUEST.value(), "Not a " + type.getSimpleName() + ".");
+				continue;
+			}
+
+			// the @Valid of the endpoints that create one entity.
+			Set<ConstraintViolation<E>> violations = this.validator.validate(entity);
+			if (!violations.isEmpty()) {
+				results[i] = BulkResult.failed(offset + i, entity.getPrimaryKey(), HttpStatus.BAD_REQUEST.value(), violations.stream()
+						.map(ConstraintViolation::getMessage).collect(Collectors.toList()).toString());
+				continue;
+			}
+
+			if (entity.getPrimaryKey() == null) {
+				entity.setPrimaryKey(new ObjectId().toString());
+			}
+			// what spring data sets when it inserts a versioned entity.
+			entity.setVersion(0L);
+
+			DBObject document = new BasicDBObject();
+			getMongoOperations().getConverter().write(entity, document);
+			bulk.insert(document);
+			written.add(i);
+		}
+
+		Map<Integer, String> errors = new HashMap<>();
+		execute(bulk, written.size(), errors);
+
+		EntityChangePublisher.Batch changes = getEntityChangePublisher().batch();
+		for (int write = 0; write < written.size(); write++) {
+			int i = written.get(write);
+			E entity = chunk.get(i);
+
+			if (errors.containsKey(write)) {
+				results[i] = BulkResult.failed(offset + i, entity.getPrimaryKey(), HttpStatus.BAD_REQUEST.value(), errors.get(write));
+			} else {
+				changes.saved(entity, CrudOperation.CREATE);
+				results[i] = BulkResult.done(offset + i, entity.getPrimaryKey(), HttpStatus.CREATED.value(), entity.getVersion());
+			}
+		}
+		changes.publish();
+
+		return Arrays.asList(results);
+	}
+
+	private <E extends BaseEntity> List<BulkResult> updateChunk(final Class<E> type, final int offset, final List<E> chunk) {
+
+		BulkResult[] results = new BulkResult[chunk.size()];
+
+		Set<String> fields = new LinkedHashSet<>();
+		chunk.stream().filter(entity -> entity != null).forEach(entity -> fields.addAll(entity.toMap().keySet()));
+		Map<String, DBObject> stored = findStored(type, chunk, fields);
+
+		BulkWriteOperation bulk = collection(type).initializeUnorderedBulkOperation();
+		List<Integer> written = new ArrayList<>();
+		List<Map<String, Object>> writtenChanges = new ArrayList<>();
+
+		for (int i = 0; i < chunk.size(); i++) {
+			E entity = chunk.get(i);
+			BulkResult invalid = check(type, offset + i, entity, stored);
+			if (invalid != null) {
+				results[i] = invalid;
+				continue;
+			}
+
+			DBObject document = stored.get(entity.getPrimaryKey());
+			Update update = new Update();
+			Map<String, Object> changes = diff(entity.toMap(), document, update);
+
+			if (changes.isEmpty()) {
+				results[i] = BulkResult.done(offset + i, entity.getPrimaryKey(), HttpStatus.NO_CONTENT.value(), version(document));
+				continue;
+			}
+
+			bulk.find(new BasicDBObject("_id", document.get("_id")).append("version", version(document))) //
+					.updateOne(update.inc("version", 1).getUpdateObject());
+			written.add(i);
+			writtenChanges.add(changes);
+		}
+
+		Map<Integer, String> errors = new HashMap<>();
+		BulkWriteResult result = execute(bulk, written.size(), errors);
+
+		// every write found its entity with the version it was compared with, otherwise read the entities again to tell which ones were written.
+		Map<String, DBObject> after = result == null || result.getMatchedCount() == written.size() - errors.size() ? null : findStored(type,
+				written.stream().map(chunk::get).collect(Collectors.toList()), fields);
+
+		EntityChangePublisher.Batch changes = getEntityChangePublisher().batch();
+		for (int write = 0; write < written.size(); write++) {
+			int i = written.get(write);
+			E entity = chunk.get(i);
+
+			if (errors.containsKey(write)) {
+				results[i] = BulkResult.failed(offset + i, entity.getPrimaryKey(), HttpStatus.BAD_REQUEST.value(), errors.get(write));
+				continue;
+			}
+
+			Long compared = version(stored.get(entity.getPrimaryKey()));
+			// $inc of a missing version (an entity saved before it was versioned) sets it to 1.
+			Long version = compared == null ? 1L : compared + 1;
+
+			if (after != null) {
+				DBObject document = after.get(entity.getPrimaryKey());
+				if (document == null || !version.equals(version(document))) {
+					// written by the bulk or not, other writes came after it.
+					results[i] = changedMeanwhile(type, offset + i, entity);
+					continue;
+				}
+				if (!diff(entity.toMap(), document, new Update()).isEmpty()) {
+					// the only write since the entity was read is someone else's, the bulk did not write it.
+					results[i] = updateOne(type, offset + i, entity);
+					continue;
+				}
+				// the next version with the values sent: written by this bulk (or the same change by someone else, publishing it again is harmless).
+			}
+
+			entity.setVersion(version);
+			changes.updated(entity, writtenChanges.get(write));
+			results[i] = BulkResult.done(offset + i, entity.getPrimaryKey(), HttpStatus.NO_CONTENT.value(), version);
+		}
+		changes.publish();
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * An update the bulk could not write, done like the update of one entity (a 409 if the entity has a version, otherwise compared again).
+	 */
+	private BulkResult updateOne(final Class<? extends BaseEntity> type, final int index, final BaseEntity entity) {
+		String primaryKey = entity.getPrimaryKey();
+		try {
+			return BulkResult.done(index, primaryKey, HttpStatus.NO_CONTENT.value(), update(primaryKey, entity).getVersion());
+		} catch (EntityNotFoundException e) {
+			return BulkResult.failed(index, primaryKey, HttpStatus.NOT_FOUND.value(), e.getMessage());
+		} catch (EntityConflictException e) {
+			return BulkResult.failed(index, primaryKey, HttpStatus.CONFLICT.value(), e.getMessage());
+		} catch (DuplicateKeyException e) {
+			return BulkResult.failed(index, primaryKey, HttpStatus.BAD_REQUEST.value(), e.getMostSpecificCause().getMessage());
+		}
+	}
+
+	/**
+	 * An update the bulk may have written, but the entity was written again (or deleted) since: it is not written again. The whole entity is published as
+	 * it is now, with a new version (a compare and set that only increments it), so the search engine has every write whatever order they had.
+	 */
+	private BulkResult changedMeanwhile(final Class<? extends BaseEntity> type, final int index, final BaseEntity entity) {
+		String primaryKey = entity.getPrimaryKey();
+
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			Query query = new Query(Criteria.where("_id").is(primaryKey));
+			query.fields().include("version");
+			DBObject current = getMongoOperations().findOne(query, DBObject.class, getMongoOperations().getCollectionName(type));
+			if (current == null) {
+				// the delete is published by whoever deleted it.
+				return BulkResult.failed(index, primaryKey, HttpStatus.NOT_FOUND.value(), type.getSimpleName() + " was deleted while it was updated.");
+			}
+
+			BaseEntity republished = getMongoOperations().findAndModify(
+					new Query(Criteria.where("_id").is(primaryKey).and("version").is(version(current))), new Update().inc("version", 1),
+					FindAndModifyOptions.options().returnNew(true), type);
+			if (republished != null) {
+				getEntityChangePublisher().saved(republished, CrudOperation.UPDATE);
+				break;
+			}
+			// written again in between, its publication only has its own changes: try again.
+		}
+
+		return BulkResult.failed(index, primaryKey, HttpStatus.CONFLICT.value(), new EntityConflictException(type.getSimpleName(),
+				"was changed by someone else while it was updated, read it again to see what it has.").getMessage());
+	}
+
+	private <E extends BaseEntity> List<BulkResult> deleteChunk(final Class<E> type, final int offset, final List<E> chunk) {
+
+		BulkResult[] results = new BulkResult[chunk.size()];
+
+		Map<String, DBObject> stored = findStored(type, chunk, Collections.emptySet());
+
+		BulkWriteOperation bulk = collection(type).initializeUnorderedBulkOperation();
+		List<Integer> written = new ArrayList<>();
+
+		for (int i = 0; i < chunk.size(); i++) {
+			E entity = chunk.get(i);
+			BulkResult invalid = check(type, offset + i, entity, stored);
+			if (invalid != null) {
+				results[i] = invalid;
+				continue;
+			}
+
+			DBObject document = stored.get(entity.getPrimaryKey());
+			bulk.find(new BasicDBObject("_id", document.get("_id")).append("version", version(document))).removeOne();
+			written.add(i);
+		}
+
+		Map<Integer, String> errors = new HashMap<>();
+		BulkWriteResult result = execute(bulk, written.size(), errors);
+
+		// the entities still there were changed in between.
+		Set<String> remaining = result == null || result.getRemovedCount() == written.size() - errors.size() ? Collections.emptySet() : findStored(type,
+				written.stream().map(chunk::get).collect(Collectors.toList()), Collections.emptySet()).keySet();
+
+		EntityChangePublisher.Batch changes = getEntityChangePublisher().batch();
+		for (int write = 0; write < written.size(); write++) {
+			int i = written.get(write);
+			E entity = chunk.get(i);
+
+			if (errors.containsKey(write)) {
+				results[i] = BulkResult.failed(offset + i, entity.getPrimaryKey(), HttpStatus.BAD_REQUEST.value(), errors.get(write));
+			} else if (remaining.contains(entity.getPrimaryKey())) {
+				results[i] = BulkResult.failed(offset + i, entity.getPrimaryKey(), HttpStatus.CONFLICT.value(), type.getSimpleName()
+						+ " was changed while it was deleted.");
+			} else {
+				entity.setVersion(version(stored.get(entity.getPrimaryKey())));
+				changes.deleted(entity);
+				results[i] = BulkResult.done(offset + i, entity.getPrimaryKey(), HttpStatus.NO_CONTENT.value(), entity.getVersion());
+			}
+		}
+		changes.publish();
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * @return why the entity can not be updated or deleted, null if it can.
+	 */
+	private static BulkResult check(final Class<? extends BaseEntity> type, final int index, final BaseEntity entity, final Map<String, DBObject> stored) {
+
+		if (entity == null || entity.getPrimaryKey() == null) {
+			return BulkResult.failed(index, null, HttpStatus.BAD_REQUEST.value(), "A " + type.getSimpleName() + " without primary key.");
+		}
+
+		DBObject document = stored.get(entity.getPrimaryKey());
+		if (document == null) {
+			return BulkResult.failed(index, entity.getPrimaryKey(), HttpStatus.NOT_FOUND.value(), new EntityNotFoundException(type.getSimpleName())
+					.getMessage());
+		}
+
+		if (entity.getVersion() != null && !entity.getVersion().equals(version(document))) {
+			return BulkResult.failed(index, entity.getPrimaryKey(), HttpStatus.CONFLICT.value(), new EntityConflictException(type.getSimpleName(),
+					"was changed, its version is " + version(document) + ".").getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * One query for the stored entities.
+	 *
+	 * @return the fields and the version of the entities that exist, by primary key.
+	 */
+	private Map<String, DBObject> findStored(final Class<? extends BaseEntity> type, final Collection<? extends BaseEntity> entities,
+			final Set<String> fields) {
+
+		List<String> primaryKeys = entities.stream().filter(entity -> entity != null && entity.getPrimaryKey() != null).map(BaseEntity::getPrimaryKey)
+				.collect(Collectors.toList());
+
+		Query query = new Query(Criteria.where("_id").in(primaryKeys));
+		fields.forEach(field -> query.fields().include(field));
+		query.fields().include("version");
+
+		Map<String, DBObject> stored = new HashMap<>();
+		getMongoOperations().find(query, DBObject.class, getMongoOperations().getCollectionName(type)).forEach(
+				document -> stored.put(String.valueOf(document.get("_id")), document));
+		return stored;
+	}
+
+	/**
+	 * @return the result of the bulk, null if there was nothing to write.
+	 */
+	private static BulkWriteResult execute(final BulkWriteOperation bulk, final int writes, final Map<Integer, String> errors) {
+		if (writes == 0) {
+			return null;
+		}
+		try {
+			return bulk.execute();
+		} catch (BulkWriteException e) {
+			if (e.getWriteConcernError() != null) {
+				throw e;
+			}
+			// the writes that failed, by their index in the bulk. The others were written.
+			e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+			return e.getWriteResult();
+		}
+	}
+
+	/**
+	 * Reads the entities a chunk at a time, only one chunk is in memory.
+	 */
+	private <E> void forEachChunk(final Iterator<E> entities, final BiConsumer<Integer, List<E>> write) {
+		int offset = 0;
+		while (entities.hasNext()) {
+			List<E> chunk = new ArrayList<>(this.chunkSize);
+			while (chunk.size() < this.chunkSize && entities.hasNext()) {
+				chunk.add(entities.next());
+			}
+			write.accept(offset, chunk);
+			offset += chunk.size();
+		}
+	}
+
+	private DBCollection collection(final Class<? extends BaseEntity> type) {
+		return getMongoOperations().getCollection(getMongoOperations().getCollectionName(type));
+	}
+
+}
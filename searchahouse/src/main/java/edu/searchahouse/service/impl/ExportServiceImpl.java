@@ -0,0 +1,72 @@
+package edu.searchahouse.service.impl;
+
+import java.util.function.Consumer;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import edu.searchahouse.model.BaseEntity;
+import edu.searchahouse.service.ExportService;
+
+@Service
+public class ExportServiceImpl implements ExportService {
+
+	private final MongoOperations mongoOperations;
+
+	private final int batchSize;
+
+	@Autowired
+	public ExportServiceImpl(//
+			final MongoOperations mongoOperations, //
+			@Value("${searchahouse.export.batch-size:1000}") final int batchSize //
+	) {
+		this.mongoOperations = mongoOperations;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public long count(final Class<? extends BaseEntity> type, final String after) {
+		return collection(type).count(query(after));
+	}
+
+	@Override
+	public <E extends BaseEntity> void export(final Class<E> type, final String after, final Consumer<E> consumer) {
+
+		DBCursor cursor = collection(type).find(query(after)) //
+				.sort(new BasicDBObject("_id", 1)) //
+				.batchSize(this.batchSize) //
+				// a big collection takes longer than the cursor timeout, the cursor is always closed below.
+				.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+
+		try {
+			while (cursor.hasNext()) {
+				consumer.accept(this.mongoOperations.getConverter().read(type, cursor.next()));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private DBCollection collection(final Class<? extends BaseEntity> type) {
+		return this.mongoOperations.getCollection(this.mongoOperations.getCollectionName(type));
+	}
+
+	private static DBObject query(final String after) {
+		if (after == null) {
+			return new BasicDBObject();
+		}
+		// the ids generated by mongo are stored as ObjectId, the ones set by hand as strings.
+		Object id = ObjectId.isValid(after) ? new ObjectId(after) : after;
+		return new BasicDBObject("_id", new BasicDBObject("$gt", id));
+	}
+
+}
@@ -6,6 +6,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.stereotype.Service;
 
+import edu.searchahouse.aop.EntityChangePublisher;
 import edu.searchahouse.exceptions.EntityNotFoundException;
 import edu.searchahouse.model.Lead;
 import edu.searchahouse.repository.mongo.LeadRepository;
@@ -19,9 +20,10 @@ public class LeadServiceImpl extends BaseService implements LeadService {
 	@Autowired
 	public LeadServiceImpl(//
 			final LeadRepository leadRepository, //
-			final MongoOperations mongoOperations//
+			final MongoOperations mongoOperations, //
+			final EntityChangePublisher entityChangePublisher //
 	) {
-		super(mongoOperations);
+		super(mongoOperations, entityChangePublisher);
 		this.leadRepository = leadRepository;
 	}
 
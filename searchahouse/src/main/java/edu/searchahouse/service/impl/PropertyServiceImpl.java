@@ -1,12 +1,24 @@
 package edu.searchahouse.service.impl;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.DBObject;
+
+import edu.searchahouse.aop.EntityChangePublisher;
+import edu.searchahouse.exceptions.EntityConflictException;
 import edu.searchahouse.exceptions.EntityNotFoundException;
+import edu.searchahouse.model.Address;
 import edu.searchahouse.model.Property;
 import edu.searchahouse.repository.mongo.PropertyRepository;
 import edu.searchahouse.service.PropertyService;
@@ -19,9 +31,10 @@ public class PropertyServiceImpl extends BaseService implements PropertyService
 	@Autowired
 	public PropertyServiceImpl(//
 			final PropertyRepository propertyRepository, //
-			final MongoOperations mongoOperations //
+			final MongoOperations mongoOperations, //
+			final EntityChangePublisher entityChangePublisher //
 	) {
-		super(mongoOperations);
+		super(mongoOperations, entityChangePublisher);
 		this.propertyRepository = propertyRepository;
 	}
 
@@ -45,6 +58,45 @@ public class PropertyServiceImpl extends BaseService implements PropertyService
 		return (Property) super.update(propertyId, input);
 	}
 
+	@Override
+	public Property updateLocation(String propertyId, Property input) {
+
+		Address address = input.getAddress() != null ? input.getAddress() : new Address();
+
+		// the missing fields of the address match the missing (or null) ones of the stored address.
+		Query query = new Query(Criteria.where("_id").is(propertyId) //
+				.and("address.state").is(address.getState()) //
+				.and("address.city").is(address.getCity()) //
+				.and("address.street").is(address.getStreet()));
+		// we only need the new version back.
+		query.fields().include("version");
+
+		Update update = input.getLocation() != null ? new Update().set("location", input.getLocation()) : new Update().unset("location");
+
+		Property updated = getMongoOperations().findAndModify(query, update.inc("version", 1), FindAndModifyOptions.options().returnNew(true), Property.class);
+		if (updated == null) {
+			// 404 if there is no such property.
+			this.findPropertyByPrimaryKey(propertyId);
+			throw new EntityConflictException("Property", "has another address now.");
+		}
+
+		// a new version, so the search engine (and the ETags) see the location as any other change.
+		getEntityChangePublisher().updated(updated, Collections.singletonMap("location", input.getLocation()));
+
+		updated.setLocation(input.getLocation());
+		return updated;
+	}
+
+	@Override
+	protected Map<String, Object> diff(final Map<String, Object> input, final DBObject stored, final Update update) {
+		Map<String, Object> changes = super.diff(input, stored, update);
+		if (changes.containsKey("address")) {
+			// the location is the one of the old address. Not published: the search engine locates the new address and writes it back (see updateLocation).
+			update.unset("location");
+		}
+		return changes;
+	}
+
 	@Override
 	public void deleteProperty(String propertyId) {
 		
@@ -6,21 +6,31 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.UUID;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.hateoas.MediaTypes;
 import org.springframework.http.MediaType;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import edu.searchahouse.migration.EmbeddedCollectionsMigration;
 import edu.searchahouse.model.Agent;
 import edu.searchahouse.model.Lead;
 import edu.searchahouse.model.Property;
@@ -31,6 +41,12 @@ public class AgentRestEndpointTest extends AbstractRestEndpointTest {
     private Property aProperty;
     private Lead aLead;
 
+    @Autowired
+    private MongoOperations mongoOperations;
+
+    @Autowired
+    private EmbeddedCollectionsMigration embeddedCollectionsMigration;
+
     @Before
     public void agentsForTest() {
         super.createLeadsForTest();
@@ -49,7 +65,9 @@ public class AgentRestEndpointTest extends AbstractRestEndpointTest {
 			.andExpect( status().isOk() )
 			.andExpect( content().contentType( MediaTypes.HAL_JSON ) )
 			.andExpect( jsonPath( "$.firstName", containsString("Agent1") ) )
-			.andExpect( jsonPath( "$._links.self.href", endsWith("/agent/" + anAgent.getPrimaryKey() + "?lazy=false") ) );
+			.andExpect( jsonPath( "$._links.self.href", endsWith("/agent/" + anAgent.getPrimaryKey()) ) )
+			.andExpect( jsonPath( "$._links.leads.href", endsWith("/agent/" + anAgent.getPrimaryKey() + "/leads") ) )
+			.andExpect( jsonPath( "$._links.properties.href", endsWith("/agent/" + anAgent.getPrimaryKey() + "/properties") ) );
 		//@formatter:on
     }
 
@@ -82,12 +100,9 @@ public class AgentRestEndpointTest extends AbstractRestEndpointTest {
     @Test
     public void getAgentsByProperty_shouldReturn_two_agents_and_200_ok_httpcode() throws Exception {
         
-        anAgent.addProperty(aProperty);
-        this.agentRepository.save(anAgent);
-        
         Agent anAgent2 = agentRepository.findAgentByEmail("2agent@example.com").get();
-        anAgent2.addProperty(aProperty);
-        this.agentRepository.save(anAgent2);
+        aProperty.setAgentIds(new HashSet<>(Arrays.asList(anAgent.getPrimaryKey(), anAgent2.getPrimaryKey())));
+        this.propertyRepository.save(aProperty);
 
         //@formatter:off
         mockMvc.perform(get( "/api/v1/agent/property/" + aProperty.getPrimaryKey() ))
@@ -181,11 +196,119 @@ public class AgentRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
     }
 
+    @Test
+    public void addProperty_shouldAdd_the_agent_to_the_property_once() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/agent/" +  anAgent.getPrimaryKey() + "/property/" + aProperty.getPrimaryKey() ))
+			.andExpect( status().isNoContent() );
+		mockMvc.perform(put( "/api/v1/agent/" +  anAgent.getPrimaryKey() + "/property/" + aProperty.getPrimaryKey() ))
+			.andExpect( status().isNoContent() );
+
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/properties" ))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType(MediaTypes.HAL_JSON) )
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].name", containsString("Property1") ) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].agentIds", hasSize(1)) );
+		//@formatter:on
+    }
+
+    @Test
+    public void addLead_shouldReturn_201_created_and_the_lead_in_the_leads_of_the_agent() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(post( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"firstName\":\"New lead\",\"lastName\":\"last name\",\"email\":\"newlead@example.com\"}" ))
+			.andExpect( status().isCreated() )
+			.andExpect( header().string("Location", containsString("/lead/")) );
+
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" ).param("size", "1"))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType(MediaTypes.HAL_JSON) )
+			.andExpect( jsonPath( "$._embedded.leadList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.leadList[0].firstName", containsString("New lead") ) )
+			.andExpect( jsonPath( "$.page.totalElements", is(1)) );
+		//@formatter:on
+    }
+
+    @Test
+    public void addLead_twice_shouldAdd_the_lead_once() throws Exception {
+
+        String lead = "{\"primaryKey\":\"" + UUID.randomUUID() + "\",\"firstName\":\"New lead\",\"email\":\"newlead@example.com\"}";
+
+        //@formatter:off
+		mockMvc.perform(post( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( lead ))
+			.andExpect( status().isCreated() );
+		mockMvc.perform(post( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( lead ))
+			.andExpect( status().isCreated() );
+
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" ))
+			.andExpect( jsonPath( "$._embedded.leadList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.leadList[0].version", is(0)) );
+		//@formatter:on
+    }
+
+    @Test
+    public void addLead_of_another_agent_shouldReturn_409_conflict_httpcode() throws Exception {
+
+        Agent anAgent2 = agentRepository.findAgentByEmail("2agent@example.com").get();
+        aLead.setAgentId(anAgent2.getPrimaryKey());
+        leadRepository.save(aLead);
+
+        //@formatter:off
+		mockMvc.perform(post( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "{\"primaryKey\":\"" + aLead.getPrimaryKey() + "\",\"firstName\":\"Lead1\"}" ))
+			.andExpect( status().isConflict() )
+			.andExpect( jsonPath( "$[0].message", not( isEmptyString() ) ) );
+		//@formatter:on
+    }
+
+    @Test
+    public void getLeads_of_a_missing_agent_shouldReturn_404_notfound_httpcode() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(get( "/api/v1/agent/000000000000000000000000/leads" ))
+			.andExpect( status().isNotFound() );
+		//@formatter:on
+    }
+
+    @Test
+    public void migration_shouldMove_the_embedded_leads_and_properties_of_an_agent() throws Exception {
+
+        DBObject embeddedLead = new BasicDBObject("_id", aLead.getPrimaryKey()).append("firstName", aLead.getFirstName());
+        DBObject embeddedProperty = new BasicDBObject("_id", aProperty.getPrimaryKey()).append("name", aProperty.getName());
+        mongoOperations.getCollection(mongoOperations.getCollectionName(Agent.class)).update( //
+                new BasicDBObject("_id", anAgent.getPrimaryKey()), //
+                new BasicDBObject("$set", new BasicDBObject("leads", Arrays.asList(embeddedLead)).append("properties", Arrays.asList(embeddedProperty))));
+
+        embeddedCollectionsMigration.migrate();
+        // a second run finds nothing to migrate.
+        assertEquals(0, embeddedCollectionsMigration.migrate());
+
+        //@formatter:off
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" ))
+			.andExpect( jsonPath( "$._embedded.leadList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.leadList[0].email", is(aLead.getEmail())) );
+
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/properties" ))
+			.andExpect( jsonPath( "$._embedded.propertyList", hasSize(1)) )
+			.andExpect( jsonPath( "$._embedded.propertyList[0].name", is(aProperty.getName())) );
+		//@formatter:on
+    }
+
     @Test
     public void change_lead_contactedStatus_shouldReturn_204_nocontent_httpcode() throws Exception {
 
-        anAgent.addLead(aLead);
-        agentRepository.save(anAgent);
+        aLead.setAgentId(anAgent.getPrimaryKey());
+        leadRepository.save(aLead);
 
         //@formatter:off
 		mockMvc.perform(put( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/lead/" + aLead.getPrimaryKey() )
@@ -196,6 +319,65 @@ public class AgentRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
     }
 
+    @Test
+    public void change_leads_contactedStatus_shouldUpdate_the_leads_of_the_agent_and_200_ok_httpcode() throws Exception {
+
+        Lead aLead2 = leadRepository.findLeadByEmail("2lead@example.com").get();
+        for (Lead lead : Arrays.asList(aLead, aLead2)) {
+            lead.setAgentId(anAgent.getPrimaryKey());
+            leadRepository.save(lead);
+        }
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" )
+				.param("contactStatus", "CONTACTED")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[\"" + aLead.getPrimaryKey() + "\",\"" + aLead2.getPrimaryKey() + "\",\"not-a-lead\"]" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.updated", is(2)) )
+			.andExpect( jsonPath( "$.notUpdated", hasSize(1)) )
+			.andExpect( jsonPath( "$.notUpdated[0]", is("not-a-lead")) );
+
+		mockMvc.perform(get( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" ))
+			.andExpect( jsonPath( "$._embedded.leadList[0].contactStatus", is("CONTACTED")) )
+			.andExpect( jsonPath( "$._embedded.leadList[1].contactStatus", is("CONTACTED")) );
+		//@formatter:on
+    }
+
+    @Test
+    public void change_leads_contactedStatus_shouldNotCount_the_leads_that_already_have_the_status() throws Exception {
+
+        Lead aLead2 = leadRepository.findLeadByEmail("2lead@example.com").get();
+        aLead.setAgentId(anAgent.getPrimaryKey());
+        aLead.setContactStatus(Lead.Status.CONTACTED);
+        leadRepository.save(aLead);
+        aLead2.setAgentId(anAgent.getPrimaryKey());
+        leadRepository.save(aLead2);
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/agent/" + anAgent.getPrimaryKey() + "/leads" )
+				.param("contactStatus", "CONTACTED")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[\"" + aLead.getPrimaryKey() + "\",\"" + aLead2.getPrimaryKey() + "\"]" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.updated", is(1)) )
+			.andExpect( jsonPath( "$.notUpdated", hasSize(0)) );
+		//@formatter:on
+    }
+
+    @Test
+    public void change_leads_contactedStatus_of_a_missing_agent_shouldReturn_404_notfound_httpcode() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/agent/000000000000000000000000/leads" )
+				.param("contactStatus", "CONTACTED")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[\"" + aLead.getPrimaryKey() + "\"]" ))
+			.andExpect( status().isNotFound() )
+			.andExpect( jsonPath( "$[0].message", not( isEmptyString() ) ) );
+		//@formatter:on
+    }
+
     @Test
     public void change_lead_contactedStatus_shouldReturn_400_badrequest_httpcode() throws Exception {
 
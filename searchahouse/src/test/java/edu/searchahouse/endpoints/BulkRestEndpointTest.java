@@ -0,0 +1,133 @@
+package edu.searchahouse.endpoints;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import edu.searchahouse.model.Lead;
+
+public class BulkRestEndpointTest extends AbstractRestEndpointTest {
+
+	private Lead aLead;
+	private Lead anotherLead;
+
+	@Before
+	public void leadsForTest() {
+		super.createLeadsForTest();
+
+		aLead = leadRepository.findLeadByEmail("1lead@example.com").get();
+		anotherLead = leadRepository.findLeadByEmail("2lead@example.com").get();
+	}
+
+	@Test
+	public void createLeads_shouldReturn_one_result_per_lead_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(post( "/api/v1/bulk/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[{\"firstName\":\"Lead3\",\"lastName\":\"last name 3\",\"email\":\"3lead@example.com\"},"
+						+ "{\"firstName\":\"Lead4\",\"lastName\":\"last name 4\",\"email\":\"1lead@example.com\"}]" ))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON) )
+			.andExpect( jsonPath( "$", hasSize(2) ) )
+			.andExpect( jsonPath( "$[0].index", is(0) ) )
+			.andExpect( jsonPath( "$[0].status", is(201) ) )
+			.andExpect( jsonPath( "$[0].version", is(0) ) )
+			.andExpect( jsonPath( "$[1].index", is(1) ) )
+			.andExpect( jsonPath( "$[1].status", is(400) ) )
+			.andExpect( jsonPath( "$[1].message", containsString("duplicate key") ) );
+		//@formatter:on
+
+		assertEquals(3, leadRepository.count());
+	}
+
+	@Test
+	public void createLeads_as_ndjson_shouldReturn_one_line_per_lead() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(post( "/api/v1/bulk/lead" )
+				.contentType(ExportRestEndpoint.NDJSON)
+				.content( "{\"firstName\":\"Lead3\",\"lastName\":\"last name 3\",\"email\":\"3lead@example.com\"}\n"
+						+ "{\"firstName\":\"Lead4\",\"lastName\":\"last name 4\",\"email\":\"4lead@example.com\"}\n" ))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType( ExportRestEndpoint.NDJSON + ";charset=UTF-8" ) )
+			.andExpect( content().string( containsString("{\"index\":0,") ) )
+			.andExpect( content().string( containsString("{\"index\":1,") ) );
+		//@formatter:on
+
+		assertEquals(4, leadRepository.count());
+	}
+
+	@Test
+	public void createLeads_with_invalid_json_shouldCreate_the_leads_before_it() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(post( "/api/v1/bulk/lead" )
+				.contentType(ExportRestEndpoint.NDJSON)
+				.content( "{\"firstName\":\"Lead3\",\"lastName\":\"last name 3\",\"email\":\"3lead@example.com\"}\n"
+						+ "{\"firstName\":\n" ))
+			.andExpect( status().isOk() )
+			.andExpect( content().string( containsString("{\"index\":0,") ) )
+			.andExpect( content().string( containsString("{\"index\":1,\"status\":400,") ) );
+		//@formatter:on
+
+		assertEquals(3, leadRepository.count());
+	}
+
+	@Test
+	public void updateLeads_shouldUpdate_the_leads_with_the_current_version() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(put( "/api/v1/bulk/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[{\"primaryKey\":\"" + aLead.getPrimaryKey() + "\",\"firstName\":\"updated first name\"},"
+						+ "{\"primaryKey\":\"" + anotherLead.getPrimaryKey() + "\",\"firstName\":\"updated first name\",\"version\":" + (anotherLead.getVersion() - 1) + "},"
+						+ "{\"primaryKey\":\"unknown\",\"firstName\":\"updated first name\"}]" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$[0].status", is(204) ) )
+			.andExpect( jsonPath( "$[1].status", is(409) ) )
+			.andExpect( jsonPath( "$[2].status", is(404) ) );
+		//@formatter:on
+
+		assertEquals("updated first name", leadRepository.findOne(aLead.getPrimaryKey()).getFirstName());
+		assertEquals("Lead2", leadRepository.findOne(anotherLead.getPrimaryKey()).getFirstName());
+	}
+
+	@Test
+	public void deleteLeads_shouldDelete_the_leads_that_exist() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(delete( "/api/v1/bulk/lead" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[{\"primaryKey\":\"" + aLead.getPrimaryKey() + "\"},{\"primaryKey\":\"unknown\"}]" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$[0].status", is(204) ) )
+			.andExpect( jsonPath( "$[1].status", is(404) ) );
+		//@formatter:on
+
+		assertEquals(1, leadRepository.count());
+	}
+
+	@Test
+	public void bulkUnknownEntity_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(post( "/api/v1/bulk/house" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.content( "[]" ))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,73 @@
+package edu.searchahouse.endpoints;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import edu.searchahouse.model.Lead;
+
+public class ExportRestEndpointTest extends AbstractRestEndpointTest {
+
+	private List<Lead> leads;
+
+	@Before
+	public void leadsForTest() {
+		super.createLeadsForTest();
+
+		leads = leadRepository.findAll(new Sort("primaryKey"));
+	}
+
+	@Test
+	public void exportLeads_shouldReturn_one_line_per_lead_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/export/lead" ))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType( ExportRestEndpoint.NDJSON + ";charset=UTF-8" ) )
+			.andExpect( content().string( containsString("\"primaryKey\":\"" + leads.get(0).getPrimaryKey() + "\"") ) )
+			.andExpect( content().string( containsString("\"primaryKey\":\"" + leads.get(1).getPrimaryKey() + "\"") ) )
+			.andExpect( content().string( containsString("\"crudOperation\":\"CREATE\"") ) );
+		//@formatter:on
+	}
+
+	@Test
+	public void exportLeads_after_first_lead_shouldReturn_only_the_second_lead() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/export/lead" ).param("after", leads.get(0).getPrimaryKey()))
+			.andExpect( status().isOk() )
+			.andExpect( content().string( not( containsString(leads.get(0).getPrimaryKey()) ) ) )
+			.andExpect( content().string( containsString(leads.get(1).getPrimaryKey()) ) );
+		//@formatter:on
+	}
+
+	@Test
+	public void countLeads_shouldReturn_two_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/export/lead/count" ))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.count", is(2) ) );
+		//@formatter:on
+	}
+
+	@Test
+	public void exportUnknownEntity_shouldReturn_400_badrequest_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/export/house" ))
+			.andExpect( status().isBadRequest() );
+		//@formatter:on
+	}
+
+}
@@ -6,10 +6,12 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -43,6 +45,38 @@ public class LeadRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
 	}
 
+	@Test
+	public void getLead_shouldReturn_the_etag_of_the_lead_version() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/lead/" + aLead.getPrimaryKey() ))
+			.andExpect( status().isOk() )
+			.andExpect( header().string("ETag", "\"" + aLead.getPrimaryKey() + "-" + aLead.getVersion() + "\"") );
+		//@formatter:on
+	}
+
+	@Test
+	public void getLead_with_the_current_etag_shouldReturn_304_notmodified_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/lead/" + aLead.getPrimaryKey() )
+				.header("If-None-Match", "\"" + aLead.getPrimaryKey() + "-" + aLead.getVersion() + "\""))
+			.andExpect( status().isNotModified() )
+			.andExpect( content().string(isEmptyString()) );
+		//@formatter:on
+	}
+
+	@Test
+	public void getLead_with_an_old_etag_shouldReturn_lead_and_200_ok_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(get( "/api/v1/lead/" + aLead.getPrimaryKey() )
+				.header("If-None-Match", "\"" + aLead.getPrimaryKey() + "-" + (aLead.getVersion() - 1) + "\""))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath( "$.firstName", containsString("Lead1") ) );
+		//@formatter:on
+	}
+
 	@Test
 	public void getLead_shouldReturn_404_notfound_httpcode() throws Exception {
 
@@ -107,4 +141,50 @@ public class LeadRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
 	}
 
+	@Test
+	public void updateLead_with_an_old_version_shouldReturn_409_conflict_httpcode() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(put( "/api/v1/lead/" +  aLead.getPrimaryKey() )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"firstName\":\"updated first name\",\"version\":" + (aLead.getVersion() - 1) + "}" ))
+			.andExpect( status().isConflict() );
+		//@formatter:on
+
+		Lead lead = leadRepository.findLeadByEmail("1lead@example.com").get();
+		assertEquals("Lead1", lead.getFirstName());
+		assertEquals(aLead.getVersion(), lead.getVersion());
+	}
+
+	@Test
+	public void updateLead_with_the_current_version_shouldUpdate_the_lead() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(put( "/api/v1/lead/" +  aLead.getPrimaryKey() )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"firstName\":\"updated first name\",\"version\":" + aLead.getVersion() + "}" ))
+			.andExpect( status().isNoContent() );
+		//@formatter:on
+
+		Lead lead = leadRepository.findLeadByEmail("1lead@example.com").get();
+		assertEquals("updated first name", lead.getFirstName());
+		assertEquals(Long.valueOf(aLead.getVersion() + 1), lead.getVersion());
+	}
+
+	@Test
+	public void updateLead_without_changes_shouldNot_change_the_version() throws Exception {
+
+		//@formatter:off
+		mockMvc.perform(put( "/api/v1/lead/" +  aLead.getPrimaryKey() )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"firstName\":\"" + aLead.getFirstName() + "\",\"email\":\"" + aLead.getEmail() + "\"}" ))
+			.andExpect( status().isNoContent() );
+		//@formatter:on
+
+		assertEquals(aLead.getVersion(), leadRepository.findLeadByEmail("1lead@example.com").get().getVersion());
+	}
+
 }
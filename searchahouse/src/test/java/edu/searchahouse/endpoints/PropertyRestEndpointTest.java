@@ -6,6 +6,8 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -112,6 +114,39 @@ public class PropertyRestEndpointTest extends AbstractRestEndpointTest {
 		//@formatter:on
     }
 
+    @Test
+    public void updatePropertyLocation_shouldReturn_204_nocontent_httpcode_and_a_new_version() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/property/" +  p1.getPrimaryKey() + "/location" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"address\":{\"state\":\"CA\",\"city\":\"test city\",\"street\":\"test street\"},\"location\":{\"lat\":10.0,\"lon\":20.0}}" ))
+			.andExpect( status().isNoContent() );
+		//@formatter:on
+
+        Property located = propertyRepository.findPropertyByPrimaryKey(p1.getPrimaryKey()).get();
+        assertEquals(Long.valueOf(p1.getVersion() + 1), located.getVersion());
+        assertEquals(Double.valueOf(10.0), located.getLocation().getLat());
+        assertEquals(Double.valueOf(20.0), located.getLocation().getLon());
+    }
+
+    @Test
+    public void updatePropertyLocation_of_another_address_shouldReturn_409_conflict_httpcode() throws Exception {
+
+        //@formatter:off
+		mockMvc.perform(put( "/api/v1/property/" +  p1.getPrimaryKey() + "/location" )
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content( "{\"address\":{\"state\":\"CA\",\"city\":\"test city\",\"street\":\"old street\"},\"location\":{\"lat\":10.0,\"lon\":20.0}}" ))
+			.andExpect( status().isConflict() );
+		//@formatter:on
+
+        Property property = propertyRepository.findPropertyByPrimaryKey(p1.getPrimaryKey()).get();
+        assertEquals(p1.getVersion(), property.getVersion());
+        assertNull(property.getLocation());
+    }
+
     @Test
     public void delete_property_shouldReturn_200_ok_badrequest_httpcode() throws Exception {
 